@@ -1,15 +1,22 @@
 package org.gdd.sage.cli;
 
 import com.google.common.collect.Lists;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
 import org.apache.jena.query.ARQ;
 import org.apache.jena.query.Dataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryFactory;
+import org.gdd.sage.core.SageExecutors;
 import org.gdd.sage.core.factory.SageAutoConfiguration;
 import org.gdd.sage.core.factory.SageConfigurationFactory;
 import org.gdd.sage.core.factory.SageFederatedConfiguration;
+import org.gdd.sage.engine.iterators.boundjoin.BoundJoinEncoding;
 import org.gdd.sage.engine.update.UpdateExecutor;
 import org.gdd.sage.http.ExecutionStats;
+import org.gdd.sage.http.SageReplicatedClient;
+import org.gdd.sage.http.hedging.HedgingPolicy;
+import org.gdd.sage.model.SageGraph;
 import org.slf4j.Logger;
 import picocli.CommandLine;
 
@@ -19,9 +26,11 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 /**
  * Main class for the Sage command-line interface
@@ -52,9 +61,46 @@ public class CLI implements Callable<Void> {
     @CommandLine.Option(names = { "--bucket-size" }, description = "Bucket size for SPARQL UPDATE query evaluation")
     public int bucketSize = 100;
 
+    @CommandLine.Option(names = { "--prefetch" }, description = "Number of pages of results fetched in background, ahead of their consumption (0 disables prefetching)")
+    public int prefetch = 0;
+
+    @CommandLine.Option(names = { "--replica" }, description = "URL of another SaGe server that hosts the same datasets as the first one. Read queries are load balanced between all servers (can be repeated)")
+    public String[] replicas = new String[0];
+
+    @CommandLine.Option(names = { "--routing" }, description = "How read queries are routed among replicas: LEAST_OUTSTANDING or LATENCY_EWMA")
+    public SageReplicatedClient.RoutingPolicy routing = SageReplicatedClient.RoutingPolicy.LEAST_OUTSTANDING;
+
+    @CommandLine.Option(names = { "--hedge" }, description = "Send a duplicate of the read requests slower than the 95th percentile latency, and use the first answer (at most 5% more requests)")
+    public boolean hedge = false;
+
+    @CommandLine.Option(names = { "--threads" }, description = "Kind of threads used to send HTTP requests in parallel: PLATFORM or VIRTUAL (requires Java 21 or later)")
+    public SageExecutors.ThreadMode threads = SageExecutors.getThreadMode();
+
+    @CommandLine.Option(names = { "--bind-encoding" }, description = "How the buckets of bound joins are sent to the server: UNION or VALUES (requires a server that supports VALUES clauses)")
+    public BoundJoinEncoding bindEncoding = BoundJoinEncoding.UNION;
+
     @CommandLine.Option(names = { "--time" }, description = "Display the the query execution time at the end")
     public boolean time = false;
 
+    /**
+     * Apply a function on each SaGe graph of a dataset
+     * @param dataset - RDF dataset
+     * @param consumer - Function to apply
+     */
+    private static void forEachSageGraph(Dataset dataset, Consumer<SageGraph> consumer) {
+        Graph defaultGraph = dataset.asDatasetGraph().getDefaultGraph();
+        if (defaultGraph instanceof SageGraph) {
+            consumer.accept((SageGraph) defaultGraph);
+        }
+        Iterator<Node> graphNodes = dataset.asDatasetGraph().listGraphNodes();
+        while (graphNodes.hasNext()) {
+            Graph namedGraph = dataset.asDatasetGraph().getGraph(graphNodes.next());
+            if (namedGraph instanceof SageGraph) {
+                consumer.accept((SageGraph) namedGraph);
+            }
+        }
+    }
+
     @Override
     public Void call() throws Exception {
         Logger logger = ARQ.getExecLogger();
@@ -64,6 +110,10 @@ public class CLI implements Callable<Void> {
                     "See sage-jena --help for more informations");
             System.exit(1);
         }
+        if (threads == SageExecutors.ThreadMode.VIRTUAL && !SageExecutors.isVirtualThreadSupported()) {
+            logger.warn("Virtual threads are not supported by this JVM, platform threads are used instead");
+        }
+        SageExecutors.setThreadMode(threads);
         List<String> servers = Lists.newArrayList(this.urls);
         String queryString;
         if (this.file != null) {
@@ -103,7 +153,7 @@ public class CLI implements Callable<Void> {
             if (servers.size() > 1) {
                 factory = new SageFederatedConfiguration(servers, parseQuery, spy);
             } else {
-                factory = new SageAutoConfiguration(servers.get(0), parseQuery, spy);
+                factory = new SageAutoConfiguration(servers.get(0), Lists.newArrayList(replicas), routing, parseQuery, spy);
             }
 
             // Init Sage dataset (maybe federated)
@@ -111,6 +161,13 @@ public class CLI implements Callable<Void> {
             factory.buildDataset();
             parseQuery = factory.getQuery();
             federation = factory.getDataset();
+            forEachSageGraph(federation, graph -> {
+                graph.setPrefetchDepth(prefetch);
+                graph.setBoundJoinEncoding(bindEncoding);
+                if (hedge) {
+                    graph.setHedgingPolicy(new HedgingPolicy());
+                }
+            });
 
             // Evaluate SPARQL query
             QueryExecutor executor;
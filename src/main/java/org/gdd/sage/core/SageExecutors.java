@@ -0,0 +1,90 @@
+package org.gdd.sage.core;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the thread pools used to evaluate queries, i.e., to run parallel iterators and to send HTTP requests asynchronously.
+ * These tasks spend most of their time waiting for HTTP responses, so on JDKs that support them (Java 21 and later),
+ * they can run on virtual threads, which makes thousands of requests in flight as cheap as a few ones.
+ * Otherwise, they run on cached pools of platform threads.
+ *
+ * The mode is read from the "sage.threads" system property ("platform" or "virtual"), or set using {@link #setThreadMode(ThreadMode)},
+ * and applies to the thread pools created afterwards. Virtual threads are only used if the JDK supports them.
+ * @author Thomas Minier
+ */
+public class SageExecutors {
+    public static final String THREAD_MODE_PROPERTY = "sage.threads";
+
+    /**
+     * Kind of threads used to execute tasks
+     */
+    public enum ThreadMode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor(), looked up at runtime as the client is built for Java 8
+    private static final Method VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+    private static volatile ThreadMode threadMode = readThreadMode();
+
+    private SageExecutors() {}
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ThreadMode readThreadMode() {
+        String mode = System.getProperty(THREAD_MODE_PROPERTY, ThreadMode.PLATFORM.name());
+        try {
+            return ThreadMode.valueOf(mode.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ThreadMode.PLATFORM;
+        }
+    }
+
+    /**
+     * Test if the JDK supports virtual threads
+     * @return True if the JDK supports virtual threads, False otherwise
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Get the kind of threads requested for the next thread pools
+     * @return The kind of threads requested for the next thread pools
+     */
+    public static ThreadMode getThreadMode() {
+        return threadMode;
+    }
+
+    /**
+     * Set the kind of threads used by the next thread pools
+     * @param mode - Kind of threads to use
+     */
+    public static void setThreadMode(ThreadMode mode) {
+        threadMode = mode;
+    }
+
+    /**
+     * Create a thread pool, using virtual threads if they have been requested and are supported by the JDK
+     * @return A new thread pool
+     */
+    public static ExecutorService newExecutor() {
+        if (threadMode == ThreadMode.VIRTUAL && isVirtualThreadSupported()) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // fall back to platform threads
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+}
@@ -26,7 +26,7 @@ public class SageUtils {
         if(pattern.getSubject().isVariable() && !pattern.getSubject().toString().startsWith("??")) {
             res.add((Var) pattern.getSubject());
         }
-        if(pattern.getPredicate().isVariable() && pattern.getPredicate().toString().startsWith("??")) {
+        if(pattern.getPredicate().isVariable() && !pattern.getPredicate().toString().startsWith("??")) {
             res.add((Var) pattern.getPredicate());
         }
         if(pattern.getObject().isVariable() && !pattern.getObject().toString().startsWith("??")) {
@@ -0,0 +1,98 @@
+package org.gdd.sage.core.analyzer;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.sparql.algebra.walker.Walker;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.E_BNode;
+import org.apache.jena.sparql.expr.E_Call;
+import org.apache.jena.sparql.expr.E_Function;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.ExprFunction0;
+import org.apache.jena.sparql.expr.ExprFunctionN;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.expr.ExprVisitorBase;
+import org.gdd.sage.core.SageUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the filters that can be pushed into the requests sent to a SaGe server, along with a BGP.
+ * A filter can be pushed if the server evaluates it exactly like the client, i.e., if:
+ * <ul>
+ *     <li>All its variables are bound by the BGP, as other variables would be unbound on the server.</li>
+ *     <li>It is deterministic: RAND(), NOW(), UUID(), STRUUID() and BNODE() are evaluated on the client.</li>
+ *     <li>It only uses SPARQL built-in functions and XSD casts, as other functions may be unknown to the server.</li>
+ *     <li>It does not contain EXISTS/NOT EXISTS clauses or aggregations.</li>
+ * </ul>
+ * Pushed filters should still be evaluated on the client, so results remain correct if the server ignores them.
+ * @author Thomas Minier
+ */
+public class FilterPushdown {
+
+    private FilterPushdown() {}
+
+    /**
+     * Finds the functions of a filter that cannot be evaluated by a SaGe server
+     */
+    private static class PushableVisitor extends ExprVisitorBase {
+        private boolean pushable = true;
+
+        @Override
+        public void visit(ExprFunction0 func) {
+            // RAND(), NOW(), UUID() and STRUUID() are not deterministic
+            pushable = false;
+        }
+
+        @Override
+        public void visit(ExprFunctionN func) {
+            if (func instanceof E_BNode || func instanceof E_Call) {
+                pushable = false;
+            } else if (func instanceof E_Function && !((E_Function) func).getFunctionIRI().startsWith(XSDDatatype.XSD)) {
+                pushable = false;
+            }
+        }
+
+        @Override
+        public void visit(ExprFunctionOp funcOp) {
+            pushable = false;
+        }
+
+        @Override
+        public void visit(ExprAggregator eAgg) {
+            pushable = false;
+        }
+    }
+
+    /**
+     * Test if a filter can be evaluated by a SaGe server, regardless of its variables
+     * @param filter - Filter to test
+     * @return True if the filter can be evaluated by a SaGe server, False otherwise
+     */
+    public static boolean isPushable(Expr filter) {
+        PushableVisitor visitor = new PushableVisitor();
+        Walker.walk(filter, visitor);
+        return visitor.pushable;
+    }
+
+    /**
+     * Find all filters that can be pushed into the requests that evaluate a Basic Graph Pattern
+     * @param filters - Filters to analyze
+     * @param bgp - Basic graph pattern
+     * @return The filters that can be pushed along with the BGP
+     */
+    public static List<Expr> findPushableFilters(ExprList filters, BasicPattern bgp) {
+        List<Expr> pushableFilters = new ArrayList<>();
+        Set<Var> bgpVariables = SageUtils.getVariables(bgp);
+        for (Expr filter : filters.getList()) {
+            if (bgpVariables.containsAll(filter.getVarsMentioned()) && isPushable(filter)) {
+                pushableFilters.add(filter);
+            }
+        }
+        return pushableFilters;
+    }
+}
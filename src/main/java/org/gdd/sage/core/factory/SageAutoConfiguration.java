@@ -13,9 +13,12 @@ import org.gdd.sage.core.SageDatasetBuilder;
 import org.gdd.sage.core.analyzer.ServiceAnalyzer;
 import org.gdd.sage.engine.SageOpExecutorFactory;
 import org.gdd.sage.http.ExecutionStats;
+import org.gdd.sage.http.SageReplicatedClient;
 import org.gdd.sage.model.SageGraph;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -30,6 +33,8 @@ public class SageAutoConfiguration implements SageConfigurationFactory {
     private Dataset federation;
     private Set<String> uris;
     private ExecutionStats spy;
+    private List<String> replicaURLs;
+    private SageReplicatedClient.RoutingPolicy routingPolicy;
     private SageOpExecutorFactory opFactory = new SageOpExecutorFactory();
 
     public SageAutoConfiguration(String defaultUrl, Query query) {
@@ -37,6 +42,7 @@ public class SageAutoConfiguration implements SageConfigurationFactory {
         this.query = query;
         this.uris = new HashSet<>();
         spy = new ExecutionStats();
+        replicaURLs = new ArrayList<>();
     }
 
     public SageAutoConfiguration(String defaultUrl, Query query, ExecutionStats spy) {
@@ -44,6 +50,21 @@ public class SageAutoConfiguration implements SageConfigurationFactory {
         this.query = query;
         this.uris = new HashSet<>();
         this.spy = spy;
+        replicaURLs = new ArrayList<>();
+    }
+
+    /**
+     * Constructor, for a default graph hosted by several SaGe servers
+     * @param defaultUrl - URL of the default graph
+     * @param replicaURLs - URLs of other SaGe servers that host the default graph
+     * @param routingPolicy - How read queries are routed among the servers
+     * @param query - SPARQL query to execute
+     * @param spy - Spy used to record execution statistics
+     */
+    public SageAutoConfiguration(String defaultUrl, List<String> replicaURLs, SageReplicatedClient.RoutingPolicy routingPolicy, Query query, ExecutionStats spy) {
+        this(defaultUrl, query, spy);
+        this.replicaURLs = replicaURLs;
+        this.routingPolicy = routingPolicy;
     }
 
     @Override
@@ -66,7 +87,12 @@ public class SageAutoConfiguration implements SageConfigurationFactory {
         uris.addAll(transformer.getUris());
 
         // build the federated dataset
-        Graph defaultGraph = new SageGraph(defaultUrl, spy);
+        Graph defaultGraph;
+        if (replicaURLs.isEmpty()) {
+            defaultGraph = new SageGraph(defaultUrl, spy);
+        } else {
+            defaultGraph = new SageGraph(defaultUrl, replicaURLs, routingPolicy, spy);
+        }
         SageDatasetBuilder builder = SageDatasetBuilder.create(defaultGraph);
         for (String uri: uris) {
             builder = builder.withSageServer(uri, spy);
@@ -0,0 +1,144 @@
+package org.gdd.sage.engine;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.gdd.sage.core.SageUtils;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.results.QueryResults;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chooses how to join input bindings with a Basic Graph Pattern, using the first page of results of the BGP.
+ * A bound join sends a request for each bucket of input bindings, while a hash join scans all results of the BGP once.
+ * So, a hash join is chosen when the BGP can be scanned in a few pages of results, fewer than the number of buckets
+ * expected for the input bindings, where the number of pages is estimated from the cardinality of the BGP given by the statistics of its first page.
+ * Input bindings that fit in a single bucket are always joined using a bound join, see {@link #needsFirstPage(int)}.
+ * @author Thomas Minier
+ */
+public class JoinSelector {
+    // Maximum number of pages that a BGP can be scanned in, to be evaluated using a hash join
+    public static final int DEFAULT_MAX_SCAN_PAGES = 10;
+    private final int maxScanPages;
+
+    /**
+     * Constructor
+     * @param maxScanPages - Maximum number of pages that a BGP can be scanned in, to be evaluated using a hash join
+     */
+    public JoinSelector(int maxScanPages) {
+        this.maxScanPages = maxScanPages;
+    }
+
+    /**
+     * Constructor, using the default maximum number of pages
+     */
+    public JoinSelector() {
+        this(DEFAULT_MAX_SCAN_PAGES);
+    }
+
+    /**
+     * Get the maximum number of pages that a BGP can be scanned in, to be evaluated using a hash join
+     * @return The maximum number of pages that a BGP can be scanned in
+     */
+    public int getMaxScanPages() {
+        return maxScanPages;
+    }
+
+    /**
+     * Test if the first page of results of a BGP is needed to choose how to join it with input bindings,
+     * as a hash join cannot be cheaper than a bound join that sends a single bucket.
+     * @param nbBuckets - Number of buckets needed to join all input bindings using a bound join
+     * @return True if the first page of results of the BGP is needed, False if a bound join should be used
+     */
+    public boolean needsFirstPage(int nbBuckets) {
+        return nbBuckets > 1;
+    }
+
+    /**
+     * Estimate the number of solutions of a BGP, i.e., the smallest cardinality of its triple patterns
+     * @param bgp - Basic graph pattern
+     * @param firstPage - First page of results of the BGP
+     * @return The estimated number of solutions of the BGP, or -1 if it cannot be estimated
+     */
+    public static long estimateCardinality(BasicPattern bgp, QueryResults firstPage) {
+        if (!firstPage.hasNext()) {
+            return firstPage.getBindings().size();
+        }
+        SageStatistics stats = firstPage.getStats();
+        long cardinality = -1;
+        for (Triple pattern : bgp) {
+            if (stats.hasTripleCardinality(pattern)) {
+                int patternCardinality = stats.getCardinality(pattern);
+                cardinality = cardinality < 0 ? patternCardinality : Math.min(cardinality, patternCardinality);
+            }
+        }
+        if (cardinality < 0) {
+            return -1;
+        }
+        return Math.max(cardinality, firstPage.getBindings().size());
+    }
+
+    /**
+     * Estimate the number of pages needed to scan all results of a BGP
+     * @param bgp - Basic graph pattern
+     * @param firstPage - First page of results of the BGP
+     * @return The estimated number of pages, or -1 if it cannot be estimated
+     */
+    public static long estimateScanPages(BasicPattern bgp, QueryResults firstPage) {
+        if (!firstPage.hasNext()) {
+            return 1;
+        }
+        long cardinality = estimateCardinality(bgp, firstPage);
+        int pageSize = firstPage.getBindings().size();
+        if (cardinality < 0 || pageSize == 0) {
+            return -1;
+        }
+        return (cardinality + pageSize - 1) / pageSize;
+    }
+
+    /**
+     * Test if input bindings should be joined with a BGP using a hash join rather than a bound join,
+     * when the number of input bindings is unknown
+     * @param bgp - Basic graph pattern
+     * @param firstPage - First page of results of the BGP
+     * @return True if a hash join should be used, False otherwise
+     */
+    public boolean useHashJoin(BasicPattern bgp, QueryResults firstPage) {
+        return useHashJoin(bgp, firstPage, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Test if input bindings should be joined with a BGP using a hash join rather than a bound join,
+     * i.e., if the BGP can be scanned in fewer pages than the number of buckets sent by the bound join
+     * @param bgp - Basic graph pattern
+     * @param firstPage - First page of results of the BGP
+     * @param nbBuckets - Number of buckets needed to join all input bindings using a bound join
+     * @return True if a hash join should be used, False otherwise
+     */
+    public boolean useHashJoin(BasicPattern bgp, QueryResults firstPage, int nbBuckets) {
+        if (firstPage.hasError()) {
+            return false;
+        }
+        long nbPages = estimateScanPages(bgp, firstPage);
+        return nbPages > 0 && nbPages <= maxScanPages && nbPages < nbBuckets;
+    }
+
+    /**
+     * Get the variables shared by an input binding and a BGP, used to join them
+     * @param binding - Input binding
+     * @param bgp - Basic graph pattern
+     * @return The join variables
+     */
+    public static List<Var> getJoinVariables(Binding binding, BasicPattern bgp) {
+        List<Var> variables = new ArrayList<>();
+        for (Var variable : SageUtils.getVariables(bgp)) {
+            if (binding.contains(variable)) {
+                variables.add(variable);
+            }
+        }
+        return variables;
+    }
+}
@@ -9,10 +9,14 @@ import org.apache.jena.sparql.algebra.op.*;
 import org.apache.jena.sparql.core.*;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.iterator.QueryIterFilterExpr;
 import org.apache.jena.sparql.engine.main.OpExecutor;
 import org.apache.jena.sparql.engine.main.QC;
-import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
 import org.gdd.sage.core.SageUtils;
+import org.gdd.sage.core.analyzer.FilterPushdown;
+import org.gdd.sage.engine.iterators.agg.ReducerFactory;
 import org.gdd.sage.engine.iterators.agg.SageGroupByIterator;
 import org.gdd.sage.engine.iterators.optional.OptJoin;
 import org.gdd.sage.engine.iterators.optional.OptionalIterator;
@@ -37,49 +41,46 @@ public class SageOpExecutor extends OpExecutor {
     }
 
     /**
-     * Execute an aggregation using partial aggregators
+     * Execute an aggregation using partial aggregations, evaluated by the server, and reducers
      * @param graph - Sage Graph queried
      * @param opGroup - GROUP BY logical operator
-     * @param extendExprs - Extends expressions, as generated by Apache Jena
-     * @return
+     * @param bgp - Basic Graph pattern grouped
+     * @param filters - Filters applied to the BGP
+     * @param input - Solution bindings input
+     * @return A QueryIterator that execute the aggregation, or null if it cannot be evaluated using partial aggregations
      */
-    private QueryIterator executeAggregation(SageGraph graph, OpGroup opGroup, VarExprList extendExprs) {
-        BasicPattern bgp = ((OpBGP) opGroup.getSubOp()).getPattern();
-        List<Var> variables = opGroup.getGroupVars().getVars();
-        List<ExprAggregator> aggregations = opGroup.getAggregators();
-        return new SageGroupByIterator(graph, bgp, variables, aggregations, extendExprs, execCxt);
-    }
-
-    /*@Override
-    protected QueryIterator execute(OpExtend opExtend, QueryIterator input) {
-        // gather all extend operations
-        VarExprList expressions = new VarExprList();
-        Op current = opExtend;
-        while (current instanceof OpExtend) {
-            OpExtend c = (OpExtend) current;
-            expressions.addAll(c.getVarExprList());
-            current = c.getSubOp();
+    private QueryIterator executeAggregation(SageGraph graph, OpGroup opGroup, BasicPattern bgp, ExprList filters, QueryIterator input) {
+        // all filters must be evaluated by the server, as partial aggregations are computed before reaching the client
+        if (FilterPushdown.findPushableFilters(filters, bgp).size() != filters.size()) {
+            return null;
         }
-        // build execution plan for the aggregation if possible
-        if (current instanceof OpGroup) {
-            Graph activeGraph = execCxt.getActiveGraph();
-            OpGroup opGroup = (OpGroup) current;
-            if (opGroup.getSubOp() instanceof OpBGP && activeGraph instanceof SageGraph) {
-                return executeAggregation((SageGraph) activeGraph, opGroup, expressions);
-            }
+        ReducerFactory factory = new ReducerFactory(opGroup.getAggregators(), execCxt);
+        if (!factory.isSupported()) {
+            return null;
         }
-        return super.execute(opExtend, input);
+        List<Var> variables = opGroup.getGroupVars().getVars();
+        return new SageGroupByIterator(graph, bgp, filters.getList(), variables, factory, () -> super.execute(opGroup, input), execCxt);
     }
 
     @Override
     protected QueryIterator execute(OpGroup opGroup, QueryIterator input) {
-        // reducer-based aggregations only works on a single BGP
+        // reducer-based aggregations only works on a single BGP, optionally filtered, grouped by plain variables
         Graph activeGraph = execCxt.getActiveGraph();
-        if (opGroup.getSubOp() instanceof OpBGP && activeGraph instanceof SageGraph) {
-            return executeAggregation((SageGraph) activeGraph, opGroup, new VarExprList());
+        if (input.isJoinIdentity() && activeGraph instanceof SageGraph && opGroup.getGroupVars().getExprs().isEmpty()) {
+            Op subOp = opGroup.getSubOp();
+            QueryIterator qIter = null;
+            if (subOp instanceof OpBGP) {
+                qIter = executeAggregation((SageGraph) activeGraph, opGroup, ((OpBGP) subOp).getPattern(), new ExprList(), input);
+            } else if (subOp instanceof OpFilter && ((OpFilter) subOp).getSubOp() instanceof OpBGP) {
+                OpFilter opFilter = (OpFilter) subOp;
+                qIter = executeAggregation((SageGraph) activeGraph, opGroup, ((OpBGP) opFilter.getSubOp()).getPattern(), opFilter.getExprs(), input);
+            }
+            if (qIter != null) {
+                return qIter;
+            }
         }
         return super.execute(opGroup, input);
-    }*/
+    }
 
     /**
      * Execute a Left Join/Optional with a pure pipeline logic
@@ -157,22 +158,19 @@ public class SageOpExecutor extends OpExecutor {
         return super.execute(opUnion, input);
     }
 
-    /*@Override
+    @Override
     protected QueryIterator execute(OpFilter opFilter, QueryIterator input) {
-        QueryIterator qIter;
-        ExprList filters = opFilter.getExprs();
-        // TODO for now, we limit filter packing fpr the first BGP in the plan
-        if (opFilter.getSubOp() instanceof OpBGP && input.isJoinIdentity() && stageGenerator instanceof SageStageGenerator) {
+        // push the filters into the requests that evaluate the BGP, if the server can evaluate them
+        if (opFilter.getSubOp() instanceof OpBGP && execCxt.getActiveGraph() instanceof SageGraph && stageGenerator instanceof SageStageGenerator) {
+            ExprList filters = opFilter.getExprs();
             BasicPattern bgp = ((OpBGP) opFilter.getSubOp()).getPattern();
-            SageStageGenerator sageStageGenerator = (SageStageGenerator) stageGenerator;
-            qIter = sageStageGenerator.execute(bgp, input, execCxt, filters);
-        } else {
-            qIter = super.exec(opFilter.getSubOp(), input);
-        }
-        // add all filters, for safety purpose
-        for(Expr expr: filters.getList()) {
-            qIter = new QueryIterFilterExpr(qIter, expr, execCxt);
+            QueryIterator qIter = ((SageStageGenerator) stageGenerator).execute(bgp, input, execCxt, filters);
+            // evaluate all filters on the client, for safety purpose
+            for(Expr expr: filters.getList()) {
+                qIter = new QueryIterFilterExpr(qIter, expr, execCxt);
+            }
+            return qIter;
         }
-        return qIter;
-    }*/
+        return super.execute(opFilter, input);
+    }
 }
@@ -4,9 +4,9 @@ import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.main.OpExecutor;
 import org.apache.jena.sparql.engine.main.OpExecutorFactory;
 import org.apache.jena.sparql.engine.main.StageBuilder;
+import org.gdd.sage.core.SageExecutors;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Factory used to create a {@link SageOpExecutor}
@@ -16,8 +16,8 @@ public class SageOpExecutorFactory implements OpExecutorFactory {
     private final ExecutorService threadPool;
 
     public SageOpExecutorFactory() {
-        // TODO replace with a fixed size thread pool???
-        threadPool = Executors.newCachedThreadPool();
+        // tasks mostly wait for HTTP responses, so they may run on virtual threads
+        threadPool = SageExecutors.newExecutor();
     }
 
     public void close() {
@@ -1,23 +1,29 @@
 package org.gdd.sage.engine;
 
-import com.google.common.collect.Sets;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.query.ARQ;
 import org.apache.jena.sparql.core.BasicPattern;
-import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.ExecutionContext;
 import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.iterator.QueryIterConcat;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
 import org.apache.jena.sparql.engine.main.StageGenerator;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprList;
-import org.gdd.sage.core.SageUtils;
+import org.gdd.sage.core.analyzer.FilterPushdown;
+import org.gdd.sage.engine.iterators.boundjoin.AdaptiveBucketSize;
+import org.gdd.sage.engine.iterators.boundjoin.BoundJoinEncoding;
 import org.gdd.sage.engine.iterators.boundjoin.ParallelBoundJoinIterator;
+import org.gdd.sage.engine.iterators.hashjoin.SymmetricHashJoinIterator;
+import org.gdd.sage.engine.iterators.parallel.ParallelismBudget;
+import org.gdd.sage.http.results.QueryResults;
 import org.gdd.sage.model.SageGraph;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides a custom StageGenerator for evaluating SPARQL queries against a SaGe server
@@ -25,12 +31,15 @@ import java.util.concurrent.ExecutorService;
  */
 public class SageStageGenerator implements StageGenerator {
     private final ExecutorService threadPool;
+    private final JoinSelector joinSelector;
     private StageGenerator above;
+    // Initial size of bound join buckets, adjusted at runtime for each join
     private static final int BIND_JOIN_BUCKET_SIZE = 15;
 
     private SageStageGenerator(StageGenerator above, ExecutorService threadPool) {
         this.above = above;
         this.threadPool = threadPool;
+        joinSelector = new JoinSelector();
     }
 
     /**
@@ -46,69 +55,76 @@ public class SageStageGenerator implements StageGenerator {
     public QueryIterator execute(BasicPattern pattern,
                                  QueryIterator input,
                                  ExecutionContext execCxt) {
-        Graph g = execCxt.getActiveGraph();
-
-        // This stage generator only support evaluation of a Sage Graph
-        if (g instanceof SageGraph) {
-            SageGraph sageGraph = (SageGraph) g;
-
-            // no input bindings => simply evaluate the BGP
-            if (input.isJoinIdentity()) {
-                return sageGraph.basicGraphPatternFind(pattern);
-            }
-
-            // if we can download the right pattern in one call, use a hash join instead of a bound join
-            /*QueryResults rightRes = sageGraph.getClient().query(pattern);
-            if (!rightRes.hasNext()) {
-                QueryIterator rightIter = new QueryIterPlainWrapper(rightRes.getBindings().iterator());
-                return QueryIterHashJoin.create(input, rightIter, execCxt);
-            }*/
-            // otherwise, use a bind join
-            return new ParallelBoundJoinIterator(input, sageGraph.getGraphURI(), sageGraph.getClient(), pattern, threadPool, BIND_JOIN_BUCKET_SIZE);
-        }
-
-        // delegate execution of the unsupported Graph to the StageGenerator above
-        return above.execute(pattern, input, execCxt);
+        return execute(pattern, input, execCxt, new ExprList());
     }
 
+    /**
+     * Evaluate a Basic Graph Pattern with filters, where the filters that can be evaluated by the SaGe server are pushed into its requests.
+     * This method does not evaluate the filters on the client: the caller must apply them to the results.
+     * @param pattern - Basic Graph Pattern to evaluate
+     * @param input - Input solution bindings
+     * @param execCxt - Execution context
+     * @param filters - Filters applied to the Basic Graph Pattern
+     * @return An iterator over the solutions of the Basic Graph Pattern, joined with the input bindings
+     */
     public QueryIterator execute(BasicPattern pattern,
                                  QueryIterator input,
                                  ExecutionContext execCxt,
                                  ExprList filters) {
         Graph g = execCxt.getActiveGraph();
 
+        // This stage generator only support evaluation of a Sage Graph
         if (g instanceof SageGraph) {
             SageGraph sageGraph = (SageGraph) g;
+            List<Expr> pushedFilters = FilterPushdown.findPushableFilters(filters, pattern);
 
             // no input bindings => simply evaluate the BGP
             if (input.isJoinIdentity()) {
-                // compute which filters can be packed with the BGP
-                return sageGraph.basicGraphPatternFind(pattern, findRelevantFilters(filters, pattern));
+                return sageGraph.basicGraphPatternFind(pattern, pushedFilters);
+            }
+
+            // read the first input bindings, enough to know if the bound join would send more buckets
+            // than the number of pages in which a hash join can scan the BGP
+            List<Binding> firstBindings = new ArrayList<>();
+            int maxInputSize = joinSelector.getMaxScanPages() * BIND_JOIN_BUCKET_SIZE;
+            while (firstBindings.size() <= maxInputSize && input.hasNext()) {
+                firstBindings.add(input.nextBinding());
             }
+            QueryIterConcat peekInput = new QueryIterConcat(execCxt);
+            peekInput.add(new QueryIterPlainWrapper(firstBindings.iterator(), execCxt));
+            peekInput.add(input);
 
+            // only ask for the first page of the BGP if a hash join may be cheaper than the bound join
+            int nbBuckets = (firstBindings.size() + BIND_JOIN_BUCKET_SIZE - 1) / BIND_JOIN_BUCKET_SIZE;
+            if (joinSelector.needsFirstPage(nbBuckets)) {
+                // if we can download the right pattern in fewer calls than the bound join, use a hash join instead
+                QueryResults firstPage = sageGraph.getClient().query(sageGraph.getGraphURI(), pattern, pushedFilters);
+                if (joinSelector.useHashJoin(pattern, firstPage, nbBuckets)) {
+                    QueryIterator rightIterator = sageGraph.basicGraphPatternFind(pattern, pushedFilters, firstPage);
+                    return new SymmetricHashJoinIterator(threadPool, peekInput, rightIterator, JoinSelector.getJoinVariables(firstBindings.get(0), pattern));
+                }
+            }
             // otherwise, use a bind join
-            return new ParallelBoundJoinIterator(input, sageGraph.getGraphURI(), sageGraph.getClient(), pattern, threadPool, BIND_JOIN_BUCKET_SIZE);
+            return newBoundJoin(peekInput, sageGraph, pattern, pushedFilters, execCxt);
         }
+
+        // delegate execution of the unsupported Graph to the StageGenerator above
         return above.execute(pattern, input, execCxt);
     }
 
     /**
-     * Find all filters that can be applied to a Basic Graph Pattern
-     * @param filters - List of filters to analyze
-     * @param bgp - Basic graph pattern
-     * @return The list of all filters that can be applied to the Basic Graph Pattern
+     * Create a bound join between an input and a BGP evaluated against a SaGe graph, using the encoding of buckets set for the graph
+     * @param input - Input for the join
+     * @param sageGraph - SaGe graph
+     * @param pattern - Basic Graph pattern to join with
+     * @param filters - Filters pushed into the queries sent for each bucket
+     * @param execCxt - Execution context
+     * @return An iterator that evaluates the bound join
      */
-    private List<Expr> findRelevantFilters(ExprList filters, BasicPattern bgp) {
-        List<Expr> relevantFilters = new LinkedList<>();
-        Set<Var> bgpVariables = SageUtils.getVariables(bgp);
-        for(Expr filter: filters.getList()) {
-            Set<Var> filterVariables = filter.getVarsMentioned();
-            // test if filterVariables is a subset of bgpVariables, i.e., filterVariables - bgpVariables = empty set
-            if(Sets.difference(filterVariables, bgpVariables).isEmpty()) {
-                relevantFilters.add(filter);
-            }
-        }
-        System.out.println(relevantFilters);
-        return relevantFilters;
+    private QueryIterator newBoundJoin(QueryIterator input, SageGraph sageGraph, BasicPattern pattern, List<Expr> filters, ExecutionContext execCxt) {
+        BoundJoinEncoding encoding = sageGraph.getBoundJoinEncoding();
+        AdaptiveBucketSize bucketSize = new AdaptiveBucketSize(BIND_JOIN_BUCKET_SIZE, AdaptiveBucketSize.DEFAULT_MIN_SIZE, encoding.getMaxBucketSize(),
+                AdaptiveBucketSize.DEFAULT_TARGET_LATENCY, TimeUnit.MILLISECONDS, AdaptiveBucketSize.DEFAULT_TARGET_RESULTS);
+        return new ParallelBoundJoinIterator(input, sageGraph.getGraphURI(), sageGraph.getClient(), pattern, filters, threadPool, bucketSize, ParallelismBudget.forContext(execCxt), encoding);
     }
 }
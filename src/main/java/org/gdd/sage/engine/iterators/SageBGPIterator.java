@@ -3,9 +3,11 @@ package org.gdd.sage.engine.iterators;
 import org.apache.jena.sparql.core.BasicPattern;
 import org.gdd.sage.engine.iterators.base.SageQueryIterator;
 import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.data.SageQueryBuilder;
 import org.gdd.sage.http.results.QueryResults;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Evaluate a Basic Graph Pattern (BGP) using a SaGe server, following the Iterator pattern.
@@ -16,6 +18,7 @@ import java.util.Optional;
 public class SageBGPIterator extends SageQueryIterator {
 
     protected BasicPattern bgp;
+    private String query;
 
     /**
      * Constructor
@@ -26,10 +29,16 @@ public class SageBGPIterator extends SageQueryIterator {
     public SageBGPIterator(String graphURI, SageRemoteClient client, BasicPattern bgp) {
         super(graphURI, client);
         this.bgp = bgp;
+        query = SageQueryBuilder.buildBGPQuery(bgp);
     }
 
     @Override
     protected QueryResults query(Optional<String> nextLink) {
-        return getClient().query(getGraphURI(), bgp, nextLink);
+        return getClient().query(getGraphURI(), query, nextLink);
+    }
+
+    @Override
+    protected CompletableFuture<QueryResults> queryAsync(Optional<String> nextLink) {
+        return getClient().queryAsync(getGraphURI(), query, nextLink);
     }
 }
@@ -4,10 +4,12 @@ import org.apache.jena.sparql.core.BasicPattern;
 import org.apache.jena.sparql.expr.Expr;
 import org.gdd.sage.engine.iterators.base.SageQueryIterator;
 import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.data.SageQueryBuilder;
 import org.gdd.sage.http.results.QueryResults;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Like a {@link SageBGPIterator}, but also apply a set of filters on the BGP
@@ -16,15 +18,22 @@ import java.util.Optional;
 public class SageFilterBGPIterator extends SageQueryIterator {
     private BasicPattern bgp;
     private List<Expr> filters;
+    private String query;
 
     public SageFilterBGPIterator(String graphURI, SageRemoteClient client, BasicPattern bgp, List<Expr> filters) {
         super(graphURI, client);
         this.bgp = bgp;
         this.filters = filters;
+        query = SageQueryBuilder.buildBGPQuery(bgp, filters);
     }
 
     @Override
     protected QueryResults query(Optional<String> nextLink) {
-        return getClient().query(getGraphURI(), bgp, filters, nextLink);
+        return getClient().query(getGraphURI(), query, nextLink);
+    }
+
+    @Override
+    protected CompletableFuture<QueryResults> queryAsync(Optional<String> nextLink) {
+        return getClient().queryAsync(getGraphURI(), query, nextLink);
     }
 }
@@ -3,10 +3,12 @@ package org.gdd.sage.engine.iterators;
 import org.apache.jena.sparql.core.BasicPattern;
 import org.gdd.sage.engine.iterators.base.SageQueryIterator;
 import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.data.SageQueryBuilder;
 import org.gdd.sage.http.results.QueryResults;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An Iterator that evaluates a Union query query using a Sage server
@@ -15,14 +17,21 @@ import java.util.Optional;
 public class SageUnionIterator extends SageQueryIterator {
 
     private List<BasicPattern> patterns;
+    private String query;
 
     public SageUnionIterator(String graphURI, SageRemoteClient client, List<BasicPattern> patterns) {
         super(graphURI, client);
         this.patterns = patterns;
+        query = SageQueryBuilder.buildUnionQuery(patterns);
     }
 
     @Override
     protected QueryResults query(Optional<String> nextLink) {
-        return getClient().query(getGraphURI(), patterns, nextLink);
+        return getClient().query(getGraphURI(), query, nextLink);
+    }
+
+    @Override
+    protected CompletableFuture<QueryResults> queryAsync(Optional<String> nextLink) {
+        return getClient().queryAsync(getGraphURI(), query, nextLink);
     }
 }
@@ -1,63 +1,199 @@
 package org.gdd.sage.engine.iterators.agg;
 
+import org.apache.jena.graph.Node;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.core.VarExprList;
 import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprAggregator;
-import org.apache.jena.tdb.store.Hash;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.aggregate.AggAvg;
+import org.apache.jena.sparql.expr.aggregate.AggAvgDistinct;
+import org.apache.jena.sparql.expr.aggregate.AggCount;
+import org.apache.jena.sparql.expr.aggregate.AggCountVar;
+import org.apache.jena.sparql.expr.aggregate.AggCountVarDistinct;
+import org.apache.jena.sparql.expr.aggregate.AggGroupConcat;
+import org.apache.jena.sparql.expr.aggregate.AggGroupConcatDistinct;
+import org.apache.jena.sparql.expr.aggregate.AggMax;
+import org.apache.jena.sparql.expr.aggregate.AggMaxDistinct;
+import org.apache.jena.sparql.expr.aggregate.AggMin;
+import org.apache.jena.sparql.expr.aggregate.AggMinDistinct;
+import org.apache.jena.sparql.expr.aggregate.AggSample;
+import org.apache.jena.sparql.expr.aggregate.AggSampleDistinct;
+import org.apache.jena.sparql.expr.aggregate.AggSum;
+import org.apache.jena.sparql.expr.aggregate.AggSumDistinct;
+import org.apache.jena.sparql.expr.aggregate.Aggregator;
+import org.apache.jena.sparql.expr.aggregate.AggregatorFactory;
 import org.gdd.sage.engine.reducers.AggregationReducer;
+import org.gdd.sage.engine.reducers.AvgReducer;
 import org.gdd.sage.engine.reducers.CountSumReducer;
+import org.gdd.sage.engine.reducers.DistinctReducer;
+import org.gdd.sage.engine.reducers.GroupConcatReducer;
 import org.gdd.sage.engine.reducers.MaxReducer;
 import org.gdd.sage.engine.reducers.MinReducer;
+import org.gdd.sage.engine.reducers.SampleReducer;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Set;
 import java.util.function.Supplier;
 
+/**
+ * Decomposes SPARQL aggregations into partial aggregations, evaluated by the SaGe server on each page of results,
+ * and reducers, which combine the partial aggregations of all pages on the client:
+ * <ul>
+ *     <li>COUNT, SUM, MIN, MAX, SAMPLE and GROUP_CONCAT are evaluated by the server and combined using the same operation.</li>
+ *     <li>AVG is decomposed into a SUM and a COUNT.</li>
+ *     <li>DISTINCT aggregations are computed on the client, from solutions grouped by the server on the variables of the aggregation.</li>
+ * </ul>
+ * Other aggregations (COUNT(DISTINCT *) and custom aggregations) are not supported.
+ * @author Thomas Minier
+ */
 public class ReducerFactory {
+    private static final String PARTIAL_VARIABLE_PREFIX = "sage_partial_";
 
     private Map<Var, Supplier<AggregationReducer>> suppliers;
+    private Map<Var, Node> emptyValues;
+    private List<ExprAggregator> partialAggregations;
+    private VarExprList partialVariables;
+    private Set<Var> distinctVariables;
+    private boolean supported;
     private ExecutionContext context;
 
-    public ReducerFactory(List<ExprAggregator> aggregations, VarExprList extensions, ExecutionContext context) {
-        suppliers = new HashMap<>();
+    public ReducerFactory(List<ExprAggregator> aggregations, ExecutionContext context) {
+        suppliers = new LinkedHashMap<>();
+        emptyValues = new HashMap<>();
+        partialAggregations = new ArrayList<>();
+        partialVariables = new VarExprList();
+        distinctVariables = new LinkedHashSet<>();
+        supported = true;
         this.context = context;
 
         for(ExprAggregator exprAgg: aggregations) {
-            // search for the correct variable
-            extensions.getExprs().forEach((var, expr) -> {
-                if (exprAgg.getVar().equals(expr.asVar())) {
-                    suppliers.put(var, buildSupplier(var, exprAgg));
+            Supplier<AggregationReducer> supplier = buildSupplier(exprAgg.getAggregator());
+            if (supplier == null) {
+                supported = false;
+            } else {
+                suppliers.put(exprAgg.getVar(), supplier);
+                Node emptyValue = exprAgg.getAggregator().getValueEmpty();
+                if (emptyValue != null) {
+                    emptyValues.put(exprAgg.getVar(), emptyValue);
                 }
-            });
+            }
         }
+    }
 
+    /**
+     * Add a partial aggregation, evaluated by the server
+     * @param aggregator - Partial aggregation
+     * @return The variable bound to the partial aggregation in the server results
+     */
+    private Var addPartialAggregation(Aggregator aggregator) {
+        int index = partialAggregations.size();
+        Var variable = Var.alloc(PARTIAL_VARIABLE_PREFIX + index);
+        // internal variable of the aggregation, renamed in the projection, as done by Jena
+        Var internalVariable = Var.alloc(".sage" + index);
+        partialAggregations.add(new ExprAggregator(internalVariable, aggregator));
+        partialVariables.add(variable, new ExprVar(internalVariable));
+        return variable;
     }
 
-    private Supplier<AggregationReducer> buildSupplier(Var variable, ExprAggregator exprAggregator) {
-        switch (exprAggregator.getAggregator().getName()) {
-            case "COUNT": {
-                return () -> new CountSumReducer(variable, context);
-            }
-            case "SUM": {
-                return () -> new CountSumReducer(variable, context);
-            }
-            case "MIN": {
-                return () -> new MinReducer(variable, context);
-            }
-            case "MAX": {
-                return () -> new MaxReducer(variable, context);
-            }
-            default: {
-                return null;
-            }
+    /**
+     * Group the solutions on the server by the variables of a DISTINCT aggregation, so it can be computed on the client
+     * @param aggregator - DISTINCT aggregation
+     * @return The supplier of reducers for the aggregation
+     */
+    private Supplier<AggregationReducer> distinctSupplier(Aggregator aggregator) {
+        for (Expr expr : aggregator.getExprList()) {
+            distinctVariables.addAll(expr.getVarsMentioned());
+        }
+        return () -> new DistinctReducer(aggregator, context);
+    }
+
+    private Supplier<AggregationReducer> buildSupplier(Aggregator aggregator) {
+        if (aggregator instanceof AggCount || aggregator instanceof AggCountVar || aggregator instanceof AggSum) {
+            Var variable = addPartialAggregation(aggregator);
+            return () -> new CountSumReducer(variable, context);
+        } else if (aggregator instanceof AggMin) {
+            Var variable = addPartialAggregation(aggregator);
+            return () -> new MinReducer(variable, context);
+        } else if (aggregator instanceof AggMax) {
+            Var variable = addPartialAggregation(aggregator);
+            return () -> new MaxReducer(variable, context);
+        } else if (aggregator instanceof AggSample) {
+            Var variable = addPartialAggregation(aggregator);
+            return () -> new SampleReducer(variable, context);
+        } else if (aggregator instanceof AggGroupConcat) {
+            Var variable = addPartialAggregation(aggregator);
+            String separator = ((AggGroupConcat) aggregator).getSeparator();
+            return () -> new GroupConcatReducer(variable, separator == null ? " " : separator);
+        } else if (aggregator instanceof AggAvg) {
+            Expr expr = aggregator.getExprList().get(0);
+            Var sumVariable = addPartialAggregation(AggregatorFactory.createSum(false, expr));
+            Var countVariable = addPartialAggregation(AggregatorFactory.createCountExpr(false, expr));
+            return () -> new AvgReducer(sumVariable, countVariable, context);
+        } else if (aggregator instanceof AggCountVarDistinct || aggregator instanceof AggSumDistinct || aggregator instanceof AggAvgDistinct
+                || aggregator instanceof AggMinDistinct || aggregator instanceof AggMaxDistinct
+                || aggregator instanceof AggSampleDistinct || aggregator instanceof AggGroupConcatDistinct) {
+            return distinctSupplier(aggregator);
         }
+        // COUNT(DISTINCT *) and custom aggregations
+        return null;
+    }
+
+    /**
+     * Test if all aggregations can be decomposed into partial aggregations and reducers
+     * @return True if all aggregations are supported, False otherwise
+     */
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Get the variables used by the server to group solutions
+     * @param variables - GROUP BY variables of the query
+     * @return The GROUP BY variables of the query, followed by the variables of DISTINCT aggregations
+     */
+    public List<Var> getGroupVariables(List<Var> variables) {
+        Set<Var> groupVariables = new LinkedHashSet<>(variables);
+        groupVariables.addAll(distinctVariables);
+        return new ArrayList<>(groupVariables);
+    }
+
+    /**
+     * Get the partial aggregations evaluated by the server
+     * @return The partial aggregations evaluated by the server
+     */
+    public List<ExprAggregator> getPartialAggregations() {
+        return partialAggregations;
+    }
+
+    /**
+     * Get the variables bound to the partial aggregations in the server results, as renamings of their internal variables
+     * @return The variables bound to the partial aggregations
+     */
+    public VarExprList getPartialVariables() {
+        return partialVariables;
+    }
+
+    /**
+     * Get the values of the aggregations for an empty group, e.g., 0 for COUNT, or no value for MIN
+     * @return The values of the aggregations for an empty group
+     */
+    public Map<Var, Node> getEmptyValues() {
+        return emptyValues;
     }
 
+    /**
+     * Build a new set of reducers, used to compute the aggregations of a group
+     * @return The reducers, indexed by the variables of their aggregations
+     */
     public Map<Var, AggregationReducer> build() {
-        Map<Var, AggregationReducer> res = new HashMap<>();
+        Map<Var, AggregationReducer> res = new LinkedHashMap<>();
         suppliers.forEach((var, supplier) -> res.put(var, supplier.get()));
         return res;
     }
@@ -2,121 +2,139 @@ package org.gdd.sage.engine.iterators.agg;
 
 import org.apache.jena.atlas.iterator.IteratorDelayedInitialization;
 import org.apache.jena.graph.Node;
+import org.apache.jena.query.ARQ;
 import org.apache.jena.sparql.core.BasicPattern;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.core.VarExprList;
 import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.binding.BindingHashMap;
-import org.apache.jena.sparql.engine.binding.BindingInputStream;
 import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
-import org.apache.jena.sparql.expr.ExprAggregator;
-import org.apache.jena.sparql.expr.aggregate.Accumulator;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.NodeValue;
 import org.gdd.sage.engine.reducers.AggregationReducer;
-import org.gdd.sage.engine.reducers.CountSumReducer;
-import org.gdd.sage.engine.reducers.GroupByReducer;
-import org.gdd.sage.engine.reducers.Reducer;
-import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.data.SageQueryBuilder;
 import org.gdd.sage.http.results.QueryResults;
 import org.gdd.sage.model.SageGraph;
 
 import java.util.*;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Evaluates a GROUP BY query over a single BGP using partial aggregations:
+ * the SaGe server computes partial aggregations on each page of results, which are combined on the client by reducers (see {@link ReducerFactory}).
+ * Each page is folded into the reducers of its groups as soon as it is received, while the next page is fetched,
+ * so memory usage only depends on the number of groups.
+ * If the server fails to evaluate the partial aggregations, the query is evaluated by a fallback iterator instead.
+ * @author Thomas Minier
+ */
 public class SageGroupByIterator extends QueryIterPlainWrapper {
 
-    public SageGroupByIterator(SageGraph graph, BasicPattern bgp, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions, ExecutionContext exCxt) {
-        super(compute(graph, bgp, variables, aggregations, extensions, exCxt));
+    /**
+     * Constructor
+     * @param graph - SaGe graph queried
+     * @param bgp - Basic Graph pattern
+     * @param filters - Filters applied to the BGP, which must be evaluated by the server
+     * @param variables - GROUP BY variables
+     * @param factory - Factory of the reducers used to compute the aggregations
+     * @param fallback - Supplier of the iterator used if the server fails to evaluate the partial aggregations
+     * @param exCxt - Execution context
+     */
+    public SageGroupByIterator(SageGraph graph, BasicPattern bgp, List<Expr> filters, List<Var> variables, ReducerFactory factory, Supplier<QueryIterator> fallback, ExecutionContext exCxt) {
+        super(compute(graph, bgp, filters, variables, factory, fallback));
     }
 
-    public static Binding genKey(List<Var> variables, Binding bindings) {
-        BindingHashMap b = new BindingHashMap();
+    private static List<Node> genKey(List<Var> variables, Binding bindings) {
+        List<Node> key = new ArrayList<>(variables.size());
         for(Var v: variables) {
-            if (bindings.contains(v)) {
-                b.add(v, bindings.get(v));
-            } else {
-                return null;
+            key.add(bindings.get(v));
+        }
+        return key;
+    }
+
+    /**
+     * Wait for a page of partial aggregations
+     * @param request - Pending request for the page
+     * @return The page of partial aggregations, or an error if the request has failed
+     */
+    private static QueryResults waitForPage(CompletableFuture<QueryResults> request) {
+        try {
+            return request.join();
+        } catch (CompletionException | CancellationException e) {
+            return QueryResults.withError(e.getMessage());
+        }
+    }
+
+    /**
+     * Build the final results of a group
+     * @param variables - GROUP BY variables
+     * @param key - Values of the GROUP BY variables for the group
+     * @param reducers - Reducers of the group
+     * @return The final results of the group
+     */
+    private static Binding reduceGroup(List<Var> variables, List<Node> key, Map<Var, AggregationReducer> reducers) {
+        BindingHashMap res = new BindingHashMap();
+        // add grouping keys as results
+        for (int i = 0; i < variables.size(); i++) {
+            if (key.get(i) != null) {
+                res.add(variables.get(i), key.get(i));
             }
         }
-        return b;
+        // aggregations may have no value, e.g., the MIN of an empty group
+        reducers.forEach((variable, reducer) -> {
+            NodeValue value = reducer.getFinalValue();
+            if (value != null) {
+                res.add(variable, value.asNode());
+            }
+        });
+        return res;
     }
 
-    private static Iterator<Binding> compute(SageGraph graph, BasicPattern bgp, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions, ExecutionContext exCxt) {
+    private static Iterator<Binding> compute(SageGraph graph, BasicPattern bgp, List<Expr> filters, List<Var> variables, ReducerFactory factory, Supplier<QueryIterator> fallback) {
         return new IteratorDelayedInitialization<Binding>() {
 
             @Override
             protected Iterator<Binding> initializeIterator() {
-
-                // create reducer to gather results
-                // TODO choose a GroupByReducer for unsupported query shapes
-                //Reducer reducer = new GroupByReducer();
-                ReducerFactory factory = new ReducerFactory(aggregations, extensions, exCxt);
-
-
-                // gather all query solutions
-                QueryResults results;
-                Map<Binding, List<Binding>> solutions = new HashMap<>();
-                boolean hasNext = true;
-                Optional<String> nextLink = Optional.empty();
-                while (hasNext) {
-                    results = graph.getClient().queryGroupBy(graph.getGraphURI(), bgp, variables, aggregations, extensions, nextLink);
-                    // regroup all bindings by key
+                // the server also groups solutions by the variables of DISTINCT aggregations
+                List<Var> groupVariables = factory.getGroupVariables(variables);
+                VarExprList projection = new VarExprList();
+                groupVariables.forEach(projection::add);
+                projection.addAll(factory.getPartialVariables());
+                String query = SageQueryBuilder.buildBGPGroupByQuery(bgp, filters, groupVariables, factory.getPartialAggregations(), projection);
+
+                // fold the partial aggregations of each page into the reducers of their groups,
+                // while the next page is fetched, so only the state of the reducers is kept in memory
+                Map<List<Node>, Map<Var, AggregationReducer>> groups = new LinkedHashMap<>();
+                CompletableFuture<QueryResults> request = graph.getClient().queryAsync(graph.getGraphURI(), query, Optional.empty());
+                while (request != null) {
+                    QueryResults results = waitForPage(request);
+                    if (results.hasError()) {
+                        ARQ.getExecLogger().warn("Partial aggregations cannot be evaluated by the server, the aggregation is evaluated by the client: " + results.getError());
+                        return fallback.get();
+                    }
+                    // send the request for the next page before folding the current one
+                    request = results.hasNext() ? graph.getClient().queryAsync(graph.getGraphURI(), query, results.getNext()) : null;
                     for(Binding b: results.getBindings()) {
-                        Binding key = genKey(variables, b);
-                        if (key != null) {
-                            if (!solutions.containsKey(key)) {
-                                solutions.put(key, new LinkedList<>());
-                            }
-                            solutions.get(key).add(b);
-                        }
+                        Map<Var, AggregationReducer> reducers = groups.computeIfAbsent(genKey(variables, b), key -> factory.build());
+                        reducers.values().forEach(reducer -> reducer.accumulate(b));
                     }
-                    /*results.getSolutionGroups().forEach(solutionGroup -> {
-                        reducer.accumulate(solutionGroup);
-                        cpt[0] += solutionGroup.groupSize();
-                    });*/
-                    nextLink = results.getNext();
-                    hasNext = results.hasNext();
                 }
 
-                // produce final results from each group
-                return solutions.entrySet().parallelStream().map(entry -> {
-                    Binding res = new BindingHashMap();
-                    Binding key = entry.getKey();
-
-                    // add grouping keys as results
-                    ((BindingHashMap) res).addAll(key);
-
-                    // build reducers for this group
-                    Map<Var, AggregationReducer> reducers = factory.build();
-
-                    // accumulate values into the reducers
-                    for(Binding b: entry.getValue()) {
-                        reducers.forEach((v, reducer) -> reducer.accumulate(b));
-                    }
-
-                    // build final results
-                    for(Map.Entry<Var, AggregationReducer> reducer: reducers.entrySet()) {
-                        Node value = reducer.getValue().getFinalValue().asNode();
-                        ((BindingHashMap) res).add(reducer.getKey(), value);
-                    }
-                    return res;
-                }).iterator();
-
+                // an aggregation without GROUP BY variables produces a single group, even without solutions
+                if (groups.isEmpty() && variables.isEmpty()) {
+                    BindingHashMap res = new BindingHashMap();
+                    factory.getEmptyValues().forEach(res::add);
+                    return Collections.<Binding>singletonList(res).iterator();
+                }
 
-                // TODO change that to support others operators (same as above)
-                // apply aggregations on each group
-                /*return reducer.getGroups().parallelStream().map(solutionGroup -> {
-                    Binding bindings = new BindingHashMap();
-                    // add aggregation keys in the bindings
-                    solutionGroup.forEachKey((var, node) -> ((BindingHashMap) bindings).add(var, node));
-                    // apply each accumulator
-                    for(ExprAggregator agg: aggregations) {
-                        Var bindsTo = agg.getVar();
-                        Accumulator accumulator = agg.getAggregator().createAccumulator();
-                        solutionGroup.forEachBindings(binding -> accumulator.accumulate(binding, exCxt));
-                        ((BindingHashMap) bindings).add(bindsTo, accumulator.getValue().asNode());
-                    }
-                    return bindings;
-                }).iterator();*/
+                // produce final results from each group
+                List<Binding> solutions = new ArrayList<>(groups.size());
+                groups.forEach((key, reducers) -> solutions.add(reduceGroup(variables, key, reducers)));
+                return solutions.iterator();
             }
         };
     }
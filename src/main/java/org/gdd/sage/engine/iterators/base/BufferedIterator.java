@@ -27,6 +27,14 @@ public abstract class BufferedIterator extends QueryIteratorBase {
 
     protected abstract List<Binding> produceBindings();
 
+    /**
+     * Test if bindings are available in the internal buffer, i.e., if the next binding can be read without producing new ones
+     * @return True if bindings are available in the internal buffer, False otherwise
+     */
+    public boolean hasBufferedBindings() {
+        return !internalBuffer.isEmpty();
+    }
+
     private void fillBuffer() {
         List<Binding> bindings = produceBindings();
         internalBuffer.addAll(bindings);
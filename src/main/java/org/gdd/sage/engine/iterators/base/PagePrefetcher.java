@@ -0,0 +1,157 @@
+package org.gdd.sage.engine.iterators.base;
+
+import org.gdd.sage.http.results.QueryResults;
+
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Fetch pages of results in background, following the "next" links sent by a SaGe server.
+ * As soon as page N has been received, the request for page N+1 is sent, so the network round trip
+ * is hidden behind the consumption of the current page.
+ * At most "depth" pages can be fetched in advance, i.e., before they are consumed.
+ *
+ * Requests are chained using asynchronous callbacks, so no thread waits for pages on behalf of the prefetcher.
+ * @author Thomas Minier
+ */
+class PagePrefetcher {
+    private final Function<Optional<String>, CompletableFuture<QueryResults>> fetcher;
+    private final BlockingQueue<QueryResults> pages;
+    private final int depth;
+    // Next link of the next page to fetch, when prefetching has been paused because enough pages are buffered
+    private Optional<String> pendingLink;
+    // Request sent for the next page, if any, cancelled along with the prefetcher
+    private CompletableFuture<QueryResults> inFlight;
+    private boolean started;
+    private boolean cancelled;
+
+    /**
+     * Constructor
+     * @param fetcher - Function used to fetch a page of results asynchronously, given an optional next link
+     * @param depth - Maximum number of pages fetched in advance
+     */
+    PagePrefetcher(Function<Optional<String>, CompletableFuture<QueryResults>> fetcher, int depth) {
+        this.fetcher = fetcher;
+        this.depth = depth;
+        pages = new LinkedBlockingQueue<>();
+        pendingLink = null;
+        inFlight = null;
+        started = false;
+        cancelled = false;
+    }
+
+    /**
+     * Start fetching pages in background, starting from an optional next link
+     * @param nextLink - Optional next link from which the first page is fetched
+     */
+    synchronized void start(Optional<String> nextLink) {
+        if (cancelled) {
+            return;
+        }
+        started = true;
+        fetch(nextLink);
+    }
+
+    /**
+     * Test if the prefetcher has been started
+     * @return True if the prefetcher has been started, False otherwise
+     */
+    synchronized boolean hasStarted() {
+        return started;
+    }
+
+    /**
+     * Send the request for a page of results
+     * @param nextLink - Optional next link of the page
+     */
+    private void fetch(Optional<String> nextLink) {
+        CompletableFuture<QueryResults> request;
+        try {
+            request = fetcher.apply(nextLink);
+        } catch (RuntimeException e) {
+            request = CompletableFuture.completedFuture(QueryResults.withError(e.getMessage()));
+        }
+        inFlight = request;
+        // never leave the consumer waiting for a page that will not come
+        request.whenComplete((page, error) -> onPage(error != null ? QueryResults.withError(error.getMessage()) : page));
+    }
+
+    /**
+     * Called when a page of results has been received, to buffer it and fetch the next one if possible
+     * @param page - Page of results received
+     */
+    private synchronized void onPage(QueryResults page) {
+        if (cancelled) {
+            return;
+        }
+        inFlight = null;
+        pages.add(page);
+        // stop on errors or when the query has been completely evaluated
+        if (page.hasError() || !page.hasNext()) {
+            return;
+        }
+        if (pages.size() < depth) {
+            fetch(page.getNext());
+        } else {
+            pendingLink = page.getNext();
+        }
+    }
+
+    /**
+     * Get the next page of results, waiting for it if it has not been fetched yet
+     * @return The next page of results
+     */
+    QueryResults nextPage() {
+        if (isCancelled()) {
+            return cancelledPage();
+        }
+        try {
+            QueryResults page = pages.take();
+            synchronized (this) {
+                if (page.hasError()) {
+                    // prefetching stops on errors, so it must be restarted for the next page
+                    started = false;
+                } else if (pendingLink != null) {
+                    // a slot has been freed, so prefetching can resume
+                    Optional<String> nextLink = pendingLink;
+                    pendingLink = null;
+                    fetch(nextLink);
+                }
+            }
+            return page;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return QueryResults.withError("Interrupted while waiting for the next page of results");
+        }
+    }
+
+    /**
+     * Test if the prefetcher has been cancelled
+     * @return True if the prefetcher has been cancelled, False otherwise
+     */
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    private static QueryResults cancelledPage() {
+        return QueryResults.withError("Query evaluation has been cancelled");
+    }
+
+    /**
+     * Stop fetching pages, cancel the pending request and discard all pages fetched in advance.
+     * A consumer waiting for the next page is woken up with an error page.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        pendingLink = null;
+        if (inFlight != null) {
+            inFlight.cancel(true);
+            inFlight = null;
+        }
+        pages.clear();
+        pages.add(cancelledPage());
+    }
+}
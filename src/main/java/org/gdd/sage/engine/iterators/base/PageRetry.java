@@ -0,0 +1,71 @@
+package org.gdd.sage.engine.iterators.base;
+
+import org.apache.jena.query.ARQ;
+import org.apache.jena.query.QueryExecException;
+import org.gdd.sage.http.SageRemoteClient;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides if a page of results that could not be fetched is fetched again, using the last "next" link, so no results are lost nor duplicated.
+ * A page is fetched again a bounded number of times, after a delay that doubles after each failure.
+ * If the server does not accept requests for now, e.g., while its circuit breaker is open, the delay lasts until it does,
+ * so the page is not fetched again while requests fail fast.
+ * Once all attempts have failed, query evaluation fails, rather than ending with incomplete results.
+ * @author Thomas Minier
+ */
+public class PageRetry {
+    // Maximum number of consecutive failures when fetching a page, before query evaluation is abandoned
+    public static final int MAX_PAGE_ATTEMPTS = 3;
+    // Delay before a failed page is fetched again (in ms), doubled after each failure
+    private static final long PAGE_RETRY_DELAY = 100;
+    private final String graphURI;
+    private final SageRemoteClient client;
+    private int nbFailures;
+
+    /**
+     * Constructor
+     * @param graphURI - URI of the graph queried
+     * @param client - HTTP client used to query the SaGe server
+     */
+    public PageRetry(String graphURI, SageRemoteClient client) {
+        this.graphURI = graphURI;
+        this.client = client;
+        nbFailures = 0;
+    }
+
+    /**
+     * Report that a page has been fetched, so the next page gets all its attempts
+     */
+    public void onSuccess() {
+        nbFailures = 0;
+    }
+
+    /**
+     * Report that a page could not be fetched, and wait before it can be fetched again
+     * @param error - Error that occurred while fetching the page
+     * @throws QueryExecException if all attempts have failed, or if the thread has been interrupted while waiting
+     */
+    public void onFailure(String error) {
+        nbFailures++;
+        if (nbFailures >= MAX_PAGE_ATTEMPTS || !waitBeforeRetry()) {
+            throw new QueryExecException("Failed to fetch a page of results from " + graphURI + " after " + nbFailures + " attempts: " + error);
+        }
+        ARQ.getExecLogger().warn("Failed to fetch a page of results from " + graphURI + ", retrying: " + error);
+    }
+
+    /**
+     * Wait before a failed page is fetched again
+     * @return True if the page can be fetched again, False if the thread has been interrupted
+     */
+    private boolean waitBeforeRetry() {
+        try {
+            long delay = Math.max(PAGE_RETRY_DELAY << (nbFailures - 1), client.getRetryDelay(TimeUnit.MILLISECONDS));
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
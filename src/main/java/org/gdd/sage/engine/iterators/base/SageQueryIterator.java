@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Base class used to implements Iterators that evaluate queries using a Sage server
@@ -17,8 +18,12 @@ import java.util.Optional;
 public abstract class SageQueryIterator extends BufferedIterator {
     private String graphURI;
     private SageRemoteClient client;
+    private PagePrefetcher prefetcher;
+    private QueryResults firstPage;
     protected Optional<String> nextLink;
     protected boolean hasNextPage = false;
+    private PageRetry retry;
+    private volatile boolean cancelled = false;
     protected Logger logger;
 
     public String getGraphURI() {
@@ -37,13 +42,64 @@ public abstract class SageQueryIterator extends BufferedIterator {
      */
     protected abstract QueryResults query (Optional<String> nextLink);
 
+    /**
+     * Like {@link #query(Optional)}, but does not wait for the query results
+     * @param nextLink Optional next link, used to resume query execution
+     * @return A future completed with the query execution results
+     */
+    protected abstract CompletableFuture<QueryResults> queryAsync(Optional<String> nextLink);
+
     public SageQueryIterator(String graphURI, SageRemoteClient client) {
         this.graphURI = graphURI;
         this.client = client;
         this.nextLink = Optional.empty();
+        this.prefetcher = null;
+        this.firstPage = null;
+        retry = new PageRetry(graphURI, client);
         logger = ARQ.getExecLogger();
     }
 
+    /**
+     * Fetch the next pages of results in background, instead of waiting for the current page to be consumed.
+     * Must be called before the iterator starts producing bindings.
+     * @param depth - Maximum number of pages fetched in advance. A depth of 0 disables prefetching.
+     */
+    public void enablePrefetching(int depth) {
+        if (depth > 0) {
+            prefetcher = new PagePrefetcher(this::queryAsync, depth);
+        } else {
+            prefetcher = null;
+        }
+    }
+
+    /**
+     * Use a page of results that has already been fetched as the first page, e.g., to estimate the cost of a join.
+     * Must be called before the iterator starts producing bindings.
+     * @param page - First page of results
+     */
+    public void setFirstPage(QueryResults page) {
+        firstPage = page;
+    }
+
+    /**
+     * Fetch the next page of results, either from the server or from the prefetched pages
+     * @return The next page of results
+     */
+    private QueryResults nextPage() {
+        if (firstPage != null) {
+            QueryResults page = firstPage;
+            firstPage = null;
+            return page;
+        }
+        if (prefetcher == null) {
+            return query(nextLink);
+        }
+        if (!prefetcher.hasStarted()) {
+            prefetcher.start(nextLink);
+        }
+        return prefetcher.nextPage();
+    }
+
     @Override
     protected boolean canProduceBindings() {
         return hasNextPage;
@@ -51,10 +107,21 @@ public abstract class SageQueryIterator extends BufferedIterator {
 
     @Override
     protected List<Binding> produceBindings() {
-        QueryResults qr = query(nextLink);
+        QueryResults qr = nextPage();
+        // pages are not fetched again once query evaluation has been cancelled
+        if (cancelled) {
+            hasNextPage = false;
+            return new ArrayList<>();
+        }
         if (qr.hasError()) {
+            // results would be incomplete without the page, so query evaluation fails rather than ending silently
+            hasNextPage = false;
+            retry.onFailure(qr.getError());
+            // the page is fetched again using the last next link, even if the failed page is the first one
+            hasNextPage = true;
             return new ArrayList<>();
         }
+        retry.onSuccess();
         nextLink = qr.getNext();
         hasNextPage = qr.hasNext();
         return qr.getBindings();
@@ -63,6 +130,18 @@ public abstract class SageQueryIterator extends BufferedIterator {
     @Override
     protected void closeIterator() {
         super.closeIterator();
+        if (prefetcher != null) {
+            prefetcher.cancel();
+        }
         hasNextPage = false;
     }
+
+    @Override
+    protected void requestCancel() {
+        super.requestCancel();
+        cancelled = true;
+        if (prefetcher != null) {
+            prefetcher.cancel();
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adjusts the size of bound join buckets at runtime, using the outcome of the buckets already evaluated.
+ * The size grows while buckets are evaluated in a single request, with a latency and a number of results under targets.
+ * It is halved when the server has to paginate a bucket over many "next" links, as each page costs a new HTTP request,
+ * when a paginated bucket exceeds the target latency, or when a bucket fails.
+ * As SaGe paginates results using a time quantum, a few pages are expected for most buckets, and do not change the size.
+ *
+ * Buckets are evaluated in parallel, so their outcomes are reported out of order:
+ * only buckets of the current size can make it grow, and a bucket can shrink the size at most to half its own size.
+ * @author Thomas Minier
+ */
+public class AdaptiveBucketSize {
+    public static final int DEFAULT_MIN_SIZE = 1;
+    public static final int DEFAULT_MAX_SIZE = 100;
+    public static final long DEFAULT_TARGET_LATENCY = 1000;
+    public static final int DEFAULT_TARGET_RESULTS = 2000;
+    // Ratio applied to the size when buckets stay under targets
+    private static final double GROWTH_RATIO = 1.25;
+    // Number of pages of a bucket above which the bucket is considered too large
+    public static final int MAX_PAGES = 3;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long targetLatency;
+    private final int targetResults;
+    private int size;
+
+    /**
+     * Constructor
+     * @param initialSize - Initial size of buckets
+     * @param minSize - Minimum size of buckets
+     * @param maxSize - Maximum size of buckets
+     * @param targetLatency - Maximum latency of a request for a bucket to grow
+     * @param unit - Unit of the target latency
+     * @param targetResults - Maximum number of results per request for a bucket to grow
+     */
+    public AdaptiveBucketSize(int initialSize, int minSize, int maxSize, long targetLatency, TimeUnit unit, int targetResults) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.targetLatency = unit.toNanos(targetLatency);
+        this.targetResults = targetResults;
+        size = Math.min(Math.max(initialSize, this.minSize), this.maxSize);
+    }
+
+    /**
+     * Constructor, using default bounds and targets
+     * @param initialSize - Initial size of buckets
+     */
+    public AdaptiveBucketSize(int initialSize) {
+        this(initialSize, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_TARGET_LATENCY, TimeUnit.MILLISECONDS, DEFAULT_TARGET_RESULTS);
+    }
+
+    /**
+     * Get the size of the next buckets
+     * @return The size of the next buckets
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Report the outcome of a bucket that has been completely evaluated
+     * @param bucketSize - Size of the bucket
+     * @param nbRequests - Number of HTTP requests sent to evaluate the bucket, i.e., its number of pages, or 0 if no request was needed
+     * @param latency - Total latency of the requests, in nanoseconds
+     * @param nbResults - Total number of results of the requests
+     */
+    public synchronized void onBucketCompleted(int bucketSize, int nbRequests, long latency, int nbResults) {
+        if (nbRequests > MAX_PAGES || (nbRequests > 1 && latency > targetLatency)) {
+            // the bucket has been paginated over many pages, or slowly, so it was too large
+            shrink(bucketSize);
+        } else if (nbRequests <= 1 && bucketSize >= size && latency <= targetLatency && nbResults <= targetResults) {
+            size = Math.min(maxSize, Math.max(size + 1, (int) (size * GROWTH_RATIO)));
+        }
+    }
+
+    /**
+     * Report that the evaluation of a bucket has failed
+     * @param bucketSize - Size of the bucket
+     */
+    public synchronized void onBucketFailed(int bucketSize) {
+        shrink(bucketSize);
+    }
+
+    private void shrink(int bucketSize) {
+        size = Math.max(minSize, Math.min(size, bucketSize / 2));
+    }
+}
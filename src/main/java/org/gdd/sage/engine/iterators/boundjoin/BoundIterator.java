@@ -1,23 +1,20 @@
 package org.gdd.sage.engine.iterators.boundjoin;
 
-import com.google.common.collect.Lists;
-import org.apache.jena.query.ARQ;
-import org.apache.jena.sparql.core.BasicPattern;
-import org.apache.jena.sparql.core.Var;
+import org.apache.jena.query.QueryExecException;
 import org.apache.jena.sparql.engine.binding.Binding;
-import org.apache.jena.sparql.engine.binding.BindingHashMap;
 import org.gdd.sage.engine.iterators.base.BufferedIterator;
+import org.gdd.sage.engine.iterators.base.PageRetry;
 import org.gdd.sage.http.SageRemoteClient;
 import org.gdd.sage.http.results.QueryResults;
-import org.slf4j.Logger;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 /**
- * Evaluates an Union of bounded BGP (as produced by a Bound join) using a SaGe server
+ * Evaluates a bucket of a Bound join (e.g., an Union of bounded BGP) using a SaGe server.
+ * A page of the bucket that could not be fetched is fetched again from the last "next" link (see {@link PageRetry}),
+ * and evaluation fails once all attempts have failed, so the solutions of the bucket are never silently dropped.
  * @author Thomas Minier
  */
 public class BoundIterator extends BufferedIterator {
@@ -25,68 +22,78 @@ public class BoundIterator extends BufferedIterator {
     private SageRemoteClient client;
     protected Optional<String> nextLink;
     protected boolean hasNextPage;
-    private List<BasicPattern> bag;
-    private List<Binding> block;
+    private boolean failed;
+    private BoundJoinBucket bucket;
+    private String query;
     private int bagSize;
-    private Map<Integer, Binding> rewritingMap;
-    private boolean isContainmentQuery;
+    private AdaptiveBucketSize bucketSize;
+    // Statistics about the evaluation of the bucket
+    private int nbRequests;
+    private long latency;
+    private int nbResults;
+    private PageRetry retry;
 
-    private Logger logger;
+    public BoundIterator(String graphURI, SageRemoteClient client, BoundJoinBucket bucket) {
+        this(graphURI, client, bucket, null);
+    }
 
-    public BoundIterator(String graphURI, SageRemoteClient client, List<BasicPattern> bag, List<Binding> block, Map<Integer, Binding> rewritingMap, boolean isContainmentQuery) {
+    /**
+     * Constructor
+     * @param graphURI - Default Graph URI
+     * @param client - HTTP client used to query the SaGe server
+     * @param bucket - Bucket of solution mappings, with the query that evaluates the BGP for them
+     * @param bucketSize - Adaptive size of buckets, to which the outcome of the bucket is reported, or null
+     */
+    public BoundIterator(String graphURI, SageRemoteClient client, BoundJoinBucket bucket, AdaptiveBucketSize bucketSize) {
         this.graphURI = graphURI;
         this.client = client;
         this.nextLink = Optional.empty();
-        this.bag = bag;
-        this.block = block;
-        this.bagSize = bag.size();
-        this.rewritingMap = rewritingMap;
+        this.bucket = bucket;
+        query = bucket.getQuery();
+        this.bagSize = bucket.getBlock().size();
         hasNextPage = true;
-        this.isContainmentQuery = isContainmentQuery;
-        logger = ARQ.getExecLogger();
+        failed = false;
+        this.bucketSize = bucketSize;
+        nbRequests = 0;
+        latency = 0;
+        nbResults = 0;
+        retry = new PageRetry(graphURI, client);
     }
 
     public List<Binding> getBlock() {
-        return block;
+        return bucket.getBlock();
     }
 
     /**
-     * Find a rewriting key in a list of variables
-     * For example, in [ ?s, ?o_1 ], the rewriting key is 1
-     * @param vars List of SPARQL variables to analyze
-     * @return The rewriting key found, or -1 if no key was found
+     * Get the number of HTTP requests sent to evaluate the bucket so far
+     * @return The number of HTTP requests sent
      */
-    private int findKey(List<Var> vars) {
-        int key = -1;
-        for(Var v: vars) {
-            for(int k = 0; k <= bagSize; k++) {
-                if (v.getVarName().endsWith("_" + k)) {
-                    return k;
-                }
-            }
-        }
-        return key;
+    public int getNbRequests() {
+        return nbRequests;
     }
 
     /**
-     * Undo the bound join rewriting on solutions bindings, e.g., rewrite all variables "?o_1" to "?o"
-     * @param key Rewriting key used
-     * @param input Binding to process
-     * @param vars List of the binding variables
-     * @return
+     * Get the total latency of the requests sent to evaluate the bucket so far
+     * @return The total latency of the requests, in nanoseconds
      */
-    private BindingHashMap revertBinding (int key, Binding input, List<Var> vars) {
-        BindingHashMap newBinding = new BindingHashMap();
-        for(Var v: vars) {
-            String vName = v.getVarName();
-            if (vName.endsWith("_" + key)) {
-                int index = vName.indexOf("_" + key);
-                newBinding.add(Var.alloc(vName.substring(0, index)), input.get(v));
-            } else {
-                newBinding.add(v, input.get(v));
-            }
-        }
-        return newBinding;
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Get the number of results received so far
+     * @return The number of results received
+     */
+    public int getNbResults() {
+        return nbResults;
+    }
+
+    /**
+     * Test if the evaluation of the bucket has failed, in which case its solutions are incomplete
+     * @return True if the evaluation has failed, False otherwise
+     */
+    public boolean hasFailed() {
+        return failed;
     }
 
 
@@ -96,22 +103,15 @@ public class BoundIterator extends BufferedIterator {
      * @return
      */
     protected List<Binding> rewriteSolutions(List<Binding> input) {
-        List<Binding> solutions = new LinkedList<>();
-        if (input.size() == 1 && input.get(0).isEmpty()) {
-            input.clear();
-        }
-        if (input.isEmpty() && isContainmentQuery) {
-            solutions.addAll(block);
-        } else if (!input.isEmpty()) {
+        List<Binding> solutions = new ArrayList<>(input.size());
+        // pages of results may be shared with a cache, so they must not be modified
+        boolean noSolutions = input.isEmpty() || (input.size() == 1 && input.get(0).isEmpty());
+        if (noSolutions && bucket.isContainmentQuery()) {
+            solutions.addAll(bucket.getBlock());
+        } else if (!noSolutions) {
             for(Binding oldBinding: input) {
-                List<Var> vars = Lists.newArrayList(oldBinding.vars());
-                int key = findKey(vars);
-                // rewrite binding, and then merge it with the corresponding one in the bucket
-                BindingHashMap newBinding = revertBinding(key, oldBinding, vars);
-                if (rewritingMap.containsKey(key)) {
-                    newBinding.addAll(rewritingMap.get(key));
-                }
-                solutions.add(newBinding);
+                // rewrite binding, and then merge it with the corresponding ones in the bucket
+                bucket.revert(oldBinding, solutions);
             }
         }
         return solutions;
@@ -135,14 +135,30 @@ public class BoundIterator extends BufferedIterator {
 
     @Override
     protected List<Binding> produceBindings() {
-        List<Binding> solutions = new LinkedList<>();
-        QueryResults queryResults = client.query(graphURI, bag, nextLink);
+        List<Binding> solutions = new ArrayList<>();
+        long startTime = System.nanoTime();
+        QueryResults queryResults = client.query(graphURI, query, nextLink);
+        latency += System.nanoTime() - startTime;
+        nbRequests++;
         if (queryResults.hasError()) {
-            // an error has occurred, report it
-            hasNextPage = false;
-            logger.error(queryResults.getError());
+            try {
+                // the page is fetched again using the last next link
+                retry.onFailure(queryResults.getError());
+            } catch (QueryExecException e) {
+                hasNextPage = false;
+                failed = true;
+                if (bucketSize != null) {
+                    bucketSize.onBucketFailed(bagSize);
+                }
+                throw e;
+            }
         } else {
+            retry.onSuccess();
+            nbResults += queryResults.getBindings().size();
             solutions.addAll(rewriteSolutions(reviewResults(queryResults)));
+            if (!hasNextPage && bucketSize != null) {
+                bucketSize.onBucketCompleted(bagSize, nbRequests, latency, nbResults);
+            }
         }
         return solutions;
     }
@@ -0,0 +1,37 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A bucket of solution mappings evaluated by a bound join, with the query sent to the SaGe server to evaluate it
+ * @author Thomas Minier
+ */
+public interface BoundJoinBucket {
+    /**
+     * Get the SPARQL query that evaluates the BGP for all the bindings of the bucket
+     * @return The SPARQL query that evaluates the bucket
+     */
+    String getQuery();
+
+    /**
+     * Get the bindings of the bucket
+     * @return The bindings of the bucket
+     */
+    List<Binding> getBlock();
+
+    /**
+     * Test if the query contains no variables, i.e., if all bindings of the bucket are solutions when the query has a solution
+     * @return True if the query contains no variables, False otherwise
+     */
+    boolean isContainmentQuery();
+
+    /**
+     * Map a solution of the query back to the bindings of the bucket, and join it with each of them
+     * @param solution - Solution of the query
+     * @param results - Collection where the solutions of the bound join are added
+     */
+    void revert(Binding solution, Collection<Binding> results);
+}
@@ -0,0 +1,60 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.expr.Expr;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How the buckets of a bound join are encoded into SPARQL queries
+ * @author Thomas Minier
+ */
+public enum BoundJoinEncoding {
+    /**
+     * An union of the BGP bounded with each binding, where variables are renamed to map solutions back to bindings
+     * (see {@link BoundJoinRewriter})
+     */
+    UNION(AdaptiveBucketSize.DEFAULT_MAX_SIZE),
+    /**
+     * The BGP sent once, with the values of the join variables in a VALUES clause (see {@link ValuesBoundJoinRewriter}).
+     * Queries grow by one row per binding rather than by one BGP, so buckets can be much larger.
+     */
+    VALUES(1000);
+
+    private final int maxBucketSize;
+
+    BoundJoinEncoding(int maxBucketSize) {
+        this.maxBucketSize = maxBucketSize;
+    }
+
+    /**
+     * Get the maximum size of the buckets encoded this way
+     * @return The maximum size of the buckets
+     */
+    public int getMaxBucketSize() {
+        return maxBucketSize;
+    }
+
+    /**
+     * Create a rewriter that encodes the buckets of a bound join this way
+     * @param bgp - Basic Graph pattern to join with
+     * @return The rewriter
+     */
+    public BucketRewriter newRewriter(BasicPattern bgp) {
+        return newRewriter(bgp, Collections.emptyList());
+    }
+
+    /**
+     * Create a rewriter that encodes the buckets of a bound join this way, with filters pushed into the queries
+     * @param bgp - Basic Graph pattern to join with
+     * @param filters - Filters that only use variables of the BGP
+     * @return The rewriter
+     */
+    public BucketRewriter newRewriter(BasicPattern bgp, List<Expr> filters) {
+        if (this == VALUES) {
+            return new ValuesBoundJoinRewriter(bgp, filters);
+        }
+        return new BoundJoinRewriter(bgp, filters);
+    }
+}
@@ -0,0 +1,240 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.Expr;
+import org.gdd.sage.http.data.SageQueryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Performs the rewriting used by a bound join, for all the buckets of the join.
+ * The BGP is bounded with each binding of a bucket, and the variables of the k-th bounded BGP are renamed by appending "_k",
+ * so the solutions of the union of the bounded BGPs can be mapped back to the binding used to bound them.
+ *
+ * Renamed variables are created once per join, and are mapped back to their rewriting key and original variable,
+ * so the key of a solution is resolved with a single lookup, and solutions are extended with the bindings of the bucket
+ * rather than copied.
+ * @author Thomas Minier
+ */
+public class BoundJoinRewriter implements BucketRewriter {
+    private final BasicPattern bgp;
+    private final List<Expr> filters;
+    private final Map<Var, Integer> variableIndexes;
+    private final List<Var> variables;
+    // renamings.get(key)[i] is the renaming of the i-th variable of the BGP with the key
+    private final List<Var[]> renamings;
+    private final Map<Var, RenamedVariable> reverseRenamings;
+
+    /**
+     * A variable renamed using a rewriting key
+     */
+    private static class RenamedVariable {
+        private final int key;
+        private final Var variable;
+
+        RenamedVariable(int key, Var variable) {
+            this.key = key;
+            this.variable = variable;
+        }
+    }
+
+    /**
+     * A bucket of bindings, with the BGPs bounded and rewritten using these bindings
+     */
+    public static class Bucket implements BoundJoinBucket {
+        private final BoundJoinRewriter rewriter;
+        private final List<BasicPattern> bag;
+        private final List<List<Expr>> bagFilters;
+        private final List<Binding> block;
+        private final boolean isContainmentQuery;
+
+        private Bucket(BoundJoinRewriter rewriter, List<BasicPattern> bag, List<List<Expr>> bagFilters, List<Binding> block, boolean isContainmentQuery) {
+            this.rewriter = rewriter;
+            this.bag = bag;
+            this.bagFilters = bagFilters;
+            this.block = block;
+            this.isContainmentQuery = isContainmentQuery;
+        }
+
+        /**
+         * Get the bounded and rewritten BGPs, the k-th one being rewritten with the key k
+         * @return The bounded and rewritten BGPs
+         */
+        public List<BasicPattern> getBag() {
+            return bag;
+        }
+
+        @Override
+        public String getQuery() {
+            return SageQueryBuilder.buildUnionQuery(bag, bagFilters);
+        }
+
+        /**
+         * Get the bindings used to bound the BGPs
+         * @return The bindings used to bound the BGPs
+         */
+        @Override
+        public List<Binding> getBlock() {
+            return block;
+        }
+
+        /**
+         * Test if the bounded BGPs contain no variables
+         * @return True if the bounded BGPs contain no variables, False otherwise
+         */
+        @Override
+        public boolean isContainmentQuery() {
+            return isContainmentQuery;
+        }
+
+        /**
+         * Undo the rewriting on a solution of the bounded BGPs, and join it with the binding used to bound its BGP
+         * @param solution - Solution to process
+         * @return The solution of the bound join
+         */
+        public Binding revert(Binding solution) {
+            return rewriter.revert(solution, block);
+        }
+
+        @Override
+        public void revert(Binding solution, Collection<Binding> results) {
+            results.add(revert(solution));
+        }
+    }
+
+    /**
+     * Constructor
+     * @param bgp - Basic Graph pattern to join with
+     */
+    public BoundJoinRewriter(BasicPattern bgp) {
+        this(bgp, Collections.emptyList());
+    }
+
+    /**
+     * Constructor, with filters pushed into the bounded BGPs
+     * @param bgp - Basic Graph pattern to join with
+     * @param filters - Filters that only use variables of the BGP, bounded and rewritten like the BGP
+     */
+    public BoundJoinRewriter(BasicPattern bgp, List<Expr> filters) {
+        this.bgp = bgp;
+        this.filters = filters;
+        variables = new ArrayList<>();
+        variableIndexes = new HashMap<>();
+        for (Triple pattern : bgp) {
+            addVariable(pattern.getSubject());
+            addVariable(pattern.getPredicate());
+            addVariable(pattern.getObject());
+        }
+        renamings = new ArrayList<>();
+        reverseRenamings = new ConcurrentHashMap<>();
+    }
+
+    private void addVariable(Node node) {
+        if (node.isVariable() && !variableIndexes.containsKey(Var.alloc(node))) {
+            variableIndexes.put(Var.alloc(node), variables.size());
+            variables.add(Var.alloc(node));
+        }
+    }
+
+    /**
+     * Get the renamings of the BGP variables for a rewriting key, creating them if needed
+     * @param key - Rewriting key
+     * @return The renamings of the BGP variables
+     */
+    private synchronized Var[] getRenamings(int key) {
+        while (renamings.size() <= key) {
+            int newKey = renamings.size();
+            Var[] renamed = new Var[variables.size()];
+            for (int i = 0; i < renamed.length; i++) {
+                renamed[i] = Var.alloc(variables.get(i).getVarName() + "_" + newKey);
+                reverseRenamings.put(renamed[i], new RenamedVariable(newKey, variables.get(i)));
+            }
+            renamings.add(renamed);
+        }
+        return renamings.get(key);
+    }
+
+    private Node rename(Node node, Var[] renamed) {
+        if (node.isVariable()) {
+            Integer index = variableIndexes.get(Var.alloc(node));
+            // variables are only renamed with their own key, so they are always found
+            return index != null ? renamed[index] : node;
+        }
+        return node;
+    }
+
+    /**
+     * Bound the BGP with each binding of a bucket, and rewrite the bounded BGPs
+     * @param block - Bucket of bindings
+     * @return The bucket, with the bounded and rewritten BGPs
+     */
+    @Override
+    public Bucket rewrite(List<Binding> block) {
+        List<BasicPattern> bag = new ArrayList<>(block.size());
+        List<List<Expr>> bagFilters = new ArrayList<>(block.size());
+        boolean isContainmentQuery = true;
+        int key = 0;
+        for (Binding binding : block) {
+            Var[] renamed = getRenamings(key);
+            BasicPattern boundedBGP = new BasicPattern();
+            for (Triple pattern : bgp) {
+                Triple boundedTriple = Substitute.substitute(pattern, binding);
+                Node subject = boundedTriple.getSubject();
+                Node predicate = boundedTriple.getPredicate();
+                Node object = boundedTriple.getObject();
+                isContainmentQuery = isContainmentQuery && !subject.isVariable() && !predicate.isVariable() && !object.isVariable();
+                boundedBGP.add(new Triple(rename(subject, renamed), rename(predicate, renamed), rename(object, renamed)));
+            }
+            bag.add(boundedBGP);
+            List<Expr> boundedFilters = new ArrayList<>(filters.size());
+            for (Expr filter : filters) {
+                boundedFilters.add(filter.copySubstitute(binding).applyNodeTransform(node -> rename(node, renamed)));
+            }
+            bagFilters.add(boundedFilters);
+            key++;
+        }
+        // the block is copied into an array list, so the binding of a key is found in constant time
+        return new Bucket(this, bag, bagFilters, new ArrayList<>(block), isContainmentQuery);
+    }
+
+    /**
+     * Undo the rewriting on a solution of bounded BGPs, and join it with the binding used to bound its BGP
+     * @param solution - Solution to process
+     * @param block - Bucket of bindings used to bound the BGPs
+     * @return The solution of the bound join
+     */
+    Binding revert(Binding solution, List<Binding> block) {
+        // the key is given by any renamed variable of the solution
+        RenamedVariable first = null;
+        Iterator<Var> vars = solution.vars();
+        while (first == null && vars.hasNext()) {
+            first = reverseRenamings.get(vars.next());
+        }
+        if (first == null || first.key >= block.size()) {
+            return solution;
+        }
+        // the binding used to bound the BGP is shared by all its solutions, rather than copied
+        BindingMap result = BindingFactory.create(block.get(first.key));
+        vars = solution.vars();
+        while (vars.hasNext()) {
+            Var variable = vars.next();
+            RenamedVariable renamed = reverseRenamings.get(variable);
+            result.add(renamed != null ? renamed.variable : variable, solution.get(variable));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,18 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.List;
+
+/**
+ * Rewrites the buckets of a bound join into queries sent to a SaGe server
+ * @author Thomas Minier
+ */
+public interface BucketRewriter {
+    /**
+     * Rewrite a bucket of bindings into a query that evaluates the BGP for all of them
+     * @param block - Bucket of bindings
+     * @return The rewritten bucket
+     */
+    BoundJoinBucket rewrite(List<Binding> block);
+}
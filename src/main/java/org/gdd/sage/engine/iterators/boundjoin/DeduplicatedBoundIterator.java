@@ -0,0 +1,238 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.gdd.sage.engine.iterators.base.BufferedIterator;
+import org.gdd.sage.http.SageRemoteClient;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a bucket of a Bound join, where bindings are deduplicated on their join key,
+ * i.e., the values of the BGP variables they bound, as bindings with the same key join with the same solutions.
+ * The BGP is only evaluated once per distinct key, using its projection on the BGP variables,
+ * and its solutions are fanned out to all bindings with this key.
+ *
+ * Keys already resolved by previous buckets are read from a memo table shared by all buckets of the join, rather than evaluated again.
+ * Projections are grouped by the variables they bound, so the key of a solution is found from the solution itself, and each group is evaluated in its own request.
+ * The outcome of the whole bucket is reported once to the adaptive size of buckets, with the size of the bucket and the requests of all its groups,
+ * as the number of keys in the bucket is not what the adaptive size controls.
+ * @author Thomas Minier
+ */
+public class DeduplicatedBoundIterator extends BufferedIterator {
+    private final String graphURI;
+    private final SageRemoteClient client;
+    private final BucketRewriter rewriter;
+    private final List<Var> variables;
+    private final JoinKeyMemo memo;
+    private final AdaptiveBucketSize bucketSize;
+    private final int blockSize;
+    // bindings of the bucket, indexed by their join key
+    private final Map<List<Node>, List<Binding>> bindingsByKey;
+    private final List<Binding> memoizedSolutions;
+    private final Deque<KeyGroup> pendingGroups;
+    private KeyGroup currentGroup;
+    // Statistics about the evaluation of the bucket, summed over all groups
+    private int nbRequests;
+    private long latency;
+    private int nbResults;
+    private boolean reported;
+
+    /**
+     * Distinct join keys that bound the same variables, evaluated in a single request
+     */
+    private class KeyGroup {
+        private final boolean[] boundVariables;
+        private final List<Binding> projections;
+        // solutions of each key, or null if a key has too many solutions to be memoized
+        private final Map<List<Node>, List<Binding>> resolvedKeys;
+        private BoundIterator iterator;
+
+        KeyGroup(boolean[] boundVariables) {
+            this.boundVariables = boundVariables;
+            projections = new ArrayList<>();
+            resolvedKeys = new LinkedHashMap<>();
+        }
+
+        void add(List<Node> key) {
+            BindingMap projection = BindingFactory.create();
+            for (int i = 0; i < boundVariables.length; i++) {
+                if (boundVariables[i]) {
+                    projection.add(variables.get(i), key.get(i));
+                }
+            }
+            projections.add(projection);
+            resolvedKeys.put(key, new ArrayList<>());
+        }
+
+        BoundIterator start() {
+            // the outcome is reported for the whole bucket, rather than for each group
+            iterator = new BoundIterator(graphURI, client, rewriter.rewrite(projections), null);
+            return iterator;
+        }
+
+        /**
+         * Fan out a solution of the group to all bindings with its key
+         */
+        void fanOut(Binding solution, List<Binding> results) {
+            List<Node> key = new ArrayList<>(boundVariables.length);
+            for (int i = 0; i < boundVariables.length; i++) {
+                key.add(boundVariables[i] ? solution.get(variables.get(i)) : null);
+            }
+            List<Binding> bindings = bindingsByKey.get(key);
+            if (bindings != null) {
+                for (Binding binding : bindings) {
+                    results.add(ValuesBoundJoinRewriter.extend(binding, solution));
+                }
+                List<Binding> solutions = resolvedKeys.get(key);
+                if (solutions != null && solutions.size() < memo.getMaxSolutionsPerKey()) {
+                    solutions.add(solution);
+                } else {
+                    resolvedKeys.put(key, null);
+                }
+            }
+        }
+
+        /**
+         * Memoize the keys of the group, once all their solutions have been fetched
+         */
+        void complete() {
+            nbRequests += iterator.getNbRequests();
+            latency += iterator.getLatency();
+            nbResults += iterator.getNbResults();
+            if (!iterator.hasFailed()) {
+                resolvedKeys.forEach((key, solutions) -> {
+                    if (solutions != null) {
+                        memo.put(key, solutions);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Constructor
+     * @param graphURI - Default Graph URI
+     * @param client - HTTP client used to query the SaGe server
+     * @param rewriter - Rewriter used to encode the projections of the bucket
+     * @param variables - Variables of the BGP, in the order used to build join keys
+     * @param block - Bucket of solution mappings
+     * @param memo - Memo table of the join keys already resolved by the join
+     * @param bucketSize - Adaptive size of buckets, to which the outcome of the bucket is reported, or null
+     */
+    public DeduplicatedBoundIterator(String graphURI, SageRemoteClient client, BucketRewriter rewriter, List<Var> variables, List<Binding> block, JoinKeyMemo memo, AdaptiveBucketSize bucketSize) {
+        this.graphURI = graphURI;
+        this.client = client;
+        this.rewriter = rewriter;
+        this.variables = variables;
+        this.memo = memo;
+        this.bucketSize = bucketSize;
+        blockSize = block.size();
+        bindingsByKey = new LinkedHashMap<>();
+        for (Binding binding : block) {
+            List<Node> key = new ArrayList<>(variables.size());
+            for (Var variable : variables) {
+                key.add(binding.get(variable));
+            }
+            bindingsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(binding);
+        }
+        memoizedSolutions = new ArrayList<>();
+        Map<List<Boolean>, KeyGroup> groups = new LinkedHashMap<>();
+        bindingsByKey.forEach((key, bindings) -> {
+            List<Binding> solutions = memo.get(key);
+            if (solutions != null) {
+                for (Binding solution : solutions) {
+                    for (Binding binding : bindings) {
+                        memoizedSolutions.add(ValuesBoundJoinRewriter.extend(binding, solution));
+                    }
+                }
+            } else {
+                boolean[] boundVariables = new boolean[key.size()];
+                List<Boolean> signature = new ArrayList<>(key.size());
+                for (int i = 0; i < boundVariables.length; i++) {
+                    boundVariables[i] = key.get(i) != null;
+                    signature.add(boundVariables[i]);
+                }
+                groups.computeIfAbsent(signature, s -> new KeyGroup(boundVariables)).add(key);
+            }
+        });
+        pendingGroups = new ArrayDeque<>(groups.values());
+        currentGroup = null;
+        nbRequests = 0;
+        latency = 0;
+        nbResults = 0;
+        reported = false;
+    }
+
+    /**
+     * Get the number of distinct join keys of the bucket
+     * @return The number of distinct join keys of the bucket
+     */
+    public int getNbKeys() {
+        return bindingsByKey.size();
+    }
+
+    @Override
+    protected boolean canProduceBindings() {
+        return !memoizedSolutions.isEmpty() || currentGroup != null || !pendingGroups.isEmpty();
+    }
+
+    /**
+     * Report the outcome of the bucket, once all its groups have been evaluated
+     */
+    private void reportCompletion() {
+        if (!reported && currentGroup == null && pendingGroups.isEmpty()) {
+            reported = true;
+            if (bucketSize != null) {
+                bucketSize.onBucketCompleted(blockSize, nbRequests, latency, nbResults);
+            }
+        }
+    }
+
+    @Override
+    protected List<Binding> produceBindings() {
+        List<Binding> solutions = new ArrayList<>();
+        if (!memoizedSolutions.isEmpty()) {
+            solutions.addAll(memoizedSolutions);
+            memoizedSolutions.clear();
+            // the bucket may be fully served by the memo table
+            reportCompletion();
+            return solutions;
+        }
+        try {
+            while (solutions.isEmpty() && (currentGroup != null || !pendingGroups.isEmpty())) {
+                if (currentGroup == null) {
+                    currentGroup = pendingGroups.poll();
+                    currentGroup.start();
+                }
+                BoundIterator iterator = currentGroup.iterator;
+                if (iterator.hasNext()) {
+                    // fan out a page of solutions
+                    do {
+                        currentGroup.fanOut(iterator.next(), solutions);
+                    } while (iterator.hasBufferedBindings());
+                } else {
+                    currentGroup.complete();
+                    currentGroup = null;
+                }
+            }
+        } catch (RuntimeException e) {
+            // the evaluation of a group has failed, so the whole bucket has failed
+            if (!reported && bucketSize != null) {
+                bucketSize.onBucketFailed(blockSize);
+            }
+            reported = true;
+            throw e;
+        }
+        reportCompletion();
+        return solutions;
+    }
+}
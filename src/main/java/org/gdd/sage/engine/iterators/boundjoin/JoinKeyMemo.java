@@ -0,0 +1,123 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded memo table of the join keys already resolved by a bound join, i.e., the solutions of the BGP bounded with these keys.
+ * A key is the list of values of the BGP variables (null if unbound) in a binding, so bindings with the same key join with the same solutions.
+ *
+ * The table is bounded by its total number of solutions (a key without solutions counts as one), and the least recently used keys are evicted first.
+ * Keys with too many solutions are not memoized, as re-evaluating them costs little compared to the space they would use.
+ * @author Thomas Minier
+ */
+public class JoinKeyMemo {
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int DEFAULT_MAX_SOLUTIONS_PER_KEY = 100;
+
+    private final int capacity;
+    private final int maxSolutionsPerKey;
+    private final LinkedHashMap<List<Node>, List<Binding>> entries;
+    private int size;
+    private long nbHits;
+    private long nbMisses;
+
+    /**
+     * Constructor
+     * @param capacity - Maximum number of solutions stored in the table
+     * @param maxSolutionsPerKey - Maximum number of solutions of a key for it to be memoized
+     */
+    public JoinKeyMemo(int capacity, int maxSolutionsPerKey) {
+        this.capacity = capacity;
+        this.maxSolutionsPerKey = maxSolutionsPerKey;
+        // access-ordered, so the least recently used key comes first
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        size = 0;
+        nbHits = 0;
+        nbMisses = 0;
+    }
+
+    /**
+     * Constructor, using the default capacity and maximum number of solutions per key
+     */
+    public JoinKeyMemo() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_SOLUTIONS_PER_KEY);
+    }
+
+    private static int cost(List<Binding> solutions) {
+        return Math.max(1, solutions.size());
+    }
+
+    /**
+     * Get the maximum number of solutions of a key for it to be memoized
+     * @return The maximum number of solutions of a key for it to be memoized
+     */
+    public int getMaxSolutionsPerKey() {
+        return maxSolutionsPerKey;
+    }
+
+    /**
+     * Get the solutions of a join key, if it has been resolved
+     * @param key - Join key
+     * @return The solutions of the BGP bounded with the key, or null if the key has not been resolved
+     */
+    public synchronized List<Binding> get(List<Node> key) {
+        List<Binding> solutions = entries.get(key);
+        if (solutions != null) {
+            nbHits++;
+        } else {
+            nbMisses++;
+        }
+        return solutions;
+    }
+
+    /**
+     * Memoize the solutions of a join key, evicting the least recently used keys if needed
+     * @param key - Join key
+     * @param solutions - All solutions of the BGP bounded with the key
+     */
+    public synchronized void put(List<Node> key, List<Binding> solutions) {
+        if (solutions.size() > maxSolutionsPerKey || cost(solutions) > capacity) {
+            return;
+        }
+        List<Binding> previous = entries.put(key, solutions);
+        if (previous != null) {
+            size -= cost(previous);
+        }
+        size += cost(solutions);
+        Iterator<Map.Entry<List<Node>, List<Binding>>> eldest = entries.entrySet().iterator();
+        while (size > capacity && eldest.hasNext()) {
+            size -= cost(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Get the number of join keys memoized
+     * @return The number of join keys memoized
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the number of lookups that found a memoized key
+     * @return The number of lookups that found a memoized key
+     */
+    public synchronized long getNbHits() {
+        return nbHits;
+    }
+
+    /**
+     * Get the number of lookups that did not find a memoized key
+     * @return The number of lookups that did not find a memoized key
+     */
+    public synchronized long getNbMisses() {
+        return nbMisses;
+    }
+}
@@ -1,34 +1,37 @@
 package org.gdd.sage.engine.iterators.boundjoin;
 
 import org.apache.jena.atlas.io.IndentedWriter;
-import org.apache.jena.graph.Node;
-import org.apache.jena.graph.NodeFactory;
-import org.apache.jena.graph.Triple;
 import org.apache.jena.sparql.core.BasicPattern;
-import org.apache.jena.sparql.core.Substitute;
+import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.serializer.SerializationContext;
+import org.gdd.sage.core.SageUtils;
+import org.gdd.sage.engine.iterators.parallel.BindingBuffer;
 import org.gdd.sage.engine.iterators.parallel.ExhaustIteratorTask;
 import org.gdd.sage.engine.iterators.parallel.ParallelBlockBufferedIterator;
+import org.gdd.sage.engine.iterators.parallel.ParallelismBudget;
 import org.gdd.sage.http.SageRemoteClient;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Like a {@link BoundJoinIterator}, but process multiples blocks of mappings in parallel.
+ * Mappings are deduplicated on their join key, and the keys already resolved by the join are memoized (see {@link DeduplicatedBoundIterator}).
  * @author Thomas Minier
  */
 public class ParallelBoundJoinIterator extends ParallelBlockBufferedIterator {
     private String graphURI;
     protected SageRemoteClient client;
     private BasicPattern bgp;
+    private final BucketRewriter rewriter;
+    private AdaptiveBucketSize adaptiveBucketSize;
+    private final List<Var> variables;
+    private final JoinKeyMemo memo;
 
     /**
      * Constructor
@@ -43,56 +46,86 @@ public class ParallelBoundJoinIterator extends ParallelBlockBufferedIterator {
         this.graphURI = graphURI;
         this.client = client;
         this.bgp = bgp;
+        rewriter = new BoundJoinRewriter(bgp);
+        adaptiveBucketSize = null;
+        variables = new ArrayList<>(SageUtils.getVariables(bgp));
+        memo = new JoinKeyMemo();
     }
 
     /**
-     * Rewrite a triple pattern using a rewriting key, i.e., append "_key" to each SPARQL variable in the triple pattern
-     * @param key Rewriting key
-     * @param tp Triple pattern to rewrite
-     * @return The rewritten triple pattern
+     * Constructor, with buckets sized at runtime
+     * @param source - Input for the join
+     * @param client - HTTP client used to query the SaGe server
+     * @param bgp    - Basic Graph pattern to join with
+     * @param threadPool - Thread pool used to execute tasks
+     * @param bucketSize - Adaptive size of the bound join buckets
      */
-    private Triple rewriteTriple (int key, Triple tp) {
-        Node subj = tp.getSubject();
-        Node pred = tp.getPredicate();
-        Node obj = tp.getObject();
-        if (subj.isVariable()) {
-            subj = NodeFactory.createVariable(subj.getName() + "_" + key);
-        }
-        if (pred.isVariable()) {
-            pred = NodeFactory.createVariable(pred.getName() + "_" + key);
-        }
-        if (obj.isVariable()) {
-            obj = NodeFactory.createVariable(obj.getName() + "_" + key);
-        }
-        return new Triple(subj, pred, obj);
+    public ParallelBoundJoinIterator(QueryIterator source, String graphURI, SageRemoteClient client, BasicPattern bgp, ExecutorService threadPool, AdaptiveBucketSize bucketSize) {
+        this(source, graphURI, client, bgp, threadPool, bucketSize.getSize());
+        adaptiveBucketSize = bucketSize;
     }
 
-    @Override
-    protected Runnable createTransformerTask(List<Binding> block, BlockingDeque<Binding> output, AtomicInteger counter) {
-        // data structures used for bind join
-        List<BasicPattern> bgpBucket = new LinkedList<>();
-        Map<Integer, Binding> rewritingMap = new HashMap<>();
+    /**
+     * Constructor, with buckets sized at runtime and a parallelism budget shared with other iterators
+     * @param source - Input for the join
+     * @param client - HTTP client used to query the SaGe server
+     * @param bgp    - Basic Graph pattern to join with
+     * @param threadPool - Thread pool used to execute tasks
+     * @param bucketSize - Adaptive size of the bound join buckets
+     * @param budget - Budget that bounds the number of buckets processed in parallel, e.g., shared by all iterators of a query
+     */
+    public ParallelBoundJoinIterator(QueryIterator source, String graphURI, SageRemoteClient client, BasicPattern bgp, ExecutorService threadPool, AdaptiveBucketSize bucketSize, ParallelismBudget budget) {
+        this(source, graphURI, client, bgp, threadPool, bucketSize, budget, BoundJoinEncoding.UNION);
+    }
 
-        boolean isContainmentQuery = false;
+    /**
+     * Constructor, with buckets sized at runtime, a parallelism budget shared with other iterators, and a given encoding of buckets
+     * @param source - Input for the join
+     * @param client - HTTP client used to query the SaGe server
+     * @param bgp    - Basic Graph pattern to join with
+     * @param threadPool - Thread pool used to execute tasks
+     * @param bucketSize - Adaptive size of the bound join buckets
+     * @param budget - Budget that bounds the number of buckets processed in parallel, e.g., shared by all iterators of a query
+     * @param encoding - How buckets are encoded into SPARQL queries
+     */
+    public ParallelBoundJoinIterator(QueryIterator source, String graphURI, SageRemoteClient client, BasicPattern bgp, ExecutorService threadPool, AdaptiveBucketSize bucketSize, ParallelismBudget budget, BoundJoinEncoding encoding) {
+        this(source, graphURI, client, bgp, Collections.emptyList(), threadPool, bucketSize, budget, encoding);
+    }
+
+    /**
+     * Constructor, with filters pushed into the queries sent for each bucket
+     * @param source - Input for the join
+     * @param client - HTTP client used to query the SaGe server
+     * @param bgp    - Basic Graph pattern to join with
+     * @param filters - Filters that only use variables of the BGP (see {@link org.gdd.sage.core.analyzer.FilterPushdown})
+     * @param threadPool - Thread pool used to execute tasks
+     * @param bucketSize - Adaptive size of the bound join buckets
+     * @param budget - Budget that bounds the number of buckets processed in parallel, e.g., shared by all iterators of a query
+     * @param encoding - How buckets are encoded into SPARQL queries
+     */
+    public ParallelBoundJoinIterator(QueryIterator source, String graphURI, SageRemoteClient client, BasicPattern bgp, List<Expr> filters, ExecutorService threadPool, AdaptiveBucketSize bucketSize, ParallelismBudget budget, BoundJoinEncoding encoding) {
+        super(source, threadPool, bucketSize.getSize(), budget);
+        this.graphURI = graphURI;
+        this.client = client;
+        this.bgp = bgp;
+        rewriter = encoding.newRewriter(bgp, filters);
+        adaptiveBucketSize = bucketSize;
+        variables = new ArrayList<>(SageUtils.getVariables(bgp));
+        memo = new JoinKeyMemo();
+    }
 
-        // key used for the rewriting
-        int key = 0;
-        for(Binding b: block) {
-            BasicPattern boundedBGP = new BasicPattern();
-            for (Triple t: bgp) {
-                Triple boundedTriple = Substitute.substitute(t, b);
-                isContainmentQuery = (!boundedTriple.getSubject().isVariable()) && (!boundedTriple.getPredicate().isVariable()) && (!boundedTriple.getObject().isVariable());
-                // perform rewriting and register it
-                boundedTriple = rewriteTriple(key, boundedTriple);
-                rewritingMap.put(key, b);
-                // add rewritten triple to BGP
-                boundedBGP.add(boundedTriple);
-            }
-            bgpBucket.add(boundedBGP);
-            key++;
+    @Override
+    protected int getBucketSize() {
+        if (adaptiveBucketSize != null) {
+            return adaptiveBucketSize.getSize();
         }
-        QueryIterator iterator = new BoundIterator(graphURI, client, bgpBucket, block, rewritingMap, isContainmentQuery);
-        return new ExhaustIteratorTask(iterator, output, counter);
+        return super.getBucketSize();
+    }
+
+    @Override
+    protected Runnable createTransformerTask(List<Binding> block, BindingBuffer output) {
+        QueryIterator iterator = new DeduplicatedBoundIterator(graphURI, client, rewriter, variables, block, memo, adaptiveBucketSize);
+        return new ExhaustIteratorTask(iterator, output);
     }
 
     @Override
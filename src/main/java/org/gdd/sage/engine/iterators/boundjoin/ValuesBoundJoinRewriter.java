@@ -0,0 +1,159 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.Expr;
+import org.gdd.sage.http.data.SageQueryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Performs the rewriting used by a bound join, where the BGP is sent once for each bucket,
+ * with the values taken by the join variables in the bucket in a VALUES clause.
+ * The join variables are the variables of the BGP bound by all bindings of the bucket.
+ * UNDEF values are not used, as a solution compatible with several rows would be sent once per row.
+ *
+ * As the join variables are part of the solutions, solutions are mapped back to the bindings of the bucket using an index on these variables,
+ * and are joined with the bindings they are compatible with.
+ * @author Thomas Minier
+ */
+public class ValuesBoundJoinRewriter implements BucketRewriter {
+    private final BasicPattern bgp;
+    private final List<Expr> filters;
+    private final List<Var> variables;
+
+    /**
+     * A bucket of bindings, with the values of its join variables
+     */
+    private class Bucket implements BoundJoinBucket {
+        private final List<Binding> block;
+        private final List<Var> joinVariables;
+        private final Map<List<Node>, List<Binding>> index;
+        private final List<Binding> rows;
+
+        Bucket(List<Binding> block) {
+            this.block = new ArrayList<>(block);
+            joinVariables = new ArrayList<>();
+            for (Var variable : variables) {
+                if (!block.isEmpty() && block.stream().allMatch(binding -> binding.contains(variable))) {
+                    joinVariables.add(variable);
+                }
+            }
+            // bindings with the same values for the join variables share the same row
+            index = new LinkedHashMap<>();
+            for (Binding binding : block) {
+                index.computeIfAbsent(keyOf(binding), k -> new ArrayList<>()).add(binding);
+            }
+            rows = new ArrayList<>(index.size());
+            for (List<Node> key : index.keySet()) {
+                BindingMap row = BindingFactory.create();
+                for (int i = 0; i < joinVariables.size(); i++) {
+                    row.add(joinVariables.get(i), key.get(i));
+                }
+                rows.add(row);
+            }
+        }
+
+        private List<Node> keyOf(Binding binding) {
+            List<Node> key = new ArrayList<>(joinVariables.size());
+            for (Var variable : joinVariables) {
+                key.add(binding.get(variable));
+            }
+            return key;
+        }
+
+        @Override
+        public String getQuery() {
+            return SageQueryBuilder.buildValuesQuery(bgp, joinVariables, rows, filters);
+        }
+
+        @Override
+        public List<Binding> getBlock() {
+            return block;
+        }
+
+        @Override
+        public boolean isContainmentQuery() {
+            // solutions always bind the variables of the BGP, so they are never empty
+            return false;
+        }
+
+        @Override
+        public void revert(Binding solution, Collection<Binding> results) {
+            List<Binding> bindings = index.get(keyOf(solution));
+            if (bindings != null) {
+                for (Binding binding : bindings) {
+                    // variables of the BGP bound by only some bindings are not in the VALUES clause
+                    if (Algebra.compatible(binding, solution)) {
+                        results.add(extend(binding, solution));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructor
+     * @param bgp - Basic Graph pattern to join with
+     */
+    public ValuesBoundJoinRewriter(BasicPattern bgp) {
+        this(bgp, Collections.emptyList());
+    }
+
+    /**
+     * Constructor, with filters pushed into the query
+     * @param bgp - Basic Graph pattern to join with
+     * @param filters - Filters that only use variables of the BGP
+     */
+    public ValuesBoundJoinRewriter(BasicPattern bgp, List<Expr> filters) {
+        this.bgp = bgp;
+        this.filters = filters;
+        Set<Var> bgpVariables = new LinkedHashSet<>();
+        for (Triple pattern : bgp) {
+            for (Node node : new Node[] { pattern.getSubject(), pattern.getPredicate(), pattern.getObject() }) {
+                if (node.isVariable()) {
+                    bgpVariables.add(Var.alloc(node));
+                }
+            }
+        }
+        variables = new ArrayList<>(bgpVariables);
+    }
+
+    /**
+     * Join a binding of a bucket with a solution of the query
+     * @param binding - Binding of the bucket
+     * @param solution - Solution of the query, compatible with the binding
+     * @return The solution of the bound join
+     */
+    static Binding extend(Binding binding, Binding solution) {
+        // the binding of the bucket is shared by all its solutions, rather than copied
+        BindingMap result = BindingFactory.create(binding);
+        Iterator<Var> vars = solution.vars();
+        while (vars.hasNext()) {
+            Var variable = vars.next();
+            if (!binding.contains(variable)) {
+                result.add(variable, solution.get(variable));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public BoundJoinBucket rewrite(List<Binding> block) {
+        return new Bucket(block);
+    }
+}
@@ -0,0 +1,172 @@
+package org.gdd.sage.engine.iterators.hashjoin;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.gdd.sage.engine.iterators.parallel.ParallelBufferedIterator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An iterator that performs (in parallel) a symmetric hash join between two iterators.
+ * Both iterators are read at the same time: each binding is inserted into the hash table of its side,
+ * then probed against the hash table of the other side, so results are produced as soon as both bindings have been read.
+ *
+ * Once an iterator has been exhausted, the hash table of the other side is no longer needed,
+ * so it is cleared and bindings of the other side are only probed.
+ * @author Thomas Minier
+ */
+public class SymmetricHashJoinIterator extends ParallelBufferedIterator {
+    private QueryIterator left;
+    private QueryIterator right;
+    private final List<Var> joinVariables;
+    private final JoinTable leftTable;
+    private final JoinTable rightTable;
+    // guards both hash tables, so each pair of bindings is joined exactly once
+    private final Object tablesLock = new Object();
+
+    /**
+     * A hash table of bindings, indexed by the values of the join variables
+     */
+    private class JoinTable {
+        private final Map<List<Node>, List<Binding>> index = new HashMap<>();
+        // bindings where a join variable is unbound, which may join with any binding
+        private final List<Binding> unboundBindings = new ArrayList<>();
+        private boolean completed = false;
+
+        void add(Binding binding) {
+            List<Node> key = keyOf(binding);
+            if (key == null) {
+                unboundBindings.add(binding);
+            } else {
+                index.computeIfAbsent(key, k -> new ArrayList<>()).add(binding);
+            }
+        }
+
+        List<Binding> findCandidates(Binding binding) {
+            List<Node> key = keyOf(binding);
+            List<Binding> candidates = new ArrayList<>(unboundBindings);
+            if (key == null) {
+                index.values().forEach(candidates::addAll);
+            } else if (index.containsKey(key)) {
+                candidates.addAll(index.get(key));
+            }
+            return candidates;
+        }
+
+        void clear() {
+            index.clear();
+            unboundBindings.clear();
+        }
+    }
+
+    /**
+     * Constructor
+     * @param threadPool - Thread pool used to read both iterators
+     * @param left - Left iterator
+     * @param right - Right iterator
+     * @param joinVariables - Variables used to index bindings, i.e., the variables shared by both iterators
+     */
+    public SymmetricHashJoinIterator(ExecutorService threadPool, QueryIterator left, QueryIterator right, List<Var> joinVariables) {
+        super(threadPool);
+        this.left = left;
+        this.right = right;
+        this.joinVariables = joinVariables;
+        leftTable = new JoinTable();
+        rightTable = new JoinTable();
+    }
+
+    /**
+     * Get the values of the join variables in a binding
+     * @param binding - Binding
+     * @return The values of the join variables, or null if one of them is unbound
+     */
+    private List<Node> keyOf(Binding binding) {
+        List<Node> key = new ArrayList<>(joinVariables.size());
+        for (Var variable : joinVariables) {
+            Node value = binding.get(variable);
+            if (value == null) {
+                return null;
+            }
+            key.add(value);
+        }
+        return key;
+    }
+
+    /**
+     * Create a task that reads all bindings of one side of the join
+     * @param source - Iterator of the side
+     * @param table - Hash table of the side
+     * @param otherTable - Hash table of the other side
+     * @param isLeft - True if the task reads the left side, False otherwise
+     * @return The task
+     */
+    private Runnable createTask(QueryIterator source, JoinTable table, JoinTable otherTable, boolean isLeft) {
+        return () -> {
+            while (source.hasNext()) {
+                Binding binding = source.next();
+                List<Binding> candidates;
+                synchronized (tablesLock) {
+                    if (!otherTable.completed) {
+                        table.add(binding);
+                    }
+                    candidates = otherTable.findCandidates(binding);
+                }
+                List<Binding> results = new ArrayList<>();
+                for (Binding candidate : candidates) {
+                    if (Algebra.compatible(binding, candidate)) {
+                        results.add(isLeft ? Algebra.merge(binding, candidate) : Algebra.merge(candidate, binding));
+                    }
+                }
+                if (!results.isEmpty() && !getSharedBuffer().putAll(results)) {
+                    // the iterator has been closed
+                    return;
+                }
+            }
+            synchronized (tablesLock) {
+                table.completed = true;
+                otherTable.clear();
+            }
+        };
+    }
+
+    @Override
+    protected void startTasks() {
+        submitTask(createTask(left, leftTable, rightTable, true));
+        submitTask(createTask(right, rightTable, leftTable, false));
+    }
+
+    @Override
+    protected void cancelTasks() {
+        left.cancel();
+        right.cancel();
+    }
+
+    @Override
+    protected void stopTasks() {
+        left.close();
+        right.close();
+    }
+
+    @Override
+    protected boolean allTasksCompleted() {
+        return getSharedBuffer().getNbProducers() == 0;
+    }
+
+    @Override
+    public void output(IndentedWriter out, SerializationContext sCxt) {
+        out.write("SymmetricHashJoinIterator(");
+        left.output(out, sCxt);
+        out.write(", ");
+        right.output(out, sCxt);
+        out.write(")");
+    }
+}
@@ -0,0 +1,259 @@
+package org.gdd.sage.engine.iterators.parallel;
+
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.engine.binding.Binding;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded buffer used by tasks to hand off their results to a parallel iterator.
+ * Tasks (the producers) transfer bindings in batches, and the iterator (the consumer) drains all available bindings at once,
+ * so the buffer is locked once per batch rather than once per binding.
+ *
+ * When the buffer is full, producers are parked until the consumer has drained it under a low watermark (half of its capacity),
+ * so a slow consumer bounds the memory used by fast producers. Waiting threads are only signaled on these transitions,
+ * i.e., when the buffer becomes non-empty, when it drains under the low watermark, or when a producer completes.
+ *
+ * A producer that fails records its error in the buffer (see {@link #fail(Throwable)}), so the consumer fails too,
+ * rather than ending with the incomplete results of the producers.
+ * @author Thomas Minier
+ */
+public class BindingBuffer {
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    private final int lowWatermark;
+    private final Deque<Binding> bindings;
+    private final ReentrantLock lock;
+    // signaled when bindings become available or when a producer completes
+    private final Condition readable;
+    // signaled when the buffer has been drained under the low watermark
+    private final Condition writable;
+    private int nbProducers;
+    private long nbCompletedProducers;
+    private boolean closed;
+    // first error raised by a producer, if any
+    private Throwable failure;
+
+    /**
+     * Constructor
+     * @param capacity - Maximum number of bindings stored in the buffer
+     */
+    public BindingBuffer(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        lowWatermark = this.capacity / 2;
+        bindings = new ArrayDeque<>();
+        lock = new ReentrantLock();
+        readable = lock.newCondition();
+        writable = lock.newCondition();
+        nbProducers = 0;
+        nbCompletedProducers = 0;
+        closed = false;
+        failure = null;
+    }
+
+    /**
+     * Constructor, using the default capacity
+     */
+    public BindingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Register a new producer. It must be registered before it starts, so the consumer waits for its results.
+     */
+    public void addProducer() {
+        lock.lock();
+        try {
+            nbProducers++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unregister a producer that has completed, after it has transferred all its bindings
+     */
+    public void removeProducer() {
+        lock.lock();
+        try {
+            nbProducers = Math.max(0, nbProducers - 1);
+            nbCompletedProducers++;
+            readable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Record that a producer has failed, before it is unregistered. Only the first error is kept.
+     * @param error - Error raised by the producer
+     */
+    public void fail(Throwable error) {
+        lock.lock();
+        try {
+            if (failure == null) {
+                failure = error;
+            }
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rethrow the error of a failed producer to the consumer, if any
+     * @throws QueryExecException if a producer has failed
+     */
+    public void checkFailure() {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new QueryExecException("Failed to produce results: " + failure.getMessage(), failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of producers that have not completed yet
+     * @return The number of producers that have not completed yet
+     */
+    public int getNbProducers() {
+        lock.lock();
+        try {
+            return nbProducers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of producers that have completed since the creation of the buffer
+     * @return The number of producers that have completed
+     */
+    public long getNbCompletedProducers() {
+        lock.lock();
+        try {
+            return nbCompletedProducers;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of bindings currently stored in the buffer
+     * @return The number of bindings currently stored in the buffer
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return bindings.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Test if the buffer is empty
+     * @return True if the buffer is empty, False otherwise
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Transfer a binding to the consumer, waiting while the buffer is full
+     * @param binding - Binding to transfer
+     * @return True if the binding has been transferred, False if the buffer has been closed by the consumer
+     */
+    public boolean put(Binding binding) {
+        return putAll(Collections.singletonList(binding));
+    }
+
+    /**
+     * Transfer a batch of bindings to the consumer, waiting while the buffer is full
+     * @param batch - Bindings to transfer
+     * @return True if all bindings have been transferred, False if the buffer has been closed by the consumer
+     */
+    public boolean putAll(Collection<Binding> batch) {
+        lock.lock();
+        try {
+            for (Binding binding : batch) {
+                while (bindings.size() >= capacity && !closed) {
+                    writable.await();
+                }
+                if (closed) {
+                    return false;
+                }
+                bindings.add(binding);
+                if (bindings.size() == 1) {
+                    readable.signal();
+                }
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move all bindings stored in the buffer into a collection, without waiting
+     * @param target - Collection where bindings are moved
+     * @return The number of bindings moved
+     */
+    public int drainTo(Collection<Binding> target) {
+        lock.lock();
+        try {
+            int size = bindings.size();
+            target.addAll(bindings);
+            bindings.clear();
+            if (size > lowWatermark) {
+                writable.signalAll();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until bindings are available, all producers have completed, a producer has completed since a given point, or a producer has failed.
+     * @param nbCompleted - Number of completed producers observed by the consumer, see {@link #getNbCompletedProducers()}
+     * @throws InterruptedException if the consumer is interrupted while waiting
+     */
+    public void await(long nbCompleted) throws InterruptedException {
+        lock.lock();
+        try {
+            while (bindings.isEmpty() && nbProducers > 0 && nbCompletedProducers == nbCompleted && failure == null && !closed) {
+                readable.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Close the buffer when the consumer stops reading it: pending bindings are discarded, and all producers are released.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            bindings.clear();
+            writable.signalAll();
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
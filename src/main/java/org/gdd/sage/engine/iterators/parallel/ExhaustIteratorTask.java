@@ -2,36 +2,49 @@ package org.gdd.sage.engine.iterators.parallel;
 
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.gdd.sage.engine.iterators.base.BufferedIterator;
 
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A Tasks that read all results from an iterators and insert them into a shared buffer.
+ * Results are transferred in batches: a batch is flushed when it is full, or when the next result
+ * cannot be read without waiting, e.g., when the next page of results has to be fetched from the server.
  * @author Thomas Minier
  */
 public class ExhaustIteratorTask implements Runnable {
+    // Maximum number of results transferred at once
+    private static final int BATCH_SIZE = 100;
     private QueryIterator source;
-    private final BlockingDeque<Binding> buffer;
-    private final AtomicInteger activeThreadsCounter;
+    private final BindingBuffer buffer;
 
-    public ExhaustIteratorTask(QueryIterator source, BlockingDeque<Binding> buffer, AtomicInteger activeThreadsCounter) {
+    public ExhaustIteratorTask(QueryIterator source, BindingBuffer buffer) {
         this.source = source;
         this.buffer = buffer;
-        this.activeThreadsCounter = activeThreadsCounter;
+    }
+
+    /**
+     * Test if the next result of the source can be read without waiting
+     * @return True if the next result can be read without waiting, False otherwise
+     */
+    private boolean hasBufferedResults() {
+        return source instanceof BufferedIterator && ((BufferedIterator) source).hasBufferedBindings();
     }
 
     @Override
     public void run() {
+        List<Binding> batch = new ArrayList<>();
         while (source.hasNext()) {
-            synchronized (buffer) {
-                buffer.add(source.next());
-                buffer.notifyAll();
+            batch.add(source.next());
+            if (batch.size() >= BATCH_SIZE || !hasBufferedResults()) {
+                if (!buffer.putAll(batch)) {
+                    // the buffer has been closed, so the results are no longer needed
+                    return;
+                }
+                batch.clear();
             }
         }
-        activeThreadsCounter.getAndDecrement();
-        synchronized (buffer) {
-            buffer.notifyAll();
-        }
+        buffer.putAll(batch);
     }
 }
@@ -4,26 +4,29 @@ import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.iterator.QueryIteratorBase;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingDeque;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A parallel version of {@link org.gdd.sage.engine.iterators.base.BlockBufferedIterator},
  * which can process several blocks in parallel using a thread pool.
+ * The number of blocks processed in parallel is bounded by a {@link ParallelismBudget}, shared with the other parallel iterators of the query,
+ * and tasks hand off their results through a bounded {@link BindingBuffer}, so they are paused when the iterator is not read fast enough.
  * @author Thomas Minier
  */
 public abstract class ParallelBlockBufferedIterator extends QueryIteratorBase {
     protected QueryIterator source;
     private final ExecutorService threadPool;
-    private final BlockingDeque<Binding> sharedBuffer;
-    private final AtomicInteger activeThreads;
+    private final BindingBuffer sharedBuffer;
+    private final Deque<Binding> localBuffer;
+    private final ParallelismBudget budget;
     private int bucketSize;
     private boolean hasStarted;
-    // Maximum number of blocks processed in parallel
+    private boolean hasCompleted;
+    // Maximum number of blocks processed in parallel, when the iterator does not share a budget with other iterators
     private static final int MAX_RUNNING_BLOCK_THREADS = 5;
 
     /**
@@ -33,22 +36,43 @@ public abstract class ParallelBlockBufferedIterator extends QueryIteratorBase {
      * @param bucketSize - Size of the blocks
      */
     public ParallelBlockBufferedIterator(QueryIterator source, ExecutorService threadPool, int bucketSize) {
+        this(source, threadPool, bucketSize, new ParallelismBudget(MAX_RUNNING_BLOCK_THREADS, MAX_RUNNING_BLOCK_THREADS, MAX_RUNNING_BLOCK_THREADS));
+    }
+
+    /**
+     * Constructor
+     * @param source - Iterator's source
+     * @param threadPool - Thread pool used to execute tasks
+     * @param bucketSize - Size of the blocks
+     * @param budget - Budget that bounds the number of blocks processed in parallel, e.g., shared by all iterators of a query
+     */
+    public ParallelBlockBufferedIterator(QueryIterator source, ExecutorService threadPool, int bucketSize, ParallelismBudget budget) {
         this.source = source;
         this.threadPool = threadPool;
         this.bucketSize = bucketSize;
-        sharedBuffer = new LinkedBlockingDeque<>();
-        activeThreads = new AtomicInteger();
+        this.budget = budget;
+        sharedBuffer = new BindingBuffer();
+        localBuffer = new ArrayDeque<>();
         hasStarted = false;
+        hasCompleted = false;
+    }
+
+    /**
+     * Get the size of the next block of solution mappings
+     * @return The size of the next block of solution mappings
+     */
+    protected int getBucketSize() {
+        return bucketSize;
     }
 
     /**
      * Create a task used to process a block of solution mappings.
+     * The task should stop as soon as the output buffer rejects its results, as the iterator has been closed.
      * @param bindings - Block of solution mappings to process
      * @param output - Buffer where new results should be pushed
-     * @param counter - A counter to decrement when the task has completed
      * @return The task used to process the block of solution mappings
      */
-    protected abstract Runnable createTransformerTask(List<Binding> bindings, BlockingDeque<Binding> output, AtomicInteger counter);
+    protected abstract Runnable createTransformerTask(List<Binding> bindings, BindingBuffer output);
 
     /**
      * Create a new block of mappings, then start a task to process it in parallel
@@ -56,14 +80,35 @@ public abstract class ParallelBlockBufferedIterator extends QueryIteratorBase {
     private void startTransformerTask() {
         // create a bucket of bindings
         LinkedList<Binding> bucket = new LinkedList<>();
-        while (source.hasNext() && bucket.size() < bucketSize) {
+        int size = getBucketSize();
+        while (source.hasNext() && bucket.size() < size) {
             bucket.add(source.next());
         }
         // start the task if the bucket is not empty
         if (!bucket.isEmpty()) {
-            Runnable task = createTransformerTask(bucket, sharedBuffer, activeThreads);
-            activeThreads.getAndIncrement();
-            threadPool.execute(task);
+            Runnable task = createTransformerTask(bucket, sharedBuffer);
+            sharedBuffer.addProducer();
+            threadPool.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    sharedBuffer.fail(e);
+                } finally {
+                    sharedBuffer.removeProducer();
+                    budget.release();
+                }
+            });
+        } else {
+            budget.release();
+        }
+    }
+
+    /**
+     * Start as many tasks as the budget allows, and at least one if no task is running
+     */
+    private void startTransformerTasks() {
+        while (source.hasNext() && budget.tryAcquire(sharedBuffer.getNbProducers())) {
+            startTransformerTask();
         }
     }
 
@@ -72,7 +117,17 @@ public abstract class ParallelBlockBufferedIterator extends QueryIteratorBase {
      * @return True if all possible tasks have been complete, False otherwise
      */
     private boolean allTasksCompleted() {
-        return !source.hasNext() && activeThreads.get() == 0;
+        return !source.hasNext() && sharedBuffer.getNbProducers() == 0;
+    }
+
+    /**
+     * Give back the iterator's share of the budget to the other iterators, once all blocks have been processed
+     */
+    private void complete() {
+        if (hasStarted && !hasCompleted) {
+            hasCompleted = true;
+            budget.unregister();
+        }
     }
 
     @Override
@@ -80,40 +135,54 @@ public abstract class ParallelBlockBufferedIterator extends QueryIteratorBase {
         // warm-up phase
         if (!hasStarted) {
             hasStarted = true;
-            // start some tasks to begin processing
-            while (source.hasNext() && activeThreads.get() < MAX_RUNNING_BLOCK_THREADS) {
-                startTransformerTask();
-            }
+            budget.register();
         }
         // wait until new results are available or all active threads have completed
-        while (sharedBuffer.isEmpty() && activeThreads.get() > 0) {
-            synchronized (sharedBuffer) {
-                try {
-                    sharedBuffer.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
+        while (localBuffer.isEmpty()) {
+            sharedBuffer.checkFailure();
+            long nbCompleted = sharedBuffer.getNbCompletedProducers();
+            // tasks push their results before completing, so the buffer must be read after testing for completion
+            boolean completed = allTasksCompleted();
+            if (sharedBuffer.drainTo(localBuffer) > 0) {
+                break;
+            } else if (completed) {
+                complete();
+                break;
             }
             // start more tasks to keep the threads busy
-            while (activeThreads.get() < MAX_RUNNING_BLOCK_THREADS && source.hasNext()) {
-                startTransformerTask();
+            startTransformerTasks();
+            try {
+                // wakes up when tasks produce results or complete
+                sharedBuffer.await(nbCompleted);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
-        return !sharedBuffer.isEmpty() || !allTasksCompleted();
+        // results would be incomplete if a task has failed
+        if (localBuffer.isEmpty()) {
+            sharedBuffer.checkFailure();
+        }
+        return !localBuffer.isEmpty();
     }
 
     @Override
     protected Binding moveToNextBinding() {
-        return sharedBuffer.pollFirst();
+        return localBuffer.pollFirst();
     }
 
     @Override
     protected void closeIterator() {
+        // release the tasks waiting for the buffer to be read
+        sharedBuffer.close();
+        localBuffer.clear();
+        complete();
         source.close();
     }
 
     @Override
     protected void requestCancel() {
+        sharedBuffer.close();
         source.cancel();
     }
 }
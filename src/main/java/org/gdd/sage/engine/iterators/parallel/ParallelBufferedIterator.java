@@ -3,18 +3,20 @@ package org.gdd.sage.engine.iterators.parallel;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.iterator.QueryIteratorBase;
 
-import java.util.concurrent.BlockingDeque;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingDeque;
 
 /**
  * An abstraction of a buffered iterator capable of producing bindings in parallel.
  * A thread pool is responsible for executing tasks that fills up the iterator internal buffer.
+ * Results are moved in batches from this bounded buffer to a local one, only read by the iterator.
  * @author Thomas Minier
  */
 public abstract class ParallelBufferedIterator extends QueryIteratorBase {
     private final ExecutorService threadPool;
-    private final BlockingDeque<Binding> sharedBuffer;
+    private final BindingBuffer sharedBuffer;
+    private final Deque<Binding> localBuffer;
     private boolean hasStarted;
 
     /**
@@ -23,7 +25,8 @@ public abstract class ParallelBufferedIterator extends QueryIteratorBase {
      */
     public ParallelBufferedIterator(ExecutorService threadPool) {
         this.threadPool = threadPool;
-        sharedBuffer = new LinkedBlockingDeque<>();
+        sharedBuffer = new BindingBuffer();
+        localBuffer = new ArrayDeque<>();
         hasStarted = false;
     }
 
@@ -39,10 +42,27 @@ public abstract class ParallelBufferedIterator extends QueryIteratorBase {
      * Get the iterator's internal buffer (used to store new bindings)
      * @return The iterator's internal buffer
      */
-    protected BlockingDeque<Binding> getSharedBuffer() {
+    protected BindingBuffer getSharedBuffer() {
         return sharedBuffer;
     }
 
+    /**
+     * Execute a task that produces results into the iterator's internal buffer
+     * @param task - Task to execute
+     */
+    protected void submitTask(Runnable task) {
+        sharedBuffer.addProducer();
+        threadPool.execute(() -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                sharedBuffer.fail(e);
+            } finally {
+                sharedBuffer.removeProducer();
+            }
+        });
+    }
+
     /**
      * Start all tasks used to produce results
      */
@@ -70,30 +90,43 @@ public abstract class ParallelBufferedIterator extends QueryIteratorBase {
             startTasks();
             hasStarted = true;
         }
-        while (sharedBuffer.isEmpty() && !allTasksCompleted()) {
-            synchronized (sharedBuffer) {
-                try {
-                    sharedBuffer.wait();
-                } catch (InterruptedException e) {
-                    break;
-                }
+        while (localBuffer.isEmpty()) {
+            sharedBuffer.checkFailure();
+            // tasks push their results before completing, so the buffer must be read after testing for completion
+            long nbCompleted = sharedBuffer.getNbCompletedProducers();
+            boolean completed = allTasksCompleted();
+            if (sharedBuffer.drainTo(localBuffer) > 0 || completed) {
+                break;
+            }
+            try {
+                sharedBuffer.await(nbCompleted);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
-        return !sharedBuffer.isEmpty() || !allTasksCompleted();
+        // results would be incomplete if a task has failed
+        if (localBuffer.isEmpty()) {
+            sharedBuffer.checkFailure();
+        }
+        return !localBuffer.isEmpty();
     }
 
     @Override
     protected Binding moveToNextBinding() {
-        return sharedBuffer.pollFirst();
+        return localBuffer.pollFirst();
     }
 
     @Override
     protected void closeIterator() {
+        sharedBuffer.close();
+        localBuffer.clear();
         stopTasks();
     }
 
     @Override
     protected void requestCancel() {
+        sharedBuffer.close();
         cancelTasks();
     }
 }
@@ -5,7 +5,6 @@ import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.serializer.SerializationContext;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An iterator that performs (in parallel) the union of the results of two iterators.
@@ -14,19 +13,17 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class ParallelUnionIterator extends ParallelBufferedIterator {
     private QueryIterator left;
     private QueryIterator right;
-    private final AtomicInteger activeThreadsCounter;
 
     public ParallelUnionIterator(ExecutorService threadPool, QueryIterator left, QueryIterator right) {
         super(threadPool);
         this.left = left;
         this.right = right;
-        activeThreadsCounter = new AtomicInteger(2);
     }
 
     @Override
     protected void startTasks() {
-        getThreadPool().submit(new ExhaustIteratorTask(left, getSharedBuffer(), activeThreadsCounter));
-        getThreadPool().submit(new ExhaustIteratorTask(right, getSharedBuffer(), activeThreadsCounter));
+        submitTask(new ExhaustIteratorTask(left, getSharedBuffer()));
+        submitTask(new ExhaustIteratorTask(right, getSharedBuffer()));
     }
 
     @Override
@@ -43,7 +40,7 @@ public class ParallelUnionIterator extends ParallelBufferedIterator {
 
     @Override
     protected boolean allTasksCompleted() {
-        return activeThreadsCounter.get() == 0;
+        return getSharedBuffer().getNbProducers() == 0;
     }
 
     @Override
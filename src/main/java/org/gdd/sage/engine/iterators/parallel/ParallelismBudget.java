@@ -0,0 +1,164 @@
+package org.gdd.sage.engine.iterators.parallel;
+
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
+
+/**
+ * The number of blocks that the parallel iterators of a query plan can process at the same time.
+ * The budget is shared by all iterators of the plan, so nested joins do not multiply their parallelism:
+ * each iterator gets a fair share of the budget, and always at least one block, so no iterator of a pipeline starves.
+ *
+ * The size of the budget is adjusted at runtime by hill climbing on the observed throughput (blocks completed per second):
+ * it keeps moving in the same direction while the throughput does not drop, and reverses direction otherwise.
+ * @author Thomas Minier
+ */
+public class ParallelismBudget {
+    private static final Symbol CONTEXT_KEY = Symbol.create("http://sage.univ-nantes.fr/sage-jena#parallelismBudget");
+    public static final int DEFAULT_INITIAL_LIMIT = 8;
+    public static final int DEFAULT_MIN_LIMIT = 2;
+    public static final int DEFAULT_MAX_LIMIT = 64;
+    // Duration of the windows used to measure throughput, in nanoseconds
+    private static final long WINDOW = 500_000_000L;
+    // A throughput lower than the previous one by this ratio makes the budget change direction
+    private static final double TOLERANCE = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private int limit;
+    private int running;
+    private int nbIterators;
+    // direction of the next change of the limit, +1 or -1
+    private int direction;
+    private int maxRunningInWindow;
+    private int completedInWindow;
+    private long windowStart;
+    private double lastThroughput;
+
+    /**
+     * Constructor
+     * @param initialLimit - Initial number of blocks processed in parallel
+     * @param minLimit - Minimum number of blocks processed in parallel
+     * @param maxLimit - Maximum number of blocks processed in parallel
+     */
+    public ParallelismBudget(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        running = 0;
+        nbIterators = 0;
+        direction = 1;
+        maxRunningInWindow = 0;
+        completedInWindow = 0;
+        windowStart = System.nanoTime();
+        lastThroughput = -1;
+    }
+
+    /**
+     * Constructor, using default limits
+     */
+    public ParallelismBudget() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Get the budget shared by all iterators that evaluate a query, creating it if needed
+     * @param context - Execution context of the query
+     * @return The budget of the query
+     */
+    public static ParallelismBudget forContext(ExecutionContext context) {
+        Context queryContext = context.getContext();
+        synchronized (queryContext) {
+            Object budget = queryContext.get(CONTEXT_KEY);
+            if (!(budget instanceof ParallelismBudget)) {
+                budget = new ParallelismBudget();
+                queryContext.set(CONTEXT_KEY, budget);
+            }
+            return (ParallelismBudget) budget;
+        }
+    }
+
+    /**
+     * Get the current number of blocks that can be processed in parallel
+     * @return The current number of blocks that can be processed in parallel
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Get the number of blocks currently processed
+     * @return The number of blocks currently processed
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Get the number of blocks an iterator can process in parallel
+     * @return The fair share of an iterator
+     */
+    public synchronized int getFairShare() {
+        return Math.max(1, (int) Math.ceil((double) limit / Math.max(1, nbIterators)));
+    }
+
+    /**
+     * Register an iterator that starts processing blocks
+     */
+    public synchronized void register() {
+        nbIterators++;
+    }
+
+    /**
+     * Unregister an iterator that has processed all its blocks
+     */
+    public synchronized void unregister() {
+        nbIterators = Math.max(0, nbIterators - 1);
+    }
+
+    /**
+     * Try to reserve the budget for a new block. An iterator that processes no block always gets one.
+     * The budget must be given back using {@link #release()} once the block has been processed.
+     * @param runningBlocks - Number of blocks the iterator is currently processing
+     * @return True if the block can be processed, False otherwise
+     */
+    public synchronized boolean tryAcquire(int runningBlocks) {
+        if (runningBlocks > 0 && (running >= limit || runningBlocks >= getFairShare())) {
+            return false;
+        }
+        running++;
+        maxRunningInWindow = Math.max(maxRunningInWindow, running);
+        return true;
+    }
+
+    /**
+     * Give back the budget of a block that has been processed
+     */
+    public synchronized void release() {
+        running = Math.max(0, running - 1);
+        completedInWindow++;
+        long now = System.nanoTime();
+        if (now - windowStart >= WINDOW) {
+            adjust(completedInWindow / ((now - windowStart) / 1e9));
+            windowStart = now;
+            completedInWindow = 0;
+            maxRunningInWindow = running;
+        }
+    }
+
+    /**
+     * Adjust the limit using the throughput observed during the last window
+     * @param throughput - Number of blocks completed per second
+     */
+    private void adjust(double throughput) {
+        if (lastThroughput >= 0 && throughput < lastThroughput * (1 - TOLERANCE)) {
+            direction = -direction;
+        }
+        lastThroughput = throughput;
+        // a larger limit is useless if the current one has not been reached
+        if (direction > 0 && maxRunningInWindow < limit) {
+            return;
+        }
+        limit = Math.min(maxLimit, Math.max(minLimit, limit + direction));
+    }
+}
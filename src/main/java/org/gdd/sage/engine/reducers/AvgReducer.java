@@ -27,6 +27,10 @@ public class AvgReducer extends BinaryReducer {
 
     @Override
     NodeValue combineBoth(NodeValue sum, NodeValue count) {
+        // the average of an empty group is zero
+        if (count.getInteger().signum() == 0) {
+            return NodeValue.makeInteger(0);
+        }
         return XSDFuncOp.numDivide(sum, count);
     }
 }
@@ -0,0 +1,34 @@
+package org.gdd.sage.engine.reducers;
+
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.expr.aggregate.Accumulator;
+import org.apache.jena.sparql.expr.aggregate.Aggregator;
+
+/**
+ * A reducer used to reconstruct DISTINCT aggregations, e.g., COUNT(DISTINCT ?x).
+ * Partial results cannot be combined, as the same value may appear in several of them,
+ * so the server groups solutions by the variables of the aggregation, and the aggregation is computed from these groups,
+ * where duplicated values are removed by the aggregation itself.
+ * @author Thomas Minier
+ */
+public class DistinctReducer implements AggregationReducer {
+    private Accumulator accumulator;
+    private ExecutionContext context;
+
+    public DistinctReducer(Aggregator aggregator, ExecutionContext context) {
+        accumulator = aggregator.createAccumulator();
+        this.context = context;
+    }
+
+    @Override
+    public void accumulate(Binding bindings) {
+        accumulator.accumulate(bindings, context);
+    }
+
+    @Override
+    public NodeValue getFinalValue() {
+        return accumulator.getValue();
+    }
+}
@@ -0,0 +1,40 @@
+package org.gdd.sage.engine.reducers;
+
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.expr.NodeValue;
+
+/**
+ * A reducer used to reconstruct GROUP_CONCAT aggregation, by concatenating partial concatenations
+ * @author Thomas Minier
+ */
+public class GroupConcatReducer implements AggregationReducer {
+    private Var variable;
+    private String separator;
+    private StringBuilder value;
+
+    public GroupConcatReducer(Var variable, String separator) {
+        this.variable = variable;
+        this.separator = separator;
+        value = new StringBuilder();
+    }
+
+    @Override
+    public void accumulate(Binding bindings) {
+        if (bindings.contains(variable)) {
+            String partial = bindings.get(variable).getLiteralLexicalForm();
+            // a partial concatenation of values without string forms is empty
+            if (!partial.isEmpty()) {
+                if (value.length() > 0) {
+                    value.append(separator);
+                }
+                value.append(partial);
+            }
+        }
+    }
+
+    @Override
+    public NodeValue getFinalValue() {
+        return NodeValue.makeString(value.toString());
+    }
+}
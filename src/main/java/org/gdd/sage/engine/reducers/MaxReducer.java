@@ -35,6 +35,6 @@ public class MaxReducer extends UnaryReducer {
 
     @Override
     NodeValue reduce(NodeValue v) {
-        return null;
+        return v;
     }
 }
@@ -0,0 +1,34 @@
+package org.gdd.sage.engine.reducers;
+
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.expr.NodeValue;
+
+/**
+ * A reducer used to reconstruct SAMPLE aggregation, by keeping the first sample found
+ * @author Thomas Minier
+ */
+public class SampleReducer extends UnaryReducer {
+
+    public SampleReducer(Var variable, ExecutionContext context) {
+        super(variable, context);
+    }
+
+    @Override
+    NodeValue bottom() {
+        return null;
+    }
+
+    @Override
+    NodeValue merge(NodeValue x, NodeValue y) {
+        if (x == null) {
+            return y;
+        }
+        return x;
+    }
+
+    @Override
+    NodeValue reduce(NodeValue v) {
+        return v;
+    }
+}
@@ -5,6 +5,7 @@ import org.apache.jena.ext.com.google.common.math.Stats;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An utility class used to record statistic during query execution
@@ -20,6 +21,10 @@ public class ExecutionStats {
     private List<Double> suspendTimesRead;
     private List<Double> resumeTimesWrite;
     private List<Double> suspendTimesWrite;
+    private final AtomicLong cacheHits;
+    private final AtomicLong cacheMisses;
+    private final AtomicLong cacheEvictions;
+    private final AtomicLong coalescedRequests;
 
     public ExecutionStats() {
         executionTime = -1;
@@ -31,62 +36,82 @@ public class ExecutionStats {
         suspendTimesRead = new ArrayList<>();
         resumeTimesWrite = new LinkedList<>();
         suspendTimesWrite = new LinkedList<>();
+        cacheHits = new AtomicLong();
+        cacheMisses = new AtomicLong();
+        cacheEvictions = new AtomicLong();
+        coalescedRequests = new AtomicLong();
     }
 
     public double getExecutionTime() {
         return executionTime;
     }
 
-    public int getNbCallsRead() {
+    public synchronized int getNbCallsRead() {
         return nbCallsRead;
     }
 
-    public int getNbCallsWrite() {
+    public synchronized int getNbCallsWrite() {
         return nbCallsWrite;
     }
 
-    public Double getMeanHTTPTimesRead() {
+    public synchronized Double getMeanHTTPTimesRead() {
         if (httpTimesRead.isEmpty()) {
             return 0.0;
         }
         return Stats.meanOf(httpTimesRead);
     }
 
-    public Double getMeanHTTPTimesWrite() {
+    public synchronized Double getMeanHTTPTimesWrite() {
         if (httpTimesWrite.isEmpty()) {
             return 0.0;
         }
         return Stats.meanOf(httpTimesWrite);
     }
 
-    public Double getMeanResumeTimeRead() {
+    public synchronized Double getMeanResumeTimeRead() {
         if (resumeTimesRead.isEmpty()) {
             return 0.0;
         }
         return Stats.meanOf(resumeTimesRead);
     }
 
-    public Double getMeanSuspendTimeRead() {
+    public synchronized Double getMeanSuspendTimeRead() {
         if (suspendTimesRead.isEmpty()) {
             return 0.0;
         }
         return Stats.meanOf(suspendTimesRead);
     }
 
-    public Double getMeanResumeTimeWrite() {
+    public synchronized Double getMeanResumeTimeWrite() {
         if (resumeTimesWrite.isEmpty()) {
             return 0.0;
         }
         return Stats.meanOf(resumeTimesWrite);
     }
 
-    public Double getMeanSuspendTimeWrite() {
+    public synchronized Double getMeanSuspendTimeWrite() {
         if (suspendTimesWrite.isEmpty()) {
             return 0.0;
         }
         return Stats.meanOf(suspendTimesWrite);
     }
 
+    public long getNbCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getNbCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public long getNbCacheEvictions() {
+        return cacheEvictions.get();
+    }
+
+    public long getNbCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
     public void startTimer() {
         executionTime = System.nanoTime();
     }
@@ -96,23 +121,39 @@ public class ExecutionStats {
         executionTime = (endTime - executionTime) / 1e9;
     }
 
-    public void reportHTTPQueryRead(double execTime) {
+    public synchronized void reportHTTPQueryRead(double execTime) {
         nbCallsRead++;
         httpTimesRead.add(execTime);
     }
 
-    public void reportHTTPQueryWrite(double execTime) {
+    public synchronized void reportHTTPQueryWrite(double execTime) {
         nbCallsWrite++;
         httpTimesWrite.add(execTime);
     }
 
-    public void reportOverheadRead(double resumeTime, double suspendTime) {
+    public synchronized void reportOverheadRead(double resumeTime, double suspendTime) {
         resumeTimesRead.add(resumeTime);
         suspendTimesRead.add(suspendTime);
     }
 
-    public void reportOverheadWrite(double resumeTime, double suspendTime) {
+    public synchronized void reportOverheadWrite(double resumeTime, double suspendTime) {
         resumeTimesWrite.add(resumeTime);
         suspendTimesWrite.add(suspendTime);
     }
+
+    public void reportCacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    public void reportCacheMiss() {
+        cacheMisses.incrementAndGet();
+    }
+
+    public void reportCacheEvictions(int nbEvictions) {
+        cacheEvictions.addAndGet(nbEvictions);
+    }
+
+    public void reportCoalescedRequest() {
+        coalescedRequests.incrementAndGet();
+    }
 }
@@ -1,36 +1,48 @@
 package org.gdd.sage.http;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.api.client.http.*;
-import com.google.api.client.http.javanet.NetHttpTransport;
 import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.JsonObjectParser;
 import com.google.api.client.json.jackson2.JacksonFactory;
-import com.google.api.client.util.ExponentialBackOff;
 import org.apache.commons.io.IOUtils;
 import org.apache.jena.sparql.core.BasicPattern;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.core.VarExprList;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprAggregator;
+import org.gdd.sage.core.SageExecutors;
 import org.gdd.sage.engine.update.base.UpdateQuery;
 import org.gdd.sage.http.cache.QueryCache;
-import org.gdd.sage.http.cache.SimpleCache;
+import org.gdd.sage.http.cache.QueryKey;
+import org.gdd.sage.http.cache.TinyLFUCache;
 import org.gdd.sage.http.data.SageQueryBuilder;
+import org.gdd.sage.http.hedging.HedgingPolicy;
+import org.gdd.sage.http.limit.CircuitBreaker;
+import org.gdd.sage.http.limit.ConcurrencyLimiter;
+import org.gdd.sage.http.limit.RetryBudget;
+import org.gdd.sage.http.limit.RetryHandler;
+import org.gdd.sage.http.transport.PooledHttpTransport;
 import org.gdd.sage.http.data.SageResponse;
 import org.gdd.sage.http.results.QueryResults;
 import org.gdd.sage.http.results.UpdateResults;
 
 import java.io.IOException;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Allows evaluation of SPARQL queries against a SaGe server.
@@ -41,12 +53,28 @@ public class SageDefaultClient implements SageRemoteClient {
     private String serverURL;
     private ExecutorService threadPool;
     private ObjectMapper mapper;
+    private HttpTransport transport;
     private HttpRequestFactory requestFactory;
     private ExecutionStats spy;
-    private QueryCache cache = new SimpleCache(100);
-    private static final HttpTransport HTTP_TRANSPORT = new NetHttpTransport();
+    private QueryCache cache;
+    private ConcurrencyLimiter limiter;
+    private RetryBudget retryBudget;
+    private CircuitBreaker circuitBreaker;
+    private int compressionThreshold = -1;
+    private HedgingPolicy hedging = null;
+    // Read queries currently sent to the server, used to coalesce identical requests
+    private final ConcurrentMap<QueryKey, CompletableFuture<QueryResults>> inFlightQueries = new ConcurrentHashMap<>();
+    // Connections are pooled per host, so all clients share the same transport by default
+    private static final HttpTransport DEFAULT_TRANSPORT = new PooledHttpTransport();
     private static final JsonFactory JSON_FACTORY = new JacksonFactory();
     private static final String HTTP_JSON_CONTENT_TYPE = "application/json";
+    // Compressed response encodings supported by the client
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final HttpEncoding GZIP_ENCODING = new GZipEncoding();
+    // Default maximum number of solution bindings held in cache
+    private static final long DEFAULT_CACHE_WEIGHT = 50000;
+    // Jackson readers are immutable and thread-safe, so all clients share the same one
+    private static final ObjectReader RESPONSE_READER = new ObjectMapper().readerFor(SageResponse.class);
 
     private class JSONPayload {
         private String query;
@@ -95,36 +123,78 @@ public class SageDefaultClient implements SageRemoteClient {
      */
     public SageDefaultClient(String serverURL) {
         this.serverURL = serverURL;
-        threadPool = Executors.newCachedThreadPool();
+        threadPool = SageExecutors.newExecutor();
         mapper = new ObjectMapper();
-        requestFactory = HTTP_TRANSPORT.createRequestFactory(request -> {
+        transport = DEFAULT_TRANSPORT;
+        requestFactory = transport.createRequestFactory(request -> {
             request.getHeaders().setAccept(HTTP_JSON_CONTENT_TYPE);
             request.getHeaders().setContentType(HTTP_JSON_CONTENT_TYPE);
             request.getHeaders().setUserAgent("Sage-Jena client/Java 1.8");
+            request.getHeaders().setAcceptEncoding(ACCEPT_ENCODING);
             request.setParser(new JsonObjectParser(JSON_FACTORY));
-            request.setUnsuccessfulResponseHandler(new HttpBackOffUnsuccessfulResponseHandler(new ExponentialBackOff()));
+            // retries are limited per request and per server, so they cannot amplify an overload of the server
+            RetryHandler retryHandler = new RetryHandler(retryBudget);
+            request.setNumberOfRetries(RetryHandler.DEFAULT_MAX_RETRIES);
+            request.setUnsuccessfulResponseHandler(retryHandler);
+            request.setIOExceptionHandler(retryHandler);
         });
         spy = new ExecutionStats();
+        cache = new TinyLFUCache(DEFAULT_CACHE_WEIGHT, spy);
+        limiter = ConcurrencyLimiter.forServer(serverURL);
+        retryBudget = RetryBudget.forServer(serverURL);
+        circuitBreaker = CircuitBreaker.forServer(serverURL);
     }
 
     /**
      * Constructor
      * @param serverURL - URL of the SaGe server
+     * @param spy - Spy used to record execution statistics
      */
     public SageDefaultClient(String serverURL, ExecutionStats spy) {
+        this(serverURL, spy, new TinyLFUCache(DEFAULT_CACHE_WEIGHT, spy));
+    }
+
+    /**
+     * Constructor
+     * @param serverURL - URL of the SaGe server
+     * @param spy - Spy used to record execution statistics
+     * @param cache - Cache used to store pages of results
+     */
+    public SageDefaultClient(String serverURL, ExecutionStats spy, QueryCache cache) {
+        this(serverURL, spy, cache, DEFAULT_TRANSPORT);
+    }
+
+    /**
+     * Constructor
+     * @param serverURL - URL of the SaGe server
+     * @param spy - Spy used to record execution statistics
+     * @param cache - Cache used to store pages of results
+     * @param transport - HTTP transport used to send requests, e.g., a {@link PooledHttpTransport}
+     */
+    public SageDefaultClient(String serverURL, ExecutionStats spy, QueryCache cache, HttpTransport transport) {
         this.serverURL = serverURL;
-        threadPool = Executors.newCachedThreadPool();
+        threadPool = SageExecutors.newExecutor();
         mapper = new ObjectMapper();
-        requestFactory = HTTP_TRANSPORT.createRequestFactory(request -> {
+        this.transport = transport;
+        requestFactory = transport.createRequestFactory(request -> {
             request.getHeaders().setAccept(HTTP_JSON_CONTENT_TYPE);
             request.getHeaders().setContentType(HTTP_JSON_CONTENT_TYPE);
             request.getHeaders().setUserAgent("Sage-Jena client/Java 1.8");
+            request.getHeaders().setAcceptEncoding(ACCEPT_ENCODING);
             request.setParser(new JsonObjectParser(JSON_FACTORY));
-            request.setUnsuccessfulResponseHandler(new HttpBackOffUnsuccessfulResponseHandler(new ExponentialBackOff()));
+            // retries are limited per request and per server, so they cannot amplify an overload of the server
+            RetryHandler retryHandler = new RetryHandler(retryBudget);
+            request.setNumberOfRetries(RetryHandler.DEFAULT_MAX_RETRIES);
+            request.setUnsuccessfulResponseHandler(retryHandler);
+            request.setIOExceptionHandler(retryHandler);
             request.setConnectTimeout(0);
             request.setReadTimeout(0);
         });
         this.spy = spy;
+        this.cache = cache;
+        limiter = ConcurrencyLimiter.forServer(serverURL);
+        retryBudget = RetryBudget.forServer(serverURL);
+        circuitBreaker = CircuitBreaker.forServer(serverURL);
     }
 
     /**
@@ -135,7 +205,54 @@ public class SageDefaultClient implements SageRemoteClient {
         return serverURL;
     }
 
-    private String buildJSONPayload(String graphURI, String query, Optional<String> next) {
+    /**
+     * Compress the body of requests larger than a threshold using gzip.
+     * Requests are sent uncompressed by default, as not all SaGe servers accept compressed requests.
+     * @param threshold - Minimum size (in bytes) of the compressed requests. A negative threshold disables request compression.
+     */
+    public void setRequestCompressionThreshold(int threshold) {
+        compressionThreshold = threshold;
+    }
+
+    /**
+     * Hedge read requests: when the server is slow to answer a request, send a duplicate of it and use the first answer.
+     * Hedging is disabled by default.
+     * @param hedging - Hedging policy, or null to disable hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy hedging) {
+        this.hedging = hedging;
+    }
+
+    /**
+     * Get the HTTP transport used to send requests to the SaGe server
+     * @return The HTTP transport used to send requests to the SaGe server
+     */
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Get the circuit breaker that fails requests fast when the SaGe server is unhealthy
+     * @return The circuit breaker of the SaGe server
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    @Override
+    public long getRetryDelay(TimeUnit unit) {
+        return circuitBreaker.getRemainingDelay(unit);
+    }
+
+    /**
+     * Get the limiter that controls how many requests are sent concurrently to the SaGe server
+     * @return The concurrency limiter of the SaGe server
+     */
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    private byte[] buildJSONPayload(String graphURI, String query, Optional<String> next) {
         JSONPayload payload;
         if (next.isPresent()) {
             payload = new JSONPayload(graphURI, query, next.get());
@@ -143,40 +260,279 @@ public class SageDefaultClient implements SageRemoteClient {
             payload = new JSONPayload(graphURI, query);
         }
         try {
-            return mapper.writeValueAsString(payload);
+            return mapper.writeValueAsBytes(payload);
         } catch (JsonProcessingException e) {
-            return "";
+            return new byte[0];
         }
     }
 
     /**
-     * Send a SPARQL query to the SaGe server
+     * Send a SPARQL query to the SaGe server, and wait for its results
      * @param query - SPARQL query to send
      * @param graphURI - URI of the default graph
      * @param next - Optional link used to resume query evaluation
      * @return Query results. If the next link is null, then the BGP has been completely evaluated.
      */
     private QueryResults sendQuery(String graphURI, String query, Optional<String> next, boolean isRead) {
-        // check in cache first
-        if (isRead && cache.has(graphURI, query, next)) {
-            return cache.get(graphURI, query, next);
+        QueryResults cachedResults = getCachedResults(graphURI, query, next, isRead);
+        if (cachedResults != null) {
+            return cachedResults;
+        } else if (!isRead) {
+            if (!acquirePermit()) {
+                return QueryResults.withError("Interrupted while waiting to send a query to " + serverURL);
+            }
+            return execute(graphURI, query, next, false);
+        }
+        QueryKey key = new QueryKey(graphURI, query, next);
+        CompletableFuture<QueryResults> promise = new CompletableFuture<>();
+        CompletableFuture<QueryResults> pendingResults = inFlightQueries.putIfAbsent(key, promise);
+        if (pendingResults != null) {
+            // the same page is already being fetched, so we wait for it instead of sending a duplicate request
+            spy.reportCoalescedRequest();
+            return pendingResults.join();
+        } else if (hedging != null) {
+            return executeHedged(key, promise, graphURI, query, next).join();
+        }
+        // the request is executed by the calling thread, as it would have to wait for it anyway
+        return executeInFlight(key, promise, graphURI, query, next, false);
+    }
+
+    /**
+     * Send a SPARQL query to the SaGe server, without waiting for its results
+     * @param query - SPARQL query to send
+     * @param graphURI - URI of the default graph
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the BGP has been completely evaluated.
+     */
+    private CompletableFuture<QueryResults> sendQueryAsync(String graphURI, String query, Optional<String> next, boolean isRead) {
+        QueryResults cachedResults = getCachedResults(graphURI, query, next, isRead);
+        if (cachedResults != null) {
+            return CompletableFuture.completedFuture(cachedResults);
+        } else if (!isRead) {
+            return dispatch(() -> execute(graphURI, query, next, false));
+        }
+        QueryKey key = new QueryKey(graphURI, query, next);
+        CompletableFuture<QueryResults> promise = new CompletableFuture<>();
+        CompletableFuture<QueryResults> pendingResults = inFlightQueries.putIfAbsent(key, promise);
+        if (pendingResults != null) {
+            spy.reportCoalescedRequest();
+        } else {
+            pendingResults = promise;
+            if (hedging != null) {
+                executeHedged(key, promise, graphURI, query, next);
+            } else {
+                dispatch(() -> executeInFlight(key, promise, graphURI, query, next, true));
+            }
+        }
+        // the future is shared by all callers, so none of them can complete or cancel it
+        return pendingResults.thenApply(results -> results);
+    }
+
+    /**
+     * Execute a read query registered as in-flight, and share its results with all callers waiting for them
+     * @param key - Key of the query
+     * @param promise - Future completed with the query results
+     * @param graphURI - URI of the default graph
+     * @param query - SPARQL query to send
+     * @param next - Optional link used to resume query evaluation
+     * @param hasPermit - True if the caller already holds a permit of the concurrency limiter
+     * @return Query results
+     */
+    private QueryResults executeInFlight(QueryKey key, CompletableFuture<QueryResults> promise, String graphURI, String query, Optional<String> next, boolean hasPermit) {
+        try {
+            // the same request may have completed between our cache miss and its registration
+            QueryResults results = null;
+            if (cache.has(graphURI, query, next)) {
+                results = cache.get(graphURI, query, next);
+            }
+            if (results != null) {
+                if (hasPermit) {
+                    limiter.releaseUnused();
+                }
+            } else if (!hasPermit && !acquirePermit()) {
+                results = QueryResults.withError("Interrupted while waiting to send a query to " + serverURL);
+            } else {
+                results = execute(graphURI, query, next, true);
+            }
+            promise.complete(results);
+            return results;
+        } catch (RuntimeException e) {
+            promise.completeExceptionally(e);
+            throw e;
+        } finally {
+            // results are cached before the query is unregistered, so later callers find them in cache
+            inFlightQueries.remove(key, promise);
+        }
+    }
+
+    /**
+     * Execute a read query registered as in-flight using the hedging policy, i.e., possibly with a duplicate request,
+     * and share its results with all callers waiting for them
+     * @param key - Key of the query
+     * @param promise - Future completed with the query results
+     * @param graphURI - URI of the default graph
+     * @param query - SPARQL query to send
+     * @param next - Optional link used to resume query evaluation
+     * @return The future completed with the query results
+     */
+    private CompletableFuture<QueryResults> executeHedged(QueryKey key, CompletableFuture<QueryResults> promise, String graphURI, String query, Optional<String> next) {
+        // the same request may have completed between our cache miss and its registration
+        QueryResults cachedResults = cache.get(graphURI, query, next);
+        if (cachedResults != null) {
+            promise.complete(cachedResults);
+            inFlightQueries.remove(key, promise);
+            return promise;
+        }
+        // duplicates are sent like any other request, so they are bounded by the concurrency limiter too
+        Supplier<CompletableFuture<QueryResults>> request = () -> dispatch(() -> execute(graphURI, query, next, true));
+        hedging.execute(request, request).whenComplete((results, error) -> {
+            if (error != null) {
+                promise.completeExceptionally(error);
+            } else {
+                promise.complete(results);
+            }
+            inFlightQueries.remove(key, promise);
+        });
+        return promise;
+    }
+
+    /**
+     * Wait until the concurrency limiter allows a new request to be sent to the server
+     * @return True if a permit has been acquired, False if the thread has been interrupted while waiting
+     */
+    private boolean acquirePermit() {
+        try {
+            limiter.acquire();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
+    }
+
+    /**
+     * Execute a task that sends a request to the server in the thread pool, as soon as the concurrency limiter allows it.
+     * Until then, the task waits in the limiter's queue rather than in a thread.
+     * @param task - Task to execute, which must give back its permit to the limiter
+     * @return A future completed with the task's results
+     */
+    private CompletableFuture<QueryResults> dispatch(Supplier<QueryResults> task) {
+        CompletableFuture<QueryResults> future = new CompletableFuture<>();
+        limiter.whenAvailable(() -> {
+            try {
+                threadPool.execute(() -> {
+                    try {
+                        future.complete(task.get());
+                    } catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the client has been closed
+                limiter.releaseUnused();
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Get the results of a query from the cache
+     * @param query - SPARQL query
+     * @param graphURI - URI of the default graph
+     * @param next - Optional link used to resume query evaluation
+     * @return The cached query results, or null if they are not in cache
+     */
+    private QueryResults getCachedResults(String graphURI, String query, Optional<String> next, boolean isRead) {
+        // updates are never cached
+        if (!isRead) {
+            return null;
+        }
+        QueryResults cachedResults = cache.get(graphURI, query, next);
+        if (cachedResults != null) {
+            spy.reportCacheHit();
+        } else {
+            spy.reportCacheMiss();
+        }
+        return cachedResults;
+    }
+
+    /**
+     * Execute the HTTP request that sends a SPARQL query to the SaGe server.
+     * The caller must hold a permit of the concurrency limiter, which is given back once the request has completed.
+     * @param query - SPARQL query to send
+     * @param graphURI - URI of the default graph
+     * @param next - Optional link used to resume query evaluation
+     * @return Query results. If the next link is null, then the BGP has been completely evaluated.
+     */
+    private QueryResults execute(String graphURI, String query, Optional<String> next, boolean isRead) {
+        // the server has asked to slow down
+        long pauseDelay = retryBudget.getPauseDelay();
+        if (pauseDelay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(pauseDelay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                limiter.releaseUnused();
+                return QueryResults.withError("Interrupted while waiting to send a query to " + serverURL);
+            }
+        }
+        if (!circuitBreaker.allowRequest()) {
+            limiter.releaseUnused();
+            return QueryResults.withError("The SaGe server " + serverURL + " is unavailable, as too many requests have failed");
+        }
+        retryBudget.onRequest();
+        long startTime = System.nanoTime();
+        QueryResults results = null;
+        try {
+            results = sendRequest(graphURI, query, next, isRead);
+            return results;
+        } finally {
+            limiter.release(System.nanoTime() - startTime, results != null && !results.hasError());
+        }
+    }
+
+    /**
+     * Send the HTTP request for a SPARQL query to the SaGe server, and decode its response
+     * @param query - SPARQL query to send
+     * @param graphURI - URI of the default graph
+     * @param next - Optional link used to resume query evaluation
+     * @return Query results. If the next link is null, then the BGP has been completely evaluated.
+     */
+    private QueryResults sendRequest(String graphURI, String query, Optional<String> next, boolean isRead) {
         // build POST query
         GenericUrl url = new GenericUrl(serverURL);
-        String payload = buildJSONPayload(graphURI, query, next);
-        HttpContent postContent = new ByteArrayContent(HTTP_JSON_CONTENT_TYPE, payload.getBytes());
+        byte[] payload = buildJSONPayload(graphURI, query, next);
+        HttpContent postContent = new ByteArrayContent(HTTP_JSON_CONTENT_TYPE, payload);
         double startTime = System.nanoTime();
         try {
             HttpRequest request = requestFactory.buildPostRequest(url, postContent);
-            HttpResponse response = request.executeAsync(threadPool).get();
+            if (compressionThreshold >= 0 && payload.length > compressionThreshold) {
+                request.setEncoding(GZIP_ENCODING);
+            }
+            HttpResponse response = request.execute();
             double endTime = System.nanoTime();
             if (isRead) {
                 spy.reportHTTPQueryRead((endTime - startTime) / 1e9);
             } else {
                 spy.reportHTTPQueryWrite((endTime - startTime) / 1e9);
             }
-            return decodeResponse(response, isRead);
-        } catch (InterruptedException | ExecutionException | IOException e) {
+            QueryResults results = decodeResponse(response, isRead);
+            circuitBreaker.onSuccess();
+            if (isRead) {
+                cache.put(graphURI, query, next, results);
+            } else {
+                // the dataset has been modified, so cached results may be outdated
+                cache.clear();
+            }
+            return results;
+        } catch (IOException e) {
+            if (e instanceof HttpResponseException && isClientError(((HttpResponseException) e).getStatusCode())) {
+                // the server has answered, so it is healthy
+                circuitBreaker.onSuccess();
+            } else {
+                circuitBreaker.onFailure();
+            }
             double endTime = System.nanoTime();
             if (isRead) {
                 spy.reportHTTPQueryRead((endTime - startTime) / 1e9);
@@ -187,6 +543,37 @@ public class SageDefaultClient implements SageRemoteClient {
         }
     }
 
+    /**
+     * Test if an HTTP status code indicates an error of the client, e.g., a malformed query, rather than an error of the server
+     * @param statusCode - HTTP status code
+     * @return True if the status code indicates an error of the client, False otherwise
+     */
+    private static boolean isClientError(int statusCode) {
+        return statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429;
+    }
+
+    /**
+     * Evaluate a SPARQL query, already serialized, against a SaGe server, with a next link.
+     * @param graphURI - Default Graph URI
+     * @param query - SPARQL query to evaluate
+     * @param next - Optional link used to resume query evaluation
+     * @return Query results. If the next link is null, then the query has been completely evaluated.
+     */
+    public QueryResults query(String graphURI, String query, Optional<String> next) {
+        return sendQuery(graphURI, query, next, true);
+    }
+
+    /**
+     * Evaluate a SPARQL query, already serialized, against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param query - SPARQL query to evaluate
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the query has been completely evaluated.
+     */
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, String query, Optional<String> next) {
+        return sendQueryAsync(graphURI, query, next, true);
+    }
+
     /**
      * Evaluate a Basic Graph Pattern against a SaGe server, without a next link
      * @param graphURI - Default Graph URI
@@ -209,6 +596,18 @@ public class SageDefaultClient implements SageRemoteClient {
         return sendQuery(graphURI, query, next, true);
     }
 
+    /**
+     * Evaluate a Basic Graph Pattern against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param bgp - BGP to evaluate
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the BGP has been completely evaluated.
+     */
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, BasicPattern bgp, Optional<String> next) {
+        String query = SageQueryBuilder.buildBGPQuery(bgp);
+        return sendQueryAsync(graphURI, query, next, true);
+    }
+
     /**
      * Evaluate a Basic Graph Pattern with a GROUP BY against a SaGe server, without a next link
      * @param graphURI - Default Graph URI
@@ -235,6 +634,20 @@ public class SageDefaultClient implements SageRemoteClient {
         return sendQuery(graphURI, query, next,true);
     }
 
+    /**
+     * Evaluate a Basic Graph Pattern with a GROUP BY against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param bgp - BGP to evaluate
+     * @param variables - GROUP BY variables
+     * @param aggregations - SPARQL aggregations (may be empty)
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the BGP has been completely evaluated.
+     */
+    public CompletableFuture<QueryResults> queryGroupByAsync(String graphURI, BasicPattern bgp, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions, Optional<String> next) {
+        String query = SageQueryBuilder.buildBGPGroupByQuery(bgp, variables, aggregations, extensions);
+        return sendQueryAsync(graphURI, query, next, true);
+    }
+
     /**
      * Evaluate a Basic Graph Pattern with filter against a SaGe server
      * @param graphURI - Default Graph URI
@@ -259,6 +672,19 @@ public class SageDefaultClient implements SageRemoteClient {
         return sendQuery(graphURI, query, next, true);
     }
 
+    /**
+     * Evaluate a Basic Graph Pattern with filter against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param bgp - BGP to evaluate
+     * @param filters - Filter expressions
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the BGP has been completely evaluated.
+     */
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, BasicPattern bgp, List<Expr> filters, Optional<String> next) {
+        String query = SageQueryBuilder.buildBGPQuery(bgp, filters);
+        return sendQueryAsync(graphURI, query, next, true);
+    }
+
     /**
      * Evaluate an Union of Basic Graph Patterns against a SaGe server, with a next link
      * @param graphURI - Default Graph URI
@@ -281,6 +707,18 @@ public class SageDefaultClient implements SageRemoteClient {
         return sendQuery(graphURI, query, next, true);
     }
 
+    /**
+     * Evaluate an Union of Basic Graph Patterns against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param patterns - List of BGPs to evaluate
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the Union has been completely evaluated.
+     */
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, List<BasicPattern> patterns, Optional<String> next) {
+        String query = SageQueryBuilder.buildUnionQuery(patterns);
+        return sendQueryAsync(graphURI, query, next, true);
+    }
+
     /**
      * Evaluate a set Graph clauses, each one wrapping a Basic Graph Patterns, against a SaGe server.
      * @param graphURI - Default Graph URI
@@ -303,6 +741,18 @@ public class SageDefaultClient implements SageRemoteClient {
         return sendQuery(graphURI, query, next, true);
     }
 
+    /**
+     * Evaluate a set Graph clauses, each one wrapping a Basic Graph Patterns, against a SaGe server, without waiting for its results.
+     * @param graphURI - Default Graph URI
+     * @param graphs - Graphs clauses to evaluates, i..e, tuples (graph uri, basic graph pattern)
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the Union has been completely evaluated.
+     */
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, Map<String, BasicPattern> graphs, Optional<String> next) {
+        String query = SageQueryBuilder.buildGraphQuery(graphs);
+        return sendQueryAsync(graphURI, query, next, true);
+    }
+
     /**
      * Evaluate a SPARQL UPDATE query using a {@link UpdateQuery} object
      * @param graphURI - Default Graph URI
@@ -310,8 +760,27 @@ public class SageDefaultClient implements SageRemoteClient {
      * @return Query results, containing the RDF quads that were processed by the server
      */
     public UpdateResults update(String graphURI, String query) {
-        QueryResults results = sendQuery(graphURI, query, Optional.empty(), false);
-        // convert QueryResults to UpdateResults
+        return toUpdateResults(graphURI, sendQuery(graphURI, query, Optional.empty(), false));
+    }
+
+    /**
+     * Evaluate a SPARQL UPDATE query against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param query - Query to execute
+     * @return A future completed with the query results, containing the RDF quads that were processed by the server
+     */
+    public CompletableFuture<UpdateResults> updateAsync(String graphURI, String query) {
+        return sendQueryAsync(graphURI, query, Optional.empty(), false)
+                .thenApply(results -> toUpdateResults(graphURI, results));
+    }
+
+    /**
+     * Convert the results of a SPARQL UPDATE query to {@link UpdateResults}
+     * @param graphURI - Default Graph URI
+     * @param results - Query results sent by the server
+     * @return Query results, containing the RDF quads that were processed by the server
+     */
+    private UpdateResults toUpdateResults(String graphURI, QueryResults results) {
         if (results.hasError()) {
             return UpdateResults.withError(results.getError());
         }
@@ -326,19 +795,36 @@ public class SageDefaultClient implements SageRemoteClient {
     }
 
     /**
-     * Decode an HTTP response from a SaGe server
+     * Get the content of an HTTP response, decompressed on the fly if needed.
+     * gzip-encoded content is already decompressed by the HTTP client, but deflate-encoded content is not.
+     * @param response - HTTP response
+     * @return The decompressed content of the response
+     * @throws IOException
+     */
+    private InputStream decompress(HttpResponse response) throws IOException {
+        InputStream content = response.getContent();
+        if (content != null && "deflate".equalsIgnoreCase(response.getContentEncoding())) {
+            return new InflaterInputStream(content);
+        }
+        return content;
+    }
+
+    /**
+     * Decode an HTTP response from a SaGe server.
+     * The response body is decoded while it is read from the network, without being copied in memory first.
      * @param response - The HTTP response to decode
      * @return A decoded response
      * @throws IOException
      */
     private QueryResults decodeResponse(HttpResponse response, boolean isRead) throws IOException {
-        String responseContent = IOUtils.toString(response.getContent(), Charset.forName("UTF-8"));
-
-        int statusCode = response.getStatusCode();
-        if (statusCode != 200) {
-            throw new IOException("Unexpected error when executing HTTP request: " + responseContent);
+        SageResponse sageResponse;
+        try (InputStream content = decompress(response)) {
+            int statusCode = response.getStatusCode();
+            if (statusCode != 200) {
+                throw new IOException("Unexpected error when executing HTTP request: " + IOUtils.toString(content, StandardCharsets.UTF_8));
+            }
+            sageResponse = RESPONSE_READER.readValue(content);
         }
-        SageResponse sageResponse = mapper.readValue(responseContent, new TypeReference<SageResponse>(){});
         if (isRead) {
             spy.reportOverheadRead(sageResponse.stats.getResumeTime(), sageResponse.stats.getSuspendTime());
         } else {
@@ -12,6 +12,8 @@ import org.gdd.sage.http.results.UpdateResults;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Generic interface for an HTTP client that sends SPARQL queries to a Sage server.
@@ -29,6 +31,35 @@ public interface SageRemoteClient {
      */
     void close();
 
+    /**
+     * Get the time to wait before requests can be sent to the server again, e.g., while the server is considered unhealthy
+     * and requests fail fast.
+     * @param unit - Unit of the delay
+     * @return The time to wait, or 0 if requests can be sent now
+     */
+    default long getRetryDelay(TimeUnit unit) {
+        return 0;
+    }
+
+    /**
+     * Evaluate a SPARQL query, already serialized, against a SaGe server, with a next link.
+     * Iterators that send the same query for each page of results use it to serialize the query only once.
+     * @param graphURI - Default Graph URI
+     * @param query - SPARQL query to evaluate, e.g., built using {@link org.gdd.sage.http.data.SageQueryBuilder}
+     * @param next - Optional link used to resume query evaluation
+     * @return Query results. If the next link is null, then the query has been completely evaluated.
+     */
+    QueryResults query(String graphURI, String query, Optional<String> next);
+
+    /**
+     * Evaluate a SPARQL query, already serialized, against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param query - SPARQL query to evaluate, e.g., built using {@link org.gdd.sage.http.data.SageQueryBuilder}
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the query has been completely evaluated.
+     */
+    CompletableFuture<QueryResults> queryAsync(String graphURI, String query, Optional<String> next);
+
     /**
      * Evaluate a Basic Graph Pattern against a SaGe server, without a next link
      * @param graphURI - Default Graph URI
@@ -46,6 +77,15 @@ public interface SageRemoteClient {
      */
     QueryResults query(String graphURI, BasicPattern bgp, Optional<String> next);
 
+    /**
+     * Evaluate a Basic Graph Pattern against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param bgp - BGP to evaluate
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the BGP has been completely evaluated.
+     */
+    CompletableFuture<QueryResults> queryAsync(String graphURI, BasicPattern bgp, Optional<String> next);
+
     /**
      * Evaluate a Basic Graph Pattern with a GROUP BY against a SaGe server, without a next link
      * @param graphURI - Default Graph URI
@@ -67,6 +107,17 @@ public interface SageRemoteClient {
      */
     QueryResults queryGroupBy(String graphURI, BasicPattern bgp, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions, Optional<String> next);
 
+    /**
+     * Evaluate a Basic Graph Pattern with a GROUP BY against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param bgp - BGP to evaluate
+     * @param variables - GROUP BY variables
+     * @param aggregations - SPARQL aggregations (may be empty)
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the BGP has been completely evaluated.
+     */
+    CompletableFuture<QueryResults> queryGroupByAsync(String graphURI, BasicPattern bgp, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions, Optional<String> next);
+
     /**
      * Evaluate a Basic Graph Pattern with filter against a SaGe server
      * @param graphURI - Default Graph URI
@@ -86,6 +137,16 @@ public interface SageRemoteClient {
      */
     QueryResults query(String graphURI, BasicPattern bgp, List<Expr> filters, Optional<String> next);
 
+    /**
+     * Evaluate a Basic Graph Pattern with filter against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param bgp - BGP to evaluate
+     * @param filters - Filter expressions
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the BGP has been completely evaluated.
+     */
+    CompletableFuture<QueryResults> queryAsync(String graphURI, BasicPattern bgp, List<Expr> filters, Optional<String> next);
+
     /**
      * Evaluate an Union of Basic Graph Patterns against a SaGe server, with a next link
      * @param graphURI - Default Graph URI
@@ -103,6 +164,15 @@ public interface SageRemoteClient {
      */
     QueryResults query(String graphURI, List<BasicPattern> patterns, Optional<String> next);
 
+    /**
+     * Evaluate an Union of Basic Graph Patterns against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param patterns - List of BGPs to evaluate
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the Union has been completely evaluated.
+     */
+    CompletableFuture<QueryResults> queryAsync(String graphURI, List<BasicPattern> patterns, Optional<String> next);
+
     /**
      * Evaluate a set Graph clauses, each one wrapping a Basic Graph Patterns, against a SaGe server.
      * @param graphURI - Default Graph URI
@@ -120,6 +190,15 @@ public interface SageRemoteClient {
      */
     QueryResults query(String graphURI, Map<String, BasicPattern> graphs, Optional<String> next);
 
+    /**
+     * Evaluate a set Graph clauses, each one wrapping a Basic Graph Patterns, against a SaGe server, without waiting for its results.
+     * @param graphURI - Default Graph URI
+     * @param graphs - Graphs clauses to evaluates, i..e, tuples (graph uri, basic graph pattern)
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results. If the next link is null, then the Union has been completely evaluated.
+     */
+    CompletableFuture<QueryResults> queryAsync(String graphURI, Map<String, BasicPattern> graphs, Optional<String> next);
+
     /**
      * Evaluate a SPARQL UPDATE query using a {@link UpdateQuery} object
      * @param graphURI - Default Graph URI
@@ -127,4 +206,12 @@ public interface SageRemoteClient {
      * @return Query results, containing the RDF quads that were processed by the server
      */
     UpdateResults update(String graphURI, String query);
+
+    /**
+     * Evaluate a SPARQL UPDATE query against a SaGe server, without waiting for its results
+     * @param graphURI - Default Graph URI
+     * @param query - Query to execute
+     * @return A future completed with the query results, containing the RDF quads that were processed by the server
+     */
+    CompletableFuture<UpdateResults> updateAsync(String graphURI, String query);
 }
@@ -0,0 +1,357 @@
+package org.gdd.sage.http;
+
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.gdd.sage.http.data.SageQueryBuilder;
+import org.gdd.sage.http.hedging.HedgingPolicy;
+import org.gdd.sage.http.results.QueryResults;
+import org.gdd.sage.http.results.UpdateResults;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluates SPARQL queries against a set of SaGe servers that host the same datasets, i.e., replicas.
+ * Each read request is routed to the replica that is expected to answer first, either the one with the
+ * least outstanding requests or the one with the lowest latency (EWMA weighted by its outstanding requests).
+ *
+ * As a SaGe server can resume any query from its "next" link, the pages of the same query are routed independently,
+ * so a query can move from one replica to another between two pages.
+ * Graph URIs are rewritten for each replica, by replacing the URL of the first server by the URL of the replica.
+ *
+ * Updates are always sent to the first server, as replicas are not kept in sync by the client.
+ * @author Thomas Minier
+ */
+public class SageReplicatedClient implements SageRemoteClient {
+    private final List<Replica> replicas;
+    private final RoutingPolicy policy;
+    private final String serverURL;
+    // Used to break ties between replicas, so requests are evenly spread when replicas are idle
+    private int nextReplica;
+    private HedgingPolicy hedging;
+    // Weight of the last request in the average latency of a replica
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    /**
+     * How read requests are routed among replicas
+     */
+    public enum RoutingPolicy {
+        /**
+         * Route requests to the replica with the least outstanding requests
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * Route requests to the replica with the lowest average latency (EWMA), weighted by its outstanding requests
+         */
+        LATENCY_EWMA
+    }
+
+    /**
+     * A replica, with its load and latency
+     */
+    static class Replica {
+        private final SageRemoteClient client;
+        private int outstanding;
+        // Average latency, in nanoseconds, or a negative number if no request has completed yet
+        private double averageLatency;
+
+        Replica(SageRemoteClient client) {
+            this.client = client;
+            outstanding = 0;
+            averageLatency = -1;
+        }
+
+        SageRemoteClient getClient() {
+            return client;
+        }
+
+        int getOutstanding() {
+            return outstanding;
+        }
+
+        double getAverageLatency() {
+            return averageLatency;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param serverURLs - URLs of the SaGe servers that host the same datasets. The first one is used to send updates.
+     * @param policy - How read requests are routed among replicas
+     * @param spy - Spy used to record execution statistics
+     */
+    public SageReplicatedClient(List<String> serverURLs, RoutingPolicy policy, ExecutionStats spy) {
+        this(toClients(serverURLs, spy), policy);
+    }
+
+    /**
+     * Constructor
+     * @param clients - HTTP clients of the SaGe servers that host the same datasets. The first one is used to send updates.
+     * @param policy - How read requests are routed among replicas
+     */
+    public SageReplicatedClient(List<? extends SageRemoteClient> clients, RoutingPolicy policy) {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("A replicated client requires at least one SaGe server");
+        }
+        replicas = new ArrayList<>();
+        for (SageRemoteClient client: clients) {
+            replicas.add(new Replica(client));
+        }
+        this.policy = policy;
+        serverURL = clients.get(0).getServerURL();
+        nextReplica = 0;
+        hedging = null;
+    }
+
+    private static List<SageRemoteClient> toClients(List<String> serverURLs, ExecutionStats spy) {
+        List<SageRemoteClient> clients = new ArrayList<>();
+        for (String url: serverURLs) {
+            clients.add(new SageDefaultClient(url, spy));
+        }
+        return clients;
+    }
+
+    /**
+     * Get the URL of the first SaGe server, used to identify the replicated datasets
+     * @return The URL of the first SaGe server
+     */
+    @Override
+    public String getServerURL() {
+        return serverURL;
+    }
+
+    /**
+     * Hedge read requests: when a replica is slow to answer, send a duplicate request to another replica.
+     * Hedging is disabled by default.
+     * @param hedging - Hedging policy, or null to disable hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy hedging) {
+        this.hedging = hedging;
+    }
+
+    /**
+     * Get the time to wait before requests can be sent to one of the replicas again
+     * @param unit - Unit of the delay
+     * @return The time to wait, or 0 if requests can be sent now
+     */
+    @Override
+    public long getRetryDelay(TimeUnit unit) {
+        long delay = Long.MAX_VALUE;
+        for (Replica replica : replicas) {
+            delay = Math.min(delay, replica.client.getRetryDelay(unit));
+        }
+        return replicas.isEmpty() ? 0 : delay;
+    }
+
+    /**
+     * Get the replicas, in the order they have been given
+     * @return The replicas
+     */
+    List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /**
+     * Select the replica to which the next read request is sent, and count the request as outstanding
+     * @param excluded - Replica that should not be selected if another one is available, e.g., because it is slow, or null
+     * @return The selected replica
+     */
+    private synchronized Replica acquire(Replica excluded) {
+        Replica best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((nextReplica + i) % replicas.size());
+            if (replica == excluded && replicas.size() > 1) {
+                continue;
+            }
+            double score;
+            if (policy == RoutingPolicy.LATENCY_EWMA) {
+                // replicas without latency yet are probed first
+                score = replica.averageLatency < 0 ? replica.outstanding : replica.averageLatency * (replica.outstanding + 1);
+            } else {
+                score = replica.outstanding;
+            }
+            if (score < bestScore) {
+                best = replica;
+                bestScore = score;
+            }
+        }
+        nextReplica = (nextReplica + 1) % replicas.size();
+        best.outstanding++;
+        return best;
+    }
+
+    /**
+     * Record the completion of a request sent to a replica
+     * @param replica - Replica that has answered the request
+     * @param latency - Latency of the request, in nanoseconds
+     * @param success - True if the request has succeeded, False otherwise
+     */
+    private synchronized void release(Replica replica, long latency, boolean success) {
+        replica.outstanding--;
+        // failures are counted as slow requests, so traffic moves away from a failing replica
+        double observed = success ? latency : Math.max(latency, replica.averageLatency) * 2;
+        if (replica.averageLatency < 0) {
+            replica.averageLatency = observed;
+        } else {
+            replica.averageLatency = (1 - LATENCY_SMOOTHING) * replica.averageLatency + LATENCY_SMOOTHING * observed;
+        }
+    }
+
+    /**
+     * Rewrite a graph URI for a replica, i.e., replace the URL of the first server by the URL of the replica
+     * @param graphURI - Graph URI, on the first server
+     * @param replica - Replica
+     * @return The graph URI on the replica
+     */
+    private String rewrite(String graphURI, Replica replica) {
+        String replicaURL = replica.client.getServerURL();
+        if (graphURI.startsWith(serverURL) && !replicaURL.equals(serverURL)) {
+            return replicaURL + graphURI.substring(serverURL.length());
+        }
+        return graphURI;
+    }
+
+    @Override
+    public QueryResults query(String graphURI, String query, Optional<String> next) {
+        if (hedging != null) {
+            return queryAsync(graphURI, query, next).join();
+        }
+        Replica replica = acquire(null);
+        long startTime = System.nanoTime();
+        QueryResults results = null;
+        try {
+            results = replica.client.query(rewrite(graphURI, replica), query, next);
+            return results;
+        } finally {
+            release(replica, System.nanoTime() - startTime, results != null && !results.hasError());
+        }
+    }
+
+    @Override
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, String query, Optional<String> next) {
+        Replica replica = acquire(null);
+        if (hedging == null) {
+            return send(replica, graphURI, query, next);
+        }
+        // duplicate requests are sent to another replica, as the first one may be the cause of the delay
+        return hedging.execute(() -> send(replica, graphURI, query, next), () -> send(acquire(replica), graphURI, query, next));
+    }
+
+    /**
+     * Send a read request to a replica, without waiting for its results
+     * @param replica - Replica, already selected using {@link #acquire(Replica)}
+     * @param graphURI - Default Graph URI, on the first server
+     * @param query - SPARQL query to evaluate
+     * @param next - Optional link used to resume query evaluation
+     * @return A future completed with the query results
+     */
+    private CompletableFuture<QueryResults> send(Replica replica, String graphURI, String query, Optional<String> next) {
+        long startTime = System.nanoTime();
+        CompletableFuture<QueryResults> results;
+        try {
+            results = replica.client.queryAsync(rewrite(graphURI, replica), query, next);
+        } catch (RuntimeException e) {
+            release(replica, System.nanoTime() - startTime, false);
+            throw e;
+        }
+        return results.whenComplete((page, error) -> release(replica, System.nanoTime() - startTime, error == null && !page.hasError()));
+    }
+
+    @Override
+    public QueryResults query(String graphURI, BasicPattern bgp) {
+        return query(graphURI, bgp, Optional.empty());
+    }
+
+    @Override
+    public QueryResults query(String graphURI, BasicPattern bgp, Optional<String> next) {
+        return query(graphURI, SageQueryBuilder.buildBGPQuery(bgp), next);
+    }
+
+    @Override
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, BasicPattern bgp, Optional<String> next) {
+        return queryAsync(graphURI, SageQueryBuilder.buildBGPQuery(bgp), next);
+    }
+
+    @Override
+    public QueryResults queryGroupBy(String graphURI, BasicPattern bgp, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions) {
+        return queryGroupBy(graphURI, bgp, variables, aggregations, extensions, Optional.empty());
+    }
+
+    @Override
+    public QueryResults queryGroupBy(String graphURI, BasicPattern bgp, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions, Optional<String> next) {
+        return query(graphURI, SageQueryBuilder.buildBGPGroupByQuery(bgp, variables, aggregations, extensions), next);
+    }
+
+    @Override
+    public CompletableFuture<QueryResults> queryGroupByAsync(String graphURI, BasicPattern bgp, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions, Optional<String> next) {
+        return queryAsync(graphURI, SageQueryBuilder.buildBGPGroupByQuery(bgp, variables, aggregations, extensions), next);
+    }
+
+    @Override
+    public QueryResults query(String graphURI, BasicPattern bgp, List<Expr> filters) {
+        return query(graphURI, bgp, filters, Optional.empty());
+    }
+
+    @Override
+    public QueryResults query(String graphURI, BasicPattern bgp, List<Expr> filters, Optional<String> next) {
+        return query(graphURI, SageQueryBuilder.buildBGPQuery(bgp, filters), next);
+    }
+
+    @Override
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, BasicPattern bgp, List<Expr> filters, Optional<String> next) {
+        return queryAsync(graphURI, SageQueryBuilder.buildBGPQuery(bgp, filters), next);
+    }
+
+    @Override
+    public QueryResults query(String graphURI, List<BasicPattern> patterns) {
+        return query(graphURI, patterns, Optional.empty());
+    }
+
+    @Override
+    public QueryResults query(String graphURI, List<BasicPattern> patterns, Optional<String> next) {
+        return query(graphURI, SageQueryBuilder.buildUnionQuery(patterns), next);
+    }
+
+    @Override
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, List<BasicPattern> patterns, Optional<String> next) {
+        return queryAsync(graphURI, SageQueryBuilder.buildUnionQuery(patterns), next);
+    }
+
+    @Override
+    public QueryResults query(String graphURI, Map<String, BasicPattern> graphs) {
+        return query(graphURI, graphs, Optional.empty());
+    }
+
+    @Override
+    public QueryResults query(String graphURI, Map<String, BasicPattern> graphs, Optional<String> next) {
+        return query(graphURI, SageQueryBuilder.buildGraphQuery(graphs), next);
+    }
+
+    @Override
+    public CompletableFuture<QueryResults> queryAsync(String graphURI, Map<String, BasicPattern> graphs, Optional<String> next) {
+        return queryAsync(graphURI, SageQueryBuilder.buildGraphQuery(graphs), next);
+    }
+
+    @Override
+    public UpdateResults update(String graphURI, String query) {
+        return replicas.get(0).client.update(graphURI, query);
+    }
+
+    @Override
+    public CompletableFuture<UpdateResults> updateAsync(String graphURI, String query) {
+        return replicas.get(0).client.updateAsync(graphURI, query);
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.client.close());
+    }
+}
@@ -0,0 +1,86 @@
+package org.gdd.sage.http.cache;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Count-Min sketch that estimates how often keys have been accessed recently.
+ * Counters saturate at 15 and are all halved periodically, so old popularity fades away (aging).
+ * All operations are lock-free: concurrent updates may be lost, which only makes estimations slightly less accurate.
+ * @author Thomas Minier
+ */
+class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0x9e3779b9, 0x85ebca6b, 0xc2b2ae35};
+    private final AtomicIntegerArray counters;
+    private final int mask;
+    private final long sampleSize;
+    private final AtomicLong nbAdditions;
+
+    /**
+     * Constructor
+     * @param expectedSize - Expected number of distinct keys tracked
+     */
+    FrequencySketch(long expectedSize) {
+        int width = Integer.highestOneBit((int) Math.max(64, Math.min(expectedSize, 1 << 20)) - 1) << 1;
+        counters = new AtomicIntegerArray(width * DEPTH);
+        mask = width - 1;
+        sampleSize = 10L * width;
+        nbAdditions = new AtomicLong();
+    }
+
+    /**
+     * Get the index of the counter of a key in a row of the sketch
+     * @param hash - Hash of the key
+     * @param row - Row of the sketch
+     * @return The index of the counter in the array of counters
+     */
+    private int indexOf(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return (row * (mask + 1)) + (h & mask);
+    }
+
+    /**
+     * Estimate the number of recent accesses to a key
+     * @param hash - Hash of the key
+     * @return The estimated frequency of the key, between 0 and 15
+     */
+    int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters.get(indexOf(hash, row)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Record an access to a key
+     * @param hash - Hash of the key
+     */
+    void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = indexOf(hash, row);
+            int count = counters.get(index);
+            if (count < MAX_COUNT) {
+                added |= counters.compareAndSet(index, count, count + 1);
+            }
+        }
+        if (added && nbAdditions.incrementAndGet() >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halve all counters, so the sketch favors recent accesses
+     */
+    private void reset() {
+        nbAdditions.set(0);
+        for (int i = 0; i < counters.length(); i++) {
+            int count = counters.get(i);
+            counters.compareAndSet(i, count, count >>> 1);
+        }
+    }
+}
@@ -33,7 +33,12 @@ public interface QueryCache {
      * @param graphURI - Default RDF Graph URI
      * @param query - SPARQL query executed
      * @param next - Optional next link sent with the query
-     * @return Cache entry
+     * @return Cache entry, or null if the cache has no entry for this query
      */
     QueryResults get(String graphURI, String query, Optional<String> next);
+
+    /**
+     * Remove all entries from the cache
+     */
+    void clear();
 }
@@ -0,0 +1,56 @@
+package org.gdd.sage.http.cache;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Identifies a page of results sent by a SaGe server, i.e., a tuple (default graph URI, SPARQL query, next link)
+ * @author Thomas Minier
+ */
+public class QueryKey {
+    private final String graphURI;
+    private final String query;
+    private final String next;
+    private final int hash;
+
+    /**
+     * Constructor
+     * @param graphURI - Default RDF Graph URI
+     * @param query - SPARQL query executed
+     * @param next - Optional next link sent with the query
+     */
+    public QueryKey(String graphURI, String query, Optional<String> next) {
+        this.graphURI = graphURI;
+        this.query = query;
+        this.next = next.orElse(null);
+        // queries can be large, so we compute the hash only once
+        this.hash = Objects.hash(graphURI, query, this.next);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        QueryKey other = (QueryKey) o;
+        return hash == other.hash && Objects.equals(graphURI, other.graphURI)
+                && Objects.equals(next, other.next) && Objects.equals(query, other.query);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryKey{" +
+                "graphURI='" + graphURI + '\'' +
+                ", query='" + query + '\'' +
+                ", next='" + next + '\'' +
+                '}';
+    }
+}
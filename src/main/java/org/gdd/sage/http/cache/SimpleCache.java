@@ -1,66 +1,155 @@
 package org.gdd.sage.http.cache;
 
+import org.gdd.sage.http.ExecutionStats;
 import org.gdd.sage.http.results.QueryResults;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Simple LRU cache for SPARQL query results
+ * Simple LRU cache for SPARQL query results.
+ * The size of the cache is measured in number of solution bindings, so large pages of results
+ * weight more than small ones. Entries can also expire after a fixed amount of time.
  * @author Thomas Minier
  */
 public class SimpleCache implements QueryCache {
-    LRUCache<String, QueryResults> cache;
+    private final LinkedHashMap<QueryKey, Entry> cache;
+    private final long maxWeight;
+    private final long ttl;
+    private final ExecutionStats spy;
+    private long currentWeight;
 
-    private class LRUCache<K, V> extends LinkedHashMap<K, V> {
-        private int cacheSize;
+    /**
+     * An entry in the cache
+     */
+    private static class Entry {
+        private final QueryResults results;
+        private final int weight;
+        private final long expirationTime;
 
-        public LRUCache(int cacheSize) {
-            super(16);
-            this.cacheSize = cacheSize;
+        Entry(QueryResults results, int weight, long expirationTime) {
+            this.results = results;
+            this.weight = weight;
+            this.expirationTime = expirationTime;
         }
+    }
 
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            return size() >= cacheSize;
-        }
+    /**
+     * Constructor, where cache evictions are not reported to the client's statistics
+     * @param maxSize - Maximum number of solution bindings to hold in cache
+     */
+    public SimpleCache(int maxSize) {
+        this(maxSize, new ExecutionStats());
     }
 
     /**
      * Constructor
-     * @param maxSize - Maximum items to hold in cache
+     * @param maxWeight - Maximum number of solution bindings to hold in cache
+     * @param spy - Spy used to report cache evictions
      */
-    public SimpleCache(int maxSize) {
-        cache = new LRUCache<>(maxSize);
+    public SimpleCache(long maxWeight, ExecutionStats spy) {
+        this(maxWeight, 0, TimeUnit.MILLISECONDS, spy);
+    }
+
+    /**
+     * Constructor
+     * @param maxWeight - Maximum number of solution bindings to hold in cache
+     * @param ttl - Time after which an entry expires. A time of 0 disables expiration.
+     * @param unit - Unit of the time to live
+     * @param spy - Spy used to report cache evictions
+     */
+    public SimpleCache(long maxWeight, long ttl, TimeUnit unit, ExecutionStats spy) {
+        // use access order, so the eldest entry is the least recently used one
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxWeight = maxWeight;
+        this.ttl = unit.toNanos(ttl);
+        this.spy = spy;
+        currentWeight = 0;
+    }
+
+    /**
+     * Get the weight of a page of results, i.e., its number of solution bindings
+     * @param results - Page of results
+     * @return The weight of the page of results
+     */
+    static int weightOf(QueryResults results) {
+        // empty pages are worth caching too, but they are not free
+        return Math.max(1, results.getBindings().size());
+    }
+
+    /**
+     * Test if a cache entry has expired
+     * @param entry - Cache entry
+     * @return True if the entry has expired, False otherwise
+     */
+    private boolean hasExpired(Entry entry) {
+        return ttl > 0 && System.nanoTime() - entry.expirationTime > 0;
+    }
+
+    /**
+     * Remove a cache entry
+     * @param key - Key of the entry
+     */
+    private void remove(QueryKey key) {
+        Entry entry = cache.remove(key);
+        if (entry != null) {
+            currentWeight -= entry.weight;
+        }
     }
 
     /**
-     * Build the key used to store items in the cache
-     * @param graphURI - Default RDF Graph URI
-     * @param query - SPARQL query executed
-     * @param next - Optional next link sent with the query
-     * @return The key used to store items in the cache
+     * Evict least recently used entries until the cache fits in its maximum weight
      */
-    private String buildKey(String graphURI, String query, Optional<String> next) {
-        if (next.isPresent()) {
-            return "g=" + graphURI + ";q=" + next.get();
+    private void evict() {
+        int nbEvictions = 0;
+        Iterator<Entry> entries = cache.values().iterator();
+        while (currentWeight > maxWeight && entries.hasNext()) {
+            currentWeight -= entries.next().weight;
+            entries.remove();
+            nbEvictions++;
+        }
+        if (nbEvictions > 0) {
+            spy.reportCacheEvictions(nbEvictions);
+        }
+    }
+
+    @Override
+    public synchronized void put(String graphURI, String query, Optional<String> next, QueryResults results) {
+        int weight = weightOf(results);
+        // do not flush the whole cache for a single page that does not fit in it anyway
+        if (weight > maxWeight) {
+            return;
         }
-        return "g=" + graphURI + ";q=" + query;
+        QueryKey key = new QueryKey(graphURI, query, next);
+        remove(key);
+        cache.put(key, new Entry(results, weight, System.nanoTime() + ttl));
+        currentWeight += weight;
+        evict();
     }
 
     @Override
-    public void put(String graphURI, String query, Optional<String> next, QueryResults results) {
-        cache.put(buildKey(graphURI, query, next), results);
+    public synchronized boolean has(String graphURI, String query, Optional<String> next) {
+        return get(graphURI, query, next) != null;
     }
 
     @Override
-    public boolean has(String graphURI, String query, Optional<String> next) {
-        return cache.containsKey(buildKey(graphURI, query, next));
+    public synchronized QueryResults get(String graphURI, String query, Optional<String> next) {
+        QueryKey key = new QueryKey(graphURI, query, next);
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        } else if (hasExpired(entry)) {
+            remove(key);
+            return null;
+        }
+        return entry.results;
     }
 
     @Override
-    public QueryResults get(String graphURI, String query, Optional<String> next) {
-        return cache.get(buildKey(graphURI, query, next));
+    public synchronized void clear() {
+        cache.clear();
+        currentWeight = 0;
     }
 }
@@ -0,0 +1,272 @@
+package org.gdd.sage.http.cache;
+
+import org.gdd.sage.http.ExecutionStats;
+import org.gdd.sage.http.results.QueryResults;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache for SPARQL query results, designed to be shared by many concurrent threads,
+ * e.g., the threads of a parallel bound join.
+ *
+ * The cache is split into segments, each one guarded by its own lock, so threads reading different entries
+ * rarely contend. Each segment is a LRU cache, but all segments share the total weight (in number of solution bindings):
+ * a single page may use the capacity of the whole cache, and room is made for it by evicting the least recently used entries
+ * of its segment first, then those of the other segments. Insertions are serialized, so the total weight is never exceeded.
+ *
+ * Admission follows the TinyLFU policy: a shared sketch estimates how often each page has been requested recently,
+ * and a new page only replaces the least recently used ones if they have not been requested more frequently than it.
+ * Hence, scans of pages requested only once, as done by bound joins, do not flush the pages that are reused.
+ * @author Thomas Minier
+ */
+public class TinyLFUCache implements QueryCache {
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+    // Maximum number of popular entries skipped when looking for victims
+    private static final int MAX_SKIPPED_VICTIMS = 8;
+    private final Segment[] segments;
+    private final long maxWeight;
+    private final AtomicLong currentWeight;
+    // guards insertions, which may evict entries from any segment
+    private final Object admissionLock;
+    private final FrequencySketch sketch;
+    private final long ttl;
+    private final ExecutionStats spy;
+
+    /**
+     * An entry in the cache
+     */
+    private static class Entry {
+        private final QueryResults results;
+        private final int weight;
+        private final long expirationTime;
+
+        Entry(QueryResults results, int weight, long expirationTime) {
+            this.results = results;
+            this.weight = weight;
+            this.expirationTime = expirationTime;
+        }
+    }
+
+    /**
+     * A segment of the cache, i.e., a LRU cache guarded by its own lock
+     */
+    private static class Segment {
+        // use access order, so the eldest entry is the least recently used one
+        private final LinkedHashMap<QueryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * An entry selected for eviction, along with the segment that holds it
+     */
+    private static class Victim {
+        private final Segment segment;
+        private final QueryKey key;
+        private final Entry entry;
+
+        Victim(Segment segment, QueryKey key, Entry entry) {
+            this.segment = segment;
+            this.key = key;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param maxWeight - Maximum number of solution bindings to hold in cache
+     * @param spy - Spy used to report cache evictions
+     */
+    public TinyLFUCache(long maxWeight, ExecutionStats spy) {
+        this(maxWeight, 0, TimeUnit.MILLISECONDS, DEFAULT_CONCURRENCY_LEVEL, spy);
+    }
+
+    /**
+     * Constructor
+     * @param maxWeight - Maximum number of solution bindings to hold in cache
+     * @param ttl - Time after which an entry expires. A time of 0 disables expiration.
+     * @param unit - Unit of the time to live
+     * @param concurrencyLevel - Number of segments of the cache, rounded to the next power of two
+     * @param spy - Spy used to report cache evictions
+     */
+    public TinyLFUCache(long maxWeight, long ttl, TimeUnit unit, int concurrencyLevel, ExecutionStats spy) {
+        int nbSegments = 1;
+        while (nbSegments < concurrencyLevel) {
+            nbSegments <<= 1;
+        }
+        segments = new Segment[nbSegments];
+        for (int i = 0; i < nbSegments; i++) {
+            segments[i] = new Segment();
+        }
+        this.maxWeight = Math.max(1, maxWeight);
+        currentWeight = new AtomicLong(0);
+        admissionLock = new Object();
+        sketch = new FrequencySketch(maxWeight);
+        this.ttl = unit.toNanos(ttl);
+        this.spy = spy;
+    }
+
+    /**
+     * Spread the hash of a key, so both the choice of segment and the sketch use well distributed bits
+     * @param key - Cache key
+     * @return The spread hash of the key
+     */
+    private static int hash(QueryKey key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get the index of the segment responsible for a key
+     * @param hash - Spread hash of the key
+     * @return The index of the segment responsible for the key
+     */
+    private int segmentIndex(int hash) {
+        return (hash * 0x9e3779b9 >>> 16) & (segments.length - 1);
+    }
+
+    /**
+     * Get the segment responsible for a key
+     * @param hash - Spread hash of the key
+     * @return The segment responsible for the key
+     */
+    private Segment segmentFor(int hash) {
+        return segments[segmentIndex(hash)];
+    }
+
+    /**
+     * Test if a cache entry has expired
+     * @param entry - Cache entry
+     * @return True if the entry has expired, False otherwise
+     */
+    private boolean hasExpired(Entry entry) {
+        return ttl > 0 && System.nanoTime() - entry.expirationTime > 0;
+    }
+
+    /**
+     * Get the total number of solution bindings currently held in cache
+     * @return The total weight of the cache
+     */
+    long weight() {
+        return currentWeight.get();
+    }
+
+    @Override
+    public void put(String graphURI, String query, Optional<String> next, QueryResults results) {
+        QueryKey key = new QueryKey(graphURI, query, next);
+        int hash = hash(key);
+        int weight = SimpleCache.weightOf(results);
+        // do not flush the whole cache for a single page that does not fit in it anyway
+        if (weight > maxWeight) {
+            return;
+        }
+        int homeIndex = segmentIndex(hash);
+        Segment home = segments[homeIndex];
+        // a put follows a miss on the same key, which has already been recorded by the sketch
+        int candidateFrequency = sketch.frequency(hash);
+        int nbEvictions = 0;
+        synchronized (admissionLock) {
+            long previousWeight = 0;
+            synchronized (home) {
+                Entry previous = home.entries.get(key);
+                if (previous != null) {
+                    previousWeight = previous.weight;
+                }
+            }
+            // find the victims required to make room for the new entry, from the least recently used ones of its segment,
+            // then of the other segments. Entries more popular than the new one are spared, and the new entry is rejected
+            // if too many of them stand in the way.
+            long excess = currentWeight.get() - previousWeight + weight - maxWeight;
+            long freed = 0;
+            int nbSkipped = 0;
+            List<Victim> victims = new ArrayList<>();
+            for (int i = 0; i < segments.length && freed < excess && nbSkipped <= MAX_SKIPPED_VICTIMS; i++) {
+                Segment segment = segments[(homeIndex + i) & (segments.length - 1)];
+                synchronized (segment) {
+                    Iterator<Map.Entry<QueryKey, Entry>> lru = segment.entries.entrySet().iterator();
+                    while (freed < excess && nbSkipped <= MAX_SKIPPED_VICTIMS && lru.hasNext()) {
+                        Map.Entry<QueryKey, Entry> victim = lru.next();
+                        if (victim.getKey().equals(key)) {
+                            // the previous version of the page is replaced anyway
+                            continue;
+                        }
+                        if (!hasExpired(victim.getValue()) && sketch.frequency(hash(victim.getKey())) > candidateFrequency) {
+                            nbSkipped++;
+                        } else {
+                            victims.add(new Victim(segment, victim.getKey(), victim.getValue()));
+                            freed += victim.getValue().weight;
+                        }
+                    }
+                }
+            }
+            // keep the previous version of the page, if any
+            if (freed < excess) {
+                return;
+            }
+            for (Victim victim : victims) {
+                synchronized (victim.segment) {
+                    // expired victims may have been removed by a concurrent read in the meantime
+                    if (victim.segment.entries.remove(victim.key, victim.entry)) {
+                        currentWeight.addAndGet(-victim.entry.weight);
+                        nbEvictions++;
+                    }
+                }
+            }
+            synchronized (home) {
+                Entry previous = home.entries.put(key, new Entry(results, weight, System.nanoTime() + ttl));
+                currentWeight.addAndGet(previous != null ? weight - previous.weight : weight);
+            }
+        }
+        if (nbEvictions > 0) {
+            spy.reportCacheEvictions(nbEvictions);
+        }
+    }
+
+    @Override
+    public boolean has(String graphURI, String query, Optional<String> next) {
+        QueryKey key = new QueryKey(graphURI, query, next);
+        Segment segment = segmentFor(hash(key));
+        synchronized (segment) {
+            Entry entry = segment.entries.get(key);
+            return entry != null && !hasExpired(entry);
+        }
+    }
+
+    @Override
+    public QueryResults get(String graphURI, String query, Optional<String> next) {
+        QueryKey key = new QueryKey(graphURI, query, next);
+        int hash = hash(key);
+        sketch.increment(hash);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            Entry entry = segment.entries.get(key);
+            if (entry == null) {
+                return null;
+            } else if (hasExpired(entry)) {
+                segment.entries.remove(key);
+                currentWeight.addAndGet(-entry.weight);
+                return null;
+            }
+            return entry.results;
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (admissionLock) {
+            for (Segment segment : segments) {
+                synchronized (segment) {
+                    for (Entry entry : segment.entries.values()) {
+                        currentWeight.addAndGet(-entry.weight);
+                    }
+                    segment.entries.clear();
+                }
+            }
+        }
+    }
+}
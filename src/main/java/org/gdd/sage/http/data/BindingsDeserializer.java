@@ -2,58 +2,56 @@ package org.gdd.sage.http.data;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import org.apache.jena.datatypes.RDFDatatype;
-import org.apache.jena.datatypes.TypeMapper;
-import org.apache.jena.graph.Node;
-import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.engine.binding.BindingHashMap;
 
 import java.io.IOException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 /**
  * Deserialize bindings from JSON to Jena format
  * @author Thomas Minier
  */
 public class BindingsDeserializer extends JsonDeserializer<QuerySolutions> {
-    private final static Pattern TYPE_PATTERN = Pattern.compile("\"(.*)\"(\\^\\^)(.+)");
-    private final static Pattern LANG_PATTERN = Pattern.compile("\"(.*)\"(@)(.+)");
+    private final static String GROUP_FIELD = "?__group_values";
 
     @Override
     public QuerySolutions deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
         QuerySolutions res = new QuerySolutions();
-        ArrayNode node = p.getCodec().readTree(p);
+        if (!p.isExpectedStartArrayToken()) {
+            return (QuerySolutions) ctxt.handleUnexpectedToken(QuerySolutions.class, p);
+        }
+        // SPARQL variables are shared by all solutions in the page, so we allocate them only once
+        Map<String, Var> variables = new HashMap<>();
         // for each set of bindings
-        node.forEach(jsonNode -> {
+        while (p.nextToken() == JsonToken.START_OBJECT) {
             BindingHashMap bindings = new BindingHashMap();
-            List<Binding> group = new LinkedList<>();
+            List<Binding> group = new ArrayList<>();
 
             // for each binding
-            jsonNode.fieldNames().forEachRemaining(s -> {
-                // if it is a group of bindings
-                if (s.equals("?__group_values")) {
-                    ArrayNode g = (ArrayNode) jsonNode.get(s);
-                    // for each element of the group
-                    g.forEach(jnode -> {
-                        BindingHashMap elt = new BindingHashMap();
-                        jnode.fields().forEachRemaining(entry -> {
-                            elt.add(Var.alloc(entry.getKey().substring(1)), parseNode(entry.getValue().asText()));
-                        });
-                        group.add(elt);
-                    });
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                JsonToken value = p.nextToken();
+                if (field.equals(GROUP_FIELD) && value == JsonToken.START_ARRAY) {
+                    // if it is a group of bindings, read each element of the group
+                    while (p.nextToken() == JsonToken.START_OBJECT) {
+                        group.add(readBindings(p, variables));
+                    }
+                } else if (value.isStructStart()) {
+                    // unexpected nested structure: ignore it
+                    p.skipChildren();
                 } else {
                     // otherwise it's a regular binding
-                    bindings.add(Var.alloc(s.substring(1)), parseNode(jsonNode.get(s).asText()));
+                    addBinding(bindings, field, p.getText(), variables);
                 }
-            });
+            }
             // no group found => all bindings found are solution bindings
             if (group.isEmpty()) {
                 res.addBindings(bindings);
@@ -68,54 +66,39 @@ public class BindingsDeserializer extends JsonDeserializer<QuerySolutions> {
                 });
                 res.addSolutionGroup(solutionGroup);
             }
-        });
+        }
         return res;
     }
 
     /**
-     * Parse a RDF node from String format to a Jena compatible format
-     * @param node RDF node in string format
-     * @return RDF node in a Jena compatible format
+     * Read a JSON object of flat bindings, i.e., the parser must be positioned on the START_OBJECT token
+     * @param p - JSON parser
+     * @param variables - Cache of SPARQL variables allocated so far
+     * @return The set of bindings read
+     * @throws IOException
      */
-    private static Node parseNode(String node) {
-        Node value = null;
-        try {
-            String literal;
-            try {
-                // Literal case
-                if (node.startsWith("\""))  {
-                    literal = node.trim();
-                    Matcher langMatcher = LANG_PATTERN.matcher(literal);
-                    Matcher typeMatcher = TYPE_PATTERN.matcher(literal);
-                    langMatcher.matches();
-                    typeMatcher.matches();
-                    if (typeMatcher.matches()) {
-                        if (typeMatcher.group(3).startsWith("<")) {
-                            String type = typeMatcher.group(3);
-                            RDFDatatype datatype = TypeMapper.getInstance().getTypeByName(type.substring(1, type.length() - 1));
-                            value = NodeFactory.createLiteral(typeMatcher.group(1), datatype);
-                        } else {
-                            RDFDatatype datatype = TypeMapper.getInstance().getTypeByName(typeMatcher.group(3));
-                            value = NodeFactory.createLiteral(typeMatcher.group(1), datatype);
-                        }
-                    } else if (langMatcher.matches()) {
-                        value = NodeFactory.createLiteral(langMatcher.group(1), langMatcher.group(3));
-                    } else if (literal.startsWith("\"") && literal.endsWith("\"")){
-                        value = NodeFactory.createLiteral(literal.substring(1, literal.length() - 1));
-                    } else {
-                        value = NodeFactory.createLiteral(literal);
-                    }
-                } else {
-                    value = NodeFactory.createURI(node);
-                }
-            } catch(Exception e) {
-                e.printStackTrace();
-                throw e;
+    private static Binding readBindings(JsonParser p, Map<String, Var> variables) throws IOException {
+        BindingHashMap bindings = new BindingHashMap();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String field = p.getCurrentName();
+            if (p.nextToken().isStructStart()) {
+                p.skipChildren();
+            } else {
+                addBinding(bindings, field, p.getText(), variables);
             }
-        } catch(Exception e) {
-            // TODO: for now we skip parsing errors, maybe need to do something cleaner
-            System.err.println(node);
         }
-        return value;
+        return bindings;
+    }
+
+    /**
+     * Add a binding (?variable, RDF node) to a set of bindings
+     * @param bindings - Set of bindings
+     * @param field - Name of the JSON field, i.e., the SPARQL variable prefixed by "?"
+     * @param value - RDF node in string format
+     * @param variables - Cache of SPARQL variables allocated so far
+     */
+    private static void addBinding(BindingHashMap bindings, String field, String value, Map<String, Var> variables) {
+        Var variable = variables.computeIfAbsent(field, name -> Var.alloc(name.substring(1)));
+        bindings.add(variable, RDFTermParser.parse(value));
     }
 }
@@ -2,6 +2,7 @@ package org.gdd.sage.http.data;
 
 import org.apache.jena.sparql.engine.binding.Binding;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -10,7 +11,7 @@ public class QuerySolutions {
     private List<SolutionGroup> groups;
 
     public QuerySolutions() {
-        bindings = new LinkedList<>();
+        bindings = new ArrayList<>();
         groups = new LinkedList<>();
     }
 
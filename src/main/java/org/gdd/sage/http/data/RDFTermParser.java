@@ -0,0 +1,98 @@
+package org.gdd.sage.http.data;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+
+/**
+ * Parse RDF terms, as serialized by a SaGe server, into Jena nodes.
+ * URIs and datatypes are interned in bounded caches shared by all pages of results,
+ * as the same predicates, classes and datatypes appear again and again in query results.
+ * @author Thomas Minier
+ */
+public class RDFTermParser {
+    // Maximum number of URIs interned
+    private static final int MAX_INTERNED_URIS = 50000;
+    // Maximum number of datatypes interned
+    private static final int MAX_INTERNED_DATATYPES = 1000;
+    private static final Cache<String, Node> URIS = CacheBuilder.newBuilder()
+            .maximumSize(MAX_INTERNED_URIS)
+            .build();
+    private static final Cache<String, RDFDatatype> DATATYPES = CacheBuilder.newBuilder()
+            .maximumSize(MAX_INTERNED_DATATYPES)
+            .build();
+
+    private RDFTermParser() {}
+
+    /**
+     * Parse a RDF node from String format to a Jena compatible format
+     * @param term - RDF node in string format, e.g., an URI, a simple literal, a typed literal or a literal with a language tag
+     * @return RDF node in a Jena compatible format
+     */
+    public static Node parse(String term) {
+        if (term.startsWith("\"")) {
+            return parseLiteral(term.trim());
+        }
+        return parseURI(term);
+    }
+
+    /**
+     * Parse an URI, using the shared cache of URIs
+     * @param uri - URI to parse
+     * @return RDF node in a Jena compatible format
+     */
+    private static Node parseURI(String uri) {
+        Node node = URIS.getIfPresent(uri);
+        if (node == null) {
+            node = NodeFactory.createURI(uri);
+            URIS.put(uri, node);
+        }
+        return node;
+    }
+
+    /**
+     * Parse a datatype, using the shared cache of datatypes
+     * @param datatype - Datatype URI, which may be surrounded by angle brackets
+     * @return The datatype in a Jena compatible format
+     */
+    private static RDFDatatype parseDatatype(String datatype) {
+        RDFDatatype type = DATATYPES.getIfPresent(datatype);
+        if (type == null) {
+            String uri = datatype;
+            if (uri.startsWith("<") && uri.endsWith(">")) {
+                uri = uri.substring(1, uri.length() - 1);
+            }
+            type = TypeMapper.getInstance().getSafeTypeByName(uri);
+            DATATYPES.put(datatype, type);
+        }
+        return type;
+    }
+
+    /**
+     * Parse a RDF literal, with an optional datatype or language tag
+     * @param literal - RDF literal to parse, which starts with a double quote
+     * @return RDF node in a Jena compatible format
+     */
+    private static Node parseLiteral(String literal) {
+        int length = literal.length();
+        // the lexical form ends at the last double quote, as datatypes and language tags cannot contain quotes
+        int end = literal.lastIndexOf('"');
+        if (end > 0) {
+            if (end == length - 1) {
+                // simple literal, e.g., "foo"
+                return NodeFactory.createLiteral(literal.substring(1, end));
+            } else if (literal.charAt(end + 1) == '@' && end + 2 < length) {
+                // literal with a language tag, e.g., "foo"@en
+                return NodeFactory.createLiteral(literal.substring(1, end), literal.substring(end + 2));
+            } else if (literal.startsWith("^^", end + 1) && end + 3 < length) {
+                // typed literal, e.g., "5"^^<http://www.w3.org/2001/XMLSchema#integer>
+                return NodeFactory.createLiteral(literal.substring(1, end), parseDatatype(literal.substring(end + 3)));
+            }
+        }
+        // malformed literal: use it as it is
+        return NodeFactory.createLiteral(literal);
+    }
+}
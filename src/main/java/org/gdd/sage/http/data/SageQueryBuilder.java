@@ -1,21 +1,37 @@
 package org.gdd.sage.http.data;
 
+import org.apache.jena.atlas.io.IndentedLineBuffer;
+import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.shared.PrefixMapping;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.algebra.OpAsQuery;
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.algebra.TableFactory;
 import org.apache.jena.sparql.algebra.op.*;
 import org.apache.jena.sparql.core.BasicPattern;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.binding.Binding;
 import org.apache.jena.sparql.expr.Expr;
 import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.ExprFunctionOp;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.sparql.util.ExprUtils;
+import org.apache.jena.sparql.util.FmtUtils;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
- * Builder used to create SPARQL queries that can be send to a SaGe server
+ * Builder used to create SPARQL queries that can be send to a SaGe server.
+ * Queries are serialized directly from their patterns, which is much cheaper than building a Jena query first.
+ * Patterns that cannot be serialized directly, e.g., those with blank node variables, fall back to Jena's serializer.
  * @author Thomas Minier
  */
 public class SageQueryBuilder {
@@ -26,6 +42,96 @@ public class SageQueryBuilder {
         return OpAsQuery.asQuery(root).serialize();
     }
 
+    /**
+     * Test if a RDF term can be serialized directly
+     * @param node - RDF term
+     * @return True if the RDF term can be serialized directly, False otherwise
+     */
+    private static boolean isSerializable(Node node) {
+        if (node.isVariable()) {
+            // Jena uses non-distinguished variables for blank nodes in queries, which must be renamed
+            return Var.isNamedVar(node);
+        }
+        return node.isURI() || node.isLiteral();
+    }
+
+    /**
+     * Test if all RDF terms of a Basic Graph Pattern can be serialized directly
+     * @param bgp - Basic Graph pattern
+     * @return True if the Basic Graph Pattern can be serialized directly, False otherwise
+     */
+    private static boolean isSerializable(BasicPattern bgp) {
+        for (Triple triple : bgp) {
+            if (!isSerializable(triple.getSubject()) || !isSerializable(triple.getPredicate()) || !isSerializable(triple.getObject())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test if a list of SPARQL filters can be serialized directly, i.e., if they contain no EXISTS/NOT EXISTS clauses
+     * @param filters - List of SPARQL filters
+     * @return True if the filters can be serialized directly, False otherwise
+     */
+    private static boolean isSerializable(List<Expr> filters) {
+        return filters.stream().noneMatch(filter -> filter instanceof ExprFunctionOp);
+    }
+
+    /**
+     * Serialize the triple patterns of a Basic Graph Pattern
+     * @param bgp - Basic Graph pattern
+     * @param query - Buffer where the query is written
+     * @param context - Serialization context
+     */
+    private static void appendBGP(BasicPattern bgp, StringBuilder query, SerializationContext context) {
+        for (Triple triple : bgp) {
+            FmtUtils.stringForNode(query, triple.getSubject(), context);
+            query.append(' ');
+            FmtUtils.stringForNode(query, triple.getPredicate(), context);
+            query.append(' ');
+            FmtUtils.stringForNode(query, triple.getObject(), context);
+            query.append(" . ");
+        }
+    }
+
+    /**
+     * Serialize a list of SPARQL filters
+     * @param filters - List of SPARQL filters
+     * @param query - Buffer where the query is written
+     * @param context - Serialization context
+     */
+    private static void appendFilters(List<Expr> filters, StringBuilder query, SerializationContext context) {
+        for (Expr filter : filters) {
+            IndentedLineBuffer buffer = new IndentedLineBuffer();
+            ExprUtils.fmtSPARQL(buffer, filter, context);
+            query.append("FILTER ( ").append(buffer.asString()).append(" ) ");
+        }
+    }
+
+    /**
+     * Build the logical plan of a Basic Graph Pattern with SPARQL filters
+     * @param bgp - Basic Graph pattern
+     * @param filters - List of SPARQL filters
+     * @return The logical plan
+     */
+    private static Op filterBGP(BasicPattern bgp, List<Expr> filters) {
+        Op op = new OpBGP(bgp);
+        for (Expr filter : filters) {
+            op = OpFilter.filter(filter, op);
+        }
+        return op;
+    }
+
+    /**
+     * Create a context used to serialize RDF terms and expressions, without any prefixes,
+     * as the server does not know the prefixes of the client.
+     * @return A new serialization context
+     */
+    private static SerializationContext newContext() {
+        return new SerializationContext(PrefixMapping.Factory.create());
+    }
+
     /**
      * Build a SPARQL query from a Basic graph pattern
      * @param bgp - Basic Graph pattern
@@ -42,6 +148,13 @@ public class SageQueryBuilder {
      * @return Generated SPARQL query
      */
     public static String buildBGPQuery(BasicPattern bgp, List<Expr> filters) {
+        if (isSerializable(bgp) && isSerializable(filters)) {
+            SerializationContext context = newContext();
+            StringBuilder query = new StringBuilder("SELECT * WHERE { ");
+            appendBGP(bgp, query, context);
+            appendFilters(filters, query, context);
+            return query.append('}').toString();
+        }
         // extract SPARQL variables from the BGP
         //Set<Var> variables = SageQueryBuilder.getVariables(bgp);
         // query root: the basic graph pattern itself
@@ -62,8 +175,37 @@ public class SageQueryBuilder {
      * @return Generated SPARQL query
      */
     public static String buildBGPGroupByQuery(BasicPattern bgp, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions) {
-        // query root: the basic graph pattern itself
-        Op op = new OpBGP(bgp);
+        return buildBGPGroupByQuery(bgp, Collections.emptyList(), variables, aggregations, extensions);
+    }
+
+    /**
+     * Build a GROUP BY SPARQL query from a Basic graph pattern and a list of SPARQL filters
+     * @param bgp - Basic Graph pattern
+     * @param filters - List of SPARQL filters
+     * @param variables - GROUP BY variables
+     * @param aggregations - Aggregations computed for each group
+     * @param extensions - Projected variables, i.e., GROUP BY variables and renamings of the aggregations variables
+     * @return Generated SPARQL query
+     */
+    public static String buildBGPGroupByQuery(BasicPattern bgp, List<Expr> filters, List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions) {
+        SerializationContext context = newContext();
+        String projection = buildGroupByProjection(variables, aggregations, extensions, context);
+        if (projection != null && isSerializable(bgp) && isSerializable(filters)) {
+            StringBuilder query = new StringBuilder("SELECT ").append(projection).append(" WHERE { ");
+            appendBGP(bgp, query, context);
+            appendFilters(filters, query, context);
+            query.append('}');
+            if (!variables.isEmpty()) {
+                query.append(" GROUP BY");
+                for (Var variable : variables) {
+                    query.append(' ');
+                    FmtUtils.stringForNode(query, variable, context);
+                }
+            }
+            return query.toString();
+        }
+        // query root: the basic graph pattern itself, with its filters
+        Op op = filterBGP(bgp, filters);
         // add group by
         VarExprList list = new VarExprList();
         for(Var v: variables) {
@@ -84,27 +226,119 @@ public class SageQueryBuilder {
      * @return Generated SPARQL query
      */
     public static String buildUnionQuery(List<BasicPattern> union) {
+        return buildUnionQuery(union, Collections.nCopies(union.size(), Collections.emptyList()));
+    }
+
+    /**
+     * Build a SPARQL query from a set of Basic graph patterns, each one with its own SPARQL filters
+     * @param union - set of Basic Graph patterns
+     * @param filters - SPARQL filters of each Basic Graph pattern
+     * @return Generated SPARQL query
+     */
+    public static String buildUnionQuery(List<BasicPattern> union, List<List<Expr>> filters) {
+        if (union.stream().allMatch(SageQueryBuilder::isSerializable) && filters.stream().allMatch(SageQueryBuilder::isSerializable)) {
+            SerializationContext context = newContext();
+            StringBuilder query = new StringBuilder("SELECT * WHERE { ");
+            for (int index = 0; index < union.size(); index++) {
+                if (index > 0) {
+                    query.append("UNION ");
+                }
+                query.append("{ ");
+                appendBGP(union.get(index), query, context);
+                appendFilters(filters.get(index), query, context);
+                query.append("} ");
+            }
+            return query.append('}').toString();
+        }
         // extract SPARQL variables from all BGPs
         /*Set<Var> variables = new LinkedHashSet<>();
         for(BasicPattern bgp: union) {
             variables.addAll(SageQueryBuilder.getVariables(bgp));
         }*/
         // build the union of basic graph patterns
-        Op op = new OpBGP(union.get(0));
+        Op op = filterBGP(union.get(0), filters.get(0));
         for (int index = 1; index < union.size(); index++) {
-            op = new OpUnion(op, new OpBGP(union.get(index)));
+            op = new OpUnion(op, filterBGP(union.get(index), filters.get(index)));
         }
         // apply projection
         //op = new OpProject(op, Lists.newLinkedList(variables));
         return SageQueryBuilder.serializeQuery(op);
     }
 
+    /**
+     * Build a SPARQL query that evaluates a Basic graph pattern for several bindings at once, using a VALUES clause
+     * @param bgp - Basic Graph pattern
+     * @param variables - Variables of the VALUES clause
+     * @param rows - Rows of the VALUES clause, where variables without values are UNDEF
+     * @return Generated SPARQL query
+     */
+    public static String buildValuesQuery(BasicPattern bgp, List<Var> variables, List<Binding> rows) {
+        return buildValuesQuery(bgp, variables, rows, Collections.emptyList());
+    }
+
+    /**
+     * Build a SPARQL query that evaluates a Basic graph pattern with SPARQL filters for several bindings at once, using a VALUES clause
+     * @param bgp - Basic Graph pattern
+     * @param variables - Variables of the VALUES clause
+     * @param rows - Rows of the VALUES clause, where variables without values are UNDEF
+     * @param filters - List of SPARQL filters
+     * @return Generated SPARQL query
+     */
+    public static String buildValuesQuery(BasicPattern bgp, List<Var> variables, List<Binding> rows, List<Expr> filters) {
+        boolean rowsSerializable = rows.stream().allMatch(row -> variables.stream().allMatch(variable -> !row.contains(variable) || isSerializable(row.get(variable))));
+        if (isSerializable(bgp) && rowsSerializable && isSerializable(filters)) {
+            SerializationContext context = newContext();
+            StringBuilder query = new StringBuilder("SELECT * WHERE { ");
+            if (!variables.isEmpty()) {
+                query.append("VALUES (");
+                for (Var variable : variables) {
+                    query.append(' ');
+                    FmtUtils.stringForNode(query, variable, context);
+                }
+                query.append(" ) { ");
+                for (Binding row : rows) {
+                    query.append('(');
+                    for (Var variable : variables) {
+                        query.append(' ');
+                        if (row.contains(variable)) {
+                            FmtUtils.stringForNode(query, row.get(variable), context);
+                        } else {
+                            query.append("UNDEF");
+                        }
+                    }
+                    query.append(" ) ");
+                }
+                query.append("} ");
+            }
+            appendBGP(bgp, query, context);
+            appendFilters(filters, query, context);
+            return query.append('}').toString();
+        }
+        Table table = TableFactory.create(variables);
+        rows.forEach(table::addBinding);
+        Op op = OpJoin.create(OpTable.create(table), new OpBGP(bgp));
+        for (Expr filter : filters) {
+            op = OpFilter.filter(filter, op);
+        }
+        return SageQueryBuilder.serializeQuery(op);
+    }
+
     /**
      * Build a SPARQL query from a set of Graph clauses
      * @param graphs - Set of GRAPH clauses, i.e., tuples of (graph uri, basic graph pattern)
      * @return Generated SPARQL query
      */
     public static String buildGraphQuery(Map<String, BasicPattern> graphs) {
+        if (graphs.values().stream().allMatch(SageQueryBuilder::isSerializable)) {
+            SerializationContext context = newContext();
+            StringBuilder query = new StringBuilder("SELECT * WHERE { ");
+            for (Map.Entry<String, BasicPattern> entry : graphs.entrySet()) {
+                query.append("GRAPH ").append(FmtUtils.stringForURI(entry.getKey(), context)).append(" { ");
+                appendBGP(entry.getValue(), query, context);
+                query.append("} ");
+            }
+            return query.append('}').toString();
+        }
         Op op = null;
         for(Map.Entry<String, BasicPattern> entry: graphs.entrySet()) {
             Op opBGP = new OpBGP(entry.getValue());
@@ -117,4 +351,43 @@ public class SageQueryBuilder {
         }
         return SageQueryBuilder.serializeQuery(op);
     }
+
+    /**
+     * Serialize the projection of a GROUP BY query, i.e., the group keys and the aggregations
+     * @param variables - GROUP BY variables
+     * @param aggregations - SPARQL aggregations
+     * @param extensions - Projected expressions, which refer to group keys or to aggregations
+     * @param context - Serialization context
+     * @return The serialized projection, or null if it cannot be serialized directly
+     */
+    private static String buildGroupByProjection(List<Var> variables, List<ExprAggregator> aggregations, VarExprList extensions, SerializationContext context) {
+        if (extensions.isEmpty()) {
+            return null;
+        }
+        StringBuilder projection = new StringBuilder();
+        for (Var variable : extensions.getVars()) {
+            Expr expr = extensions.getExpr(variable);
+            if (projection.length() > 0) {
+                projection.append(' ');
+            }
+            if (expr == null && variables.contains(variable)) {
+                projection.append(FmtUtils.stringForNode(variable, context));
+            } else if (expr instanceof ExprVar) {
+                Var source = ((ExprVar) expr).asVar();
+                Optional<ExprAggregator> aggregation = aggregations.stream().filter(agg -> agg.getVar().equals(source)).findFirst();
+                if (aggregation.isPresent()) {
+                    projection.append('(').append(aggregation.get().getAggregator().asSparqlExpr(context));
+                } else if (variables.contains(source)) {
+                    projection.append('(').append(FmtUtils.stringForNode(source, context));
+                } else {
+                    return null;
+                }
+                projection.append(" AS ").append(FmtUtils.stringForNode(variable, context)).append(')');
+            } else {
+                // complex expressions over aggregations are left to Jena
+                return null;
+            }
+        }
+        return projection.toString();
+    }
 }
@@ -40,6 +40,10 @@ public class SageStatistics {
         return cardinalities.containsKey(key);
     }
 
+    public boolean hasTripleCardinality(Triple triple) {
+        return hasTripleCardinality(triple.getSubject().toString(), triple.getPredicate().toString(), triple.getObject().toString());
+    }
+
     public int getCardinality(Triple triple) {
         return getCardinality(triple.getSubject().toString(), triple.getPredicate().toString(), triple.getObject().toString());
     }
@@ -0,0 +1,221 @@
+package org.gdd.sage.http.hedging;
+
+import org.gdd.sage.http.results.QueryResults;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Sends hedged requests, to cut the tail latency of read queries.
+ * If a request has not been answered after a delay, set to a percentile of the latencies observed so far
+ * (the 95th by default), a duplicate request is sent, and the first answer received is used.
+ *
+ * Latencies are measured from the start of the first attempt, so a request answered by a duplicate still records
+ * the latency of its first attempt, at least, and hedging cannot lower the percentile on its own.
+ *
+ * Hedged requests are limited by a budget: each request earns a fraction of a token (5% by default),
+ * and sending a duplicate costs a whole token. So hedging adds at most this fraction of requests to the server load,
+ * even when the server is slow as a whole.
+ * @author Thomas Minier
+ */
+public class HedgingPolicy {
+    public static final double DEFAULT_PERCENTILE = 0.95;
+    public static final double DEFAULT_BUDGET_RATIO = 0.05;
+    // Number of latencies kept to compute the percentile
+    private static final int SAMPLE_SIZE = 1000;
+    // No request is hedged before this number of latencies has been observed
+    private static final int MIN_SAMPLES = 20;
+    // The percentile is computed again after this number of new latencies
+    private static final int REFRESH_INTERVAL = 50;
+    // Maximum number of tokens saved, so a burst of duplicates cannot follow a long quiet period
+    private static final double MAX_TOKENS = 10;
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sage-hedging");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final double percentile;
+    private final double budgetRatio;
+    private final long minDelay;
+    private final long[] samples;
+    private int nbSamples;
+    private int position;
+    private int nbNewSamples;
+    private long delay;
+    private double tokens;
+    private final AtomicLong nbHedgedRequests;
+    private final AtomicLong nbHedgeWins;
+
+    /**
+     * Constructor
+     * @param percentile - Percentile of the observed latencies after which a request is hedged, between 0 and 1
+     * @param budgetRatio - Maximum ratio of hedged requests, between 0 and 1
+     * @param minDelay - Minimum delay before a request is hedged
+     * @param unit - Unit of the minimum delay
+     */
+    public HedgingPolicy(double percentile, double budgetRatio, long minDelay, TimeUnit unit) {
+        this.percentile = Math.min(Math.max(percentile, 0), 1);
+        this.budgetRatio = Math.min(Math.max(budgetRatio, 0), 1);
+        this.minDelay = unit.toNanos(minDelay);
+        samples = new long[SAMPLE_SIZE];
+        nbSamples = 0;
+        position = 0;
+        nbNewSamples = 0;
+        delay = -1;
+        tokens = 0;
+        nbHedgedRequests = new AtomicLong();
+        nbHedgeWins = new AtomicLong();
+    }
+
+    /**
+     * Constructor, using default settings
+     */
+    public HedgingPolicy() {
+        this(DEFAULT_PERCENTILE, DEFAULT_BUDGET_RATIO, 1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the number of duplicate requests sent
+     * @return The number of duplicate requests sent
+     */
+    public long getNbHedgedRequests() {
+        return nbHedgedRequests.get();
+    }
+
+    /**
+     * Get the number of duplicate requests answered before the request they duplicate
+     * @return The number of duplicate requests answered first
+     */
+    public long getNbHedgeWins() {
+        return nbHedgeWins.get();
+    }
+
+    /**
+     * Get the delay after which a request is hedged
+     * @return The delay after which a request is hedged, in nanoseconds, or -1 if not enough latencies have been observed yet
+     */
+    public synchronized long getDelay() {
+        return delay;
+    }
+
+    /**
+     * Record the latency of a successful request, measured from the start of its first attempt
+     * @param latency - Latency of the request, in nanoseconds
+     */
+    synchronized void recordLatency(long latency) {
+        samples[position] = latency;
+        position = (position + 1) % SAMPLE_SIZE;
+        nbSamples = Math.min(nbSamples + 1, SAMPLE_SIZE);
+        nbNewSamples++;
+        if (nbSamples >= MIN_SAMPLES && (delay < 0 || nbNewSamples >= REFRESH_INTERVAL)) {
+            long[] sorted = Arrays.copyOf(samples, nbSamples);
+            Arrays.sort(sorted);
+            int index = Math.max(0, (int) Math.ceil(percentile * nbSamples) - 1);
+            delay = Math.max(minDelay, sorted[index]);
+            nbNewSamples = 0;
+        }
+    }
+
+    /**
+     * Earn the budget of a request
+     */
+    private synchronized void deposit() {
+        tokens = Math.min(MAX_TOKENS, tokens + budgetRatio);
+    }
+
+    /**
+     * Try to spend the budget of a duplicate request
+     * @return True if a duplicate request can be sent, False otherwise
+     */
+    private synchronized boolean withdraw() {
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Give back the budget of a duplicate request that has not been sent
+     */
+    private synchronized void refund() {
+        tokens = Math.min(MAX_TOKENS, tokens + 1);
+    }
+
+    /**
+     * Send a request, and a duplicate of it if it is not answered quickly enough and the budget allows it.
+     * The first successful answer is used. The request fails only if all attempts have failed.
+     * @param request - Function that sends the request
+     * @param duplicate - Function that sends a duplicate of the request, e.g., to a replica
+     * @return A future completed with the first successful answer
+     */
+    public CompletableFuture<QueryResults> execute(Supplier<CompletableFuture<QueryResults>> request, Supplier<CompletableFuture<QueryResults>> duplicate) {
+        deposit();
+        CompletableFuture<QueryResults> results = new CompletableFuture<>();
+        // number of attempts not completed yet
+        AtomicInteger running = new AtomicInteger(1);
+        long startTime = System.nanoTime();
+        send(request, results, running, startTime, false);
+        long hedgingDelay = getDelay();
+        if (hedgingDelay >= 0 && !results.isDone()) {
+            ScheduledFuture<?> timer = SCHEDULER.schedule(() -> {
+                if (results.isDone() || !withdraw()) {
+                    return;
+                }
+                if (running.getAndIncrement() == 0) {
+                    // the request has failed in the meantime
+                    refund();
+                    return;
+                }
+                nbHedgedRequests.incrementAndGet();
+                send(duplicate, results, running, startTime, true);
+            }, hedgingDelay, TimeUnit.NANOSECONDS);
+            results.whenComplete((page, error) -> timer.cancel(false));
+        }
+        return results;
+    }
+
+    /**
+     * Send an attempt of a request
+     * @param request - Function that sends the request
+     * @param results - Future completed with the first successful answer
+     * @param running - Number of attempts not completed yet
+     * @param startTime - Time at which the first attempt of the request has been sent
+     * @param isDuplicate - True if the attempt is a duplicate request, False otherwise
+     */
+    private void send(Supplier<CompletableFuture<QueryResults>> request, CompletableFuture<QueryResults> results, AtomicInteger running, long startTime, boolean isDuplicate) {
+        BiConsumer<QueryResults, Throwable> onAnswer = (page, error) -> {
+            if (error == null && !page.hasError()) {
+                // only the first answer is recorded: when a duplicate wins, the elapsed time is a lower bound of the latency of the first attempt
+                long latency = System.nanoTime() - startTime;
+                if (results.complete(page)) {
+                    recordLatency(latency);
+                    if (isDuplicate) {
+                        nbHedgeWins.incrementAndGet();
+                    }
+                }
+            } else if (running.decrementAndGet() == 0) {
+                // all attempts have failed
+                if (error != null) {
+                    results.completeExceptionally(error);
+                } else {
+                    results.complete(page);
+                }
+            }
+        };
+        try {
+            request.get().whenComplete(onAnswer);
+        } catch (RuntimeException e) {
+            onAnswer.accept(null, e);
+        }
+    }
+}
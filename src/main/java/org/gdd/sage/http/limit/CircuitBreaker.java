@@ -0,0 +1,154 @@
+package org.gdd.sage.http.limit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails requests fast when a SaGe server is unhealthy, instead of sending them to a server that cannot answer.
+ * The circuit opens after a number of consecutive failures. While it is open, all requests are rejected.
+ * After a cool-down delay, a single trial request is allowed (half-open circuit): the circuit closes if it succeeds,
+ * otherwise it opens again, for twice as long.
+ *
+ * All clients that target the same server share the same circuit breaker, see {@link #forServer(String)}.
+ * @author Thomas Minier
+ */
+public class CircuitBreaker {
+    private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<>();
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_DELAY = 1000;
+    public static final long DEFAULT_MAX_OPEN_DELAY = 60000;
+
+    /**
+     * State of a circuit breaker
+     */
+    public enum State {
+        /**
+         * Requests are sent to the server
+         */
+        CLOSED,
+        /**
+         * Requests are rejected
+         */
+        OPEN,
+        /**
+         * A trial request has been sent, to check if the server has recovered
+         */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long minOpenDelay;
+    private final long maxOpenDelay;
+    private State state;
+    private int nbFailures;
+    private long openDelay;
+    private long openedAt;
+
+    /**
+     * Constructor
+     * @param failureThreshold - Number of consecutive failures that opens the circuit
+     * @param openDelay - Minimum time during which the circuit stays open
+     * @param maxOpenDelay - Maximum time during which the circuit stays open
+     * @param unit - Unit of the delays
+     */
+    public CircuitBreaker(int failureThreshold, long openDelay, long maxOpenDelay, TimeUnit unit) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        minOpenDelay = unit.toNanos(openDelay);
+        this.maxOpenDelay = Math.max(minOpenDelay, unit.toNanos(maxOpenDelay));
+        state = State.CLOSED;
+        nbFailures = 0;
+        this.openDelay = minOpenDelay;
+        openedAt = 0;
+    }
+
+    /**
+     * Constructor, using default settings
+     */
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DELAY, DEFAULT_MAX_OPEN_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the circuit breaker shared by all clients of a SaGe server
+     * @param serverURL - URL of the SaGe server
+     * @return The circuit breaker shared by all clients of the SaGe server
+     */
+    public static CircuitBreaker forServer(String serverURL) {
+        return BREAKERS.computeIfAbsent(serverURL, url -> new CircuitBreaker());
+    }
+
+    /**
+     * Get the state of the circuit
+     * @return The state of the circuit
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the time to wait before a request can be sent to the server again, i.e., before the trial request of an open circuit.
+     * While a trial request is pending, its outcome is expected within the minimum open delay.
+     * @param unit - Unit of the delay
+     * @return The time to wait, or 0 if requests can be sent now
+     */
+    public synchronized long getRemainingDelay(TimeUnit unit) {
+        long now = System.nanoTime();
+        long remaining = 0;
+        if (state == State.OPEN) {
+            remaining = openedAt + openDelay - now;
+        } else if (state == State.HALF_OPEN) {
+            remaining = Math.min(minOpenDelay, openedAt + maxOpenDelay - now);
+        }
+        // rounded up, so waiting for the delay is always enough
+        long unitInNanos = unit.toNanos(1);
+        return (Math.max(0, remaining) + unitInNanos - 1) / unitInNanos;
+    }
+
+    /**
+     * Test if a request can be sent to the server. If the request is the trial request of a half-open circuit,
+     * its outcome must be reported using {@link #onSuccess()} or {@link #onFailure()}.
+     * @return True if the request can be sent, False if it must fail fast
+     */
+    public synchronized boolean allowRequest() {
+        long now = System.nanoTime();
+        if (state == State.CLOSED) {
+            return true;
+        } else if ((state == State.OPEN && now - openedAt >= openDelay) || (state == State.HALF_OPEN && now - openedAt >= maxOpenDelay)) {
+            // a new trial is also allowed if the outcome of the previous one has never been reported
+            state = State.HALF_OPEN;
+            openedAt = now;
+            return true;
+        }
+        // only one trial request is sent at a time
+        return false;
+    }
+
+    /**
+     * Report that a request has succeeded
+     */
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        nbFailures = 0;
+        openDelay = minOpenDelay;
+    }
+
+    /**
+     * Report that a request has failed because of the server, e.g., with a connection error or an HTTP 5xx status
+     */
+    public synchronized void onFailure() {
+        nbFailures++;
+        if (state == State.HALF_OPEN) {
+            // the server has not recovered yet, so we wait longer before trying again
+            openDelay = Math.min(maxOpenDelay, openDelay * 2);
+            open();
+        } else if (state == State.CLOSED && nbFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+}
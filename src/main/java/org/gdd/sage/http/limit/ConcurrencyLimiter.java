@@ -0,0 +1,190 @@
+package org.gdd.sage.http.limit;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Limits the number of HTTP requests sent concurrently to a SaGe server.
+ * The limit is adjusted at runtime using AIMD (Additive Increase, Multiplicative Decrease):
+ * it grows slowly while requests succeed with stable latency, and is cut down as soon as requests fail
+ * or their latency rises, which indicates that the server is overloaded.
+ * Requests that exceed the limit wait in a FIFO queue.
+ *
+ * All clients that target the same server share the same limiter, see {@link #forServer(String)}.
+ * @author Thomas Minier
+ */
+public class ConcurrencyLimiter {
+    private static final ConcurrentMap<String, ConcurrencyLimiter> LIMITERS = new ConcurrentHashMap<>();
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 200;
+    // Ratio applied to the limit when the server is overloaded
+    private static final double BACKOFF_RATIO = 0.9;
+    // A request slower than the average latency times this factor indicates that the server is overloaded
+    private static final double LATENCY_TOLERANCE = 2.0;
+    // Weight of the last request in the average latency
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Queue<Runnable> waiters;
+    private double limit;
+    private int inFlight;
+    private double averageLatency;
+    private long lastDecreaseTime;
+
+    /**
+     * Constructor
+     * @param initialLimit - Initial number of concurrent requests allowed
+     * @param minLimit - Minimum number of concurrent requests allowed
+     * @param maxLimit - Maximum number of concurrent requests allowed
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        waiters = new ArrayDeque<>();
+        inFlight = 0;
+        averageLatency = -1;
+        lastDecreaseTime = System.nanoTime();
+    }
+
+    /**
+     * Constructor, using default limits
+     */
+    public ConcurrencyLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Get the limiter shared by all clients of a SaGe server
+     * @param serverURL - URL of the SaGe server
+     * @return The limiter shared by all clients of the SaGe server
+     */
+    public static ConcurrencyLimiter forServer(String serverURL) {
+        return LIMITERS.computeIfAbsent(serverURL, url -> new ConcurrencyLimiter());
+    }
+
+    /**
+     * Get the current number of concurrent requests allowed
+     * @return The current number of concurrent requests allowed
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the number of requests currently executed
+     * @return The number of requests currently executed
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Get the number of requests waiting to be executed
+     * @return The number of requests waiting to be executed
+     */
+    public synchronized int getQueueDepth() {
+        return waiters.size();
+    }
+
+    /**
+     * Wait until a request can be executed, then reserve a permit for it.
+     * The permit must be given back using {@link #release(long, boolean)} once the request has completed.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        CountDownLatch granted = new CountDownLatch(1);
+        Runnable waiter = granted::countDown;
+        whenAvailable(waiter);
+        try {
+            granted.await();
+        } catch (InterruptedException e) {
+            boolean wasGranted;
+            synchronized (this) {
+                wasGranted = !waiters.remove(waiter);
+            }
+            // give back the permit if it has been granted in the meantime
+            if (wasGranted) {
+                releaseUnused();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Call a function, without blocking, as soon as a request can be executed.
+     * The function is called with a permit reserved, which must be given back using {@link #release(long, boolean)}
+     * once the request has completed. It may be called by the current thread or by a thread that releases a permit,
+     * so it should only dispatch the request, e.g., to a thread pool.
+     * @param onPermit - Function called once a permit has been reserved
+     */
+    public void whenAvailable(Runnable onPermit) {
+        synchronized (this) {
+            if (!waiters.isEmpty() || inFlight >= (int) limit) {
+                waiters.add(onPermit);
+                return;
+            }
+            inFlight++;
+        }
+        onPermit.run();
+    }
+
+    /**
+     * Give back a permit, when a request has completed, and adjust the limit using its outcome
+     * @param latency - Latency of the request, in nanoseconds
+     * @param success - True if the request has succeeded, False otherwise
+     */
+    public void release(long latency, boolean success) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            boolean overloaded = !success || (averageLatency > 0 && latency > averageLatency * LATENCY_TOLERANCE);
+            if (success) {
+                averageLatency = averageLatency < 0 ? latency : (1 - LATENCY_SMOOTHING) * averageLatency + LATENCY_SMOOTHING * latency;
+            }
+            if (overloaded) {
+                // decrease at most once per round trip, as concurrent requests suffer from the same overload
+                if (now - lastDecreaseTime > averageLatency) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    lastDecreaseTime = now;
+                }
+            } else if (inFlight >= limit / 2) {
+                // only increase the limit when it is actually used, i.e., about +1 for each round trip at full load
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+        }
+        grantPermits();
+    }
+
+    /**
+     * Give back a permit that has not been used to execute a request, without adjusting the limit
+     */
+    public void releaseUnused() {
+        synchronized (this) {
+            inFlight--;
+        }
+        grantPermits();
+    }
+
+    /**
+     * Grant permits to waiting requests, as long as the limit allows it
+     */
+    private void grantPermits() {
+        while (true) {
+            Runnable waiter;
+            synchronized (this) {
+                if (waiters.isEmpty() || inFlight >= (int) limit) {
+                    return;
+                }
+                waiter = waiters.poll();
+                inFlight++;
+            }
+            waiter.run();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.gdd.sage.http.limit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of retries sent to a SaGe server, so retries cannot amplify an overload of the server.
+ * The budget is a token bucket: each request earns a fraction of a token (10% by default), and each retry costs a whole token.
+ * So, whatever the number of clients and requests that fail, retries add at most this fraction of requests to the server load.
+ *
+ * The budget also records when the server has asked clients to slow down (HTTP 429 or 503 with a Retry-After header),
+ * so all requests to the server are paused, and not only the one that has been rejected.
+ *
+ * All clients that target the same server share the same budget, see {@link #forServer(String)}.
+ * @author Thomas Minier
+ */
+public class RetryBudget {
+    private static final ConcurrentMap<String, RetryBudget> BUDGETS = new ConcurrentHashMap<>();
+    public static final double DEFAULT_RETRY_RATIO = 0.1;
+    // Tokens available at first, so a few retries are allowed before any request has succeeded
+    public static final double DEFAULT_INITIAL_TOKENS = 5;
+    // Maximum number of tokens saved, so a burst of retries cannot follow a long quiet period
+    public static final double DEFAULT_MAX_TOKENS = 20;
+    // Tokens are counted in thousandths, so fractions of tokens add up exactly
+    private static final long TOKEN = 1000;
+
+    private final long retryRatio;
+    private final long maxTokens;
+    private long tokens;
+    private long pausedUntil;
+
+    /**
+     * Constructor
+     * @param retryRatio - Maximum ratio of retries, i.e., tokens earned by each request
+     * @param initialTokens - Number of retries allowed at first
+     * @param maxTokens - Maximum number of tokens saved
+     */
+    public RetryBudget(double retryRatio, double initialTokens, double maxTokens) {
+        this.retryRatio = Math.round(retryRatio * TOKEN);
+        this.maxTokens = Math.round(maxTokens * TOKEN);
+        tokens = Math.min(Math.round(initialTokens * TOKEN), this.maxTokens);
+        pausedUntil = System.nanoTime();
+    }
+
+    /**
+     * Constructor, using default settings
+     */
+    public RetryBudget() {
+        this(DEFAULT_RETRY_RATIO, DEFAULT_INITIAL_TOKENS, DEFAULT_MAX_TOKENS);
+    }
+
+    /**
+     * Get the retry budget shared by all clients of a SaGe server
+     * @param serverURL - URL of the SaGe server
+     * @return The retry budget shared by all clients of the SaGe server
+     */
+    public static RetryBudget forServer(String serverURL) {
+        return BUDGETS.computeIfAbsent(serverURL, url -> new RetryBudget());
+    }
+
+    /**
+     * Earn the budget of a request, when it is sent for the first time
+     */
+    public synchronized void onRequest() {
+        tokens = Math.min(maxTokens, tokens + retryRatio);
+    }
+
+    /**
+     * Try to spend the budget of a retry
+     * @return True if the request can be retried, False otherwise
+     */
+    public synchronized boolean tryRetry() {
+        if (tokens >= TOKEN) {
+            tokens -= TOKEN;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of retries currently allowed
+     * @return The number of retries currently allowed
+     */
+    public synchronized int getAvailableRetries() {
+        return (int) (tokens / TOKEN);
+    }
+
+    /**
+     * Pause all requests to the server, e.g., because the server has sent a Retry-After header
+     * @param delay - Duration of the pause
+     * @param unit - Unit of the duration
+     */
+    public synchronized void pause(long delay, TimeUnit unit) {
+        pausedUntil = Math.max(pausedUntil, System.nanoTime() + unit.toNanos(delay));
+    }
+
+    /**
+     * Get the time left before requests can be sent to the server again
+     * @return The time left before requests can be sent again, in nanoseconds, or 0 if they can be sent now
+     */
+    public synchronized long getPauseDelay() {
+        return Math.max(0, pausedUntil - System.nanoTime());
+    }
+}
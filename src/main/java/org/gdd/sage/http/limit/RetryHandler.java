@@ -0,0 +1,140 @@
+package org.gdd.sage.http.limit;
+
+import com.google.api.client.http.HttpIOExceptionHandler;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpStatusCodes;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides if a failed HTTP request is retried, and when.
+ * A request is retried, with exponential backoff and jitter, if it has failed because of a connection error,
+ * an HTTP 5xx status or an HTTP 429 status, up to a maximum number of attempts, and only if the {@link RetryBudget}
+ * of the server allows it. The delays sent by the server in Retry-After headers are honored, and shared with all
+ * requests to the server.
+ *
+ * A handler holds the state of a single request, so a new handler must be used for each request.
+ * @author Thomas Minier
+ */
+public class RetryHandler implements HttpUnsuccessfulResponseHandler, HttpIOExceptionHandler {
+    private static final int STATUS_CODE_TOO_MANY_REQUESTS = 429;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    // Delay before the first retry, doubled for each retry
+    private static final long INITIAL_BACKOFF = 200;
+    private static final long MAX_BACKOFF = 5000;
+    // A request is not retried if the server asks to wait longer than this delay
+    private static final long MAX_RETRY_AFTER = 30000;
+
+    private final RetryBudget budget;
+    private final int maxRetries;
+    private int nbRetries;
+
+    /**
+     * Constructor
+     * @param budget - Retry budget of the server
+     * @param maxRetries - Maximum number of retries of the request
+     */
+    public RetryHandler(RetryBudget budget, int maxRetries) {
+        this.budget = budget;
+        this.maxRetries = maxRetries;
+        nbRetries = 0;
+    }
+
+    /**
+     * Constructor, using the default maximum number of retries
+     * @param budget - Retry budget of the server
+     */
+    public RetryHandler(RetryBudget budget) {
+        this(budget, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * Get the number of times the request has been retried
+     * @return The number of retries
+     */
+    public int getNbRetries() {
+        return nbRetries;
+    }
+
+    @Override
+    public boolean handleResponse(HttpRequest request, HttpResponse response, boolean supportsRetry) {
+        int statusCode = response.getStatusCode();
+        boolean isOverloaded = statusCode == STATUS_CODE_TOO_MANY_REQUESTS || statusCode == HttpStatusCodes.STATUS_CODE_SERVICE_UNAVAILABLE;
+        if (!supportsRetry || (statusCode < HttpStatusCodes.STATUS_CODE_SERVER_ERROR && !isOverloaded)) {
+            return false;
+        }
+        long delay = backoff();
+        if (isOverloaded) {
+            long retryAfter = parseRetryAfter(response.getHeaders().getFirstHeaderStringValue("Retry-After"));
+            if (retryAfter > MAX_RETRY_AFTER) {
+                // give up now, as other requests will wait for the end of the pause
+                budget.pause(retryAfter, TimeUnit.MILLISECONDS);
+                return false;
+            } else if (retryAfter >= 0) {
+                budget.pause(retryAfter, TimeUnit.MILLISECONDS);
+                delay = retryAfter;
+            }
+        }
+        return retry(delay);
+    }
+
+    @Override
+    public boolean handleIOException(HttpRequest request, boolean supportsRetry) {
+        return supportsRetry && retry(backoff());
+    }
+
+    /**
+     * Compute the delay before the next retry, using exponential backoff with full jitter
+     * @return The delay before the next retry, in milliseconds
+     */
+    private long backoff() {
+        long maxDelay = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(nbRetries, 16));
+        return ThreadLocalRandom.current().nextLong(maxDelay / 2, maxDelay + 1);
+    }
+
+    /**
+     * Wait before retrying the request, if retries are allowed
+     * @param delay - Delay before the retry, in milliseconds
+     * @return True if the request must be retried, False otherwise
+     */
+    private boolean retry(long delay) {
+        if (nbRetries >= maxRetries || !budget.tryRetry()) {
+            return false;
+        }
+        nbRetries++;
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Parse the value of a Retry-After header, either a number of seconds or an HTTP date
+     * @param value - Value of the header, or null if the header is missing
+     * @return The delay to wait, in milliseconds, or -1 if the header is missing or invalid
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ex) {
+                return -1;
+            }
+        }
+    }
+}
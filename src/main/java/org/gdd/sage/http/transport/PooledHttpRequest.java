@@ -0,0 +1,108 @@
+package org.gdd.sage.http.transport;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.util.StreamingContent;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+/**
+ * An HTTP request sent using a {@link PooledHttpTransport}
+ * @author Thomas Minier
+ */
+class PooledHttpRequest extends LowLevelHttpRequest {
+    private final CloseableHttpClient httpClient;
+    private final Request request;
+    private final RequestConfig.Builder config;
+
+    /**
+     * An Apache HTTP request, with any method
+     */
+    private static class Request extends HttpEntityEnclosingRequestBase {
+        private final String method;
+
+        Request(String method, String url) {
+            this.method = method;
+            setURI(URI.create(url));
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    /**
+     * Body of an HTTP request, written directly in the connection's output stream
+     */
+    private static class StreamingEntity extends AbstractHttpEntity {
+        private final StreamingContent content;
+        private final long length;
+
+        StreamingEntity(StreamingContent content, long length) {
+            this.content = content;
+            this.length = length;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeTo(OutputStream output) throws IOException {
+            content.writeTo(output);
+            output.flush();
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    PooledHttpRequest(CloseableHttpClient httpClient, String method, String url) {
+        this.httpClient = httpClient;
+        request = new Request(method, url);
+        config = RequestConfig.custom().setRedirectsEnabled(false);
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        request.addHeader(name, value);
+    }
+
+    @Override
+    public void setTimeout(int connectTimeout, int readTimeout) {
+        config.setConnectTimeout(connectTimeout).setSocketTimeout(readTimeout);
+    }
+
+    @Override
+    public LowLevelHttpResponse execute() throws IOException {
+        if (getStreamingContent() != null) {
+            StreamingEntity entity = new StreamingEntity(getStreamingContent(), getContentLength());
+            entity.setContentEncoding(getContentEncoding());
+            entity.setContentType(getContentType());
+            request.setEntity(entity);
+        }
+        request.setConfig(config.build());
+        return new PooledHttpResponse(request, httpClient.execute(request));
+    }
+}
@@ -0,0 +1,97 @@
+package org.gdd.sage.http.transport;
+
+import com.google.api.client.http.LowLevelHttpResponse;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An HTTP response received using a {@link PooledHttpTransport}.
+ * The connection goes back to the pool once the content of the response has been read and closed.
+ * @author Thomas Minier
+ */
+class PooledHttpResponse extends LowLevelHttpResponse {
+    private final HttpRequestBase request;
+    private final CloseableHttpResponse response;
+    private final Header[] headers;
+
+    PooledHttpResponse(HttpRequestBase request, CloseableHttpResponse response) {
+        this.request = request;
+        this.response = response;
+        headers = response.getAllHeaders();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        HttpEntity entity = response.getEntity();
+        return entity == null ? null : entity.getContent();
+    }
+
+    @Override
+    public String getContentEncoding() {
+        HttpEntity entity = response.getEntity();
+        if (entity != null && entity.getContentEncoding() != null) {
+            return entity.getContentEncoding().getValue();
+        }
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        HttpEntity entity = response.getEntity();
+        return entity == null ? -1 : entity.getContentLength();
+    }
+
+    @Override
+    public String getContentType() {
+        HttpEntity entity = response.getEntity();
+        if (entity != null && entity.getContentType() != null) {
+            return entity.getContentType().getValue();
+        }
+        return null;
+    }
+
+    @Override
+    public String getStatusLine() {
+        StatusLine statusLine = response.getStatusLine();
+        return statusLine == null ? null : statusLine.toString();
+    }
+
+    @Override
+    public int getStatusCode() {
+        StatusLine statusLine = response.getStatusLine();
+        return statusLine == null ? 0 : statusLine.getStatusCode();
+    }
+
+    @Override
+    public String getReasonPhrase() {
+        StatusLine statusLine = response.getStatusLine();
+        return statusLine == null ? null : statusLine.getReasonPhrase();
+    }
+
+    @Override
+    public int getHeaderCount() {
+        return headers.length;
+    }
+
+    @Override
+    public String getHeaderName(int index) {
+        return headers[index].getName();
+    }
+
+    @Override
+    public String getHeaderValue(int index) {
+        return headers[index].getValue();
+    }
+
+    @Override
+    public void disconnect() {
+        // the connection cannot be reused, as the response may not have been fully read
+        request.abort();
+    }
+}
@@ -0,0 +1,155 @@
+package org.gdd.sage.http.transport;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.LowLevelHttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An HTTP transport backed by a pool of persistent (keep-alive) connections, using Apache HttpClient.
+ * Connections to a SaGe server are reused from one request to another, so bursts of requests,
+ * e.g., sent by a bound join, do not pay for a TCP (and TLS) handshake each time.
+ *
+ * Unlike {@link com.google.api.client.http.javanet.NetHttpTransport}, the size of the pool, the keep-alive duration
+ * and the socket options (TCP_NODELAY, buffer sizes) are explicitly controlled, and connection-level metrics are exposed.
+ * @author Thomas Minier
+ */
+public class PooledHttpTransport extends HttpTransport {
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 50;
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+    public static final long DEFAULT_KEEP_ALIVE = 30;
+    public static final int DEFAULT_SOCKET_BUFFER_SIZE = 64 * 1024;
+    // Idle connections are checked before reuse after this delay (in ms), as the server may have closed them
+    private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final AtomicLong nbConnectionsOpened;
+    private final AtomicLong nbRequests;
+
+    /**
+     * Constructor, using default settings
+     */
+    public PooledHttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_CONNECTIONS, DEFAULT_KEEP_ALIVE, TimeUnit.SECONDS, DEFAULT_SOCKET_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param maxConnectionsPerHost - Maximum number of connections opened to the same host
+     * @param maxConnections - Maximum number of connections opened in total
+     * @param keepAlive - Maximum time an idle connection is kept open, if the server does not ask for less
+     * @param unit - Unit of the keep-alive duration
+     * @param socketBufferSize - Size of the send and receive buffers of sockets, in bytes
+     */
+    public PooledHttpTransport(int maxConnectionsPerHost, int maxConnections, long keepAlive, TimeUnit unit, int socketBufferSize) {
+        nbConnectionsOpened = new AtomicLong();
+        nbRequests = new AtomicLong();
+        // count connections as they are created
+        HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory = (route, config) -> {
+            nbConnectionsOpened.incrementAndGet();
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        };
+        connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                .build(), connectionFactory);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+        connectionManager.setDefaultSocketConfig(SocketConfig.custom()
+                .setTcpNoDelay(true)
+                .setSoKeepAlive(true)
+                .setSndBufSize(socketBufferSize)
+                .setRcvBufSize(socketBufferSize)
+                .build());
+        long maxKeepAlive = unit.toMillis(keepAlive);
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                // honor the keep-alive duration sent by the server, up to our own maximum
+                .setKeepAliveStrategy((response, context) -> {
+                    long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return duration < 0 ? maxKeepAlive : Math.min(duration, maxKeepAlive);
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAlive, unit)
+                .addInterceptorFirst((HttpRequestInterceptor) (request, context) -> nbRequests.incrementAndGet())
+                // redirects, retries and content encoding are handled by the Google HTTP client
+                .disableRedirectHandling()
+                .disableContentCompression()
+                .setDefaultRequestConfig(RequestConfig.DEFAULT)
+                .build();
+    }
+
+    /**
+     * Get the number of connections opened since the creation of the transport
+     * @return The number of connections opened
+     */
+    public long getNbConnectionsOpened() {
+        return nbConnectionsOpened.get();
+    }
+
+    /**
+     * Get the number of HTTP requests sent since the creation of the transport
+     * @return The number of HTTP requests sent
+     */
+    public long getNbRequests() {
+        return nbRequests.get();
+    }
+
+    /**
+     * Get the number of HTTP requests sent using an already opened connection
+     * @return The number of connection reuses
+     */
+    public long getNbConnectionsReused() {
+        return Math.max(0, nbRequests.get() - nbConnectionsOpened.get());
+    }
+
+    /**
+     * Get the number of opened connections currently idle in the pool
+     * @return The number of idle connections
+     */
+    public int getNbIdleConnections() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    /**
+     * Get the number of connections currently used to send requests
+     * @return The number of connections in use
+     */
+    public int getNbLeasedConnections() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    @Override
+    public boolean supportsMethod(String method) {
+        return true;
+    }
+
+    @Override
+    protected LowLevelHttpRequest buildRequest(String method, String url) {
+        return new PooledHttpRequest(httpClient, method, url);
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        httpClient.close();
+    }
+}
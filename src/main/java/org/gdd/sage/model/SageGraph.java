@@ -13,10 +13,16 @@ import org.apache.jena.util.iterator.WrappedIterator;
 import org.gdd.sage.engine.iterators.SageBGPIterator;
 import org.gdd.sage.engine.iterators.SageFilterBGPIterator;
 import org.gdd.sage.engine.iterators.SageUnionIterator;
+import org.gdd.sage.engine.iterators.base.SageQueryIterator;
+import org.gdd.sage.engine.iterators.boundjoin.BoundJoinEncoding;
 import org.gdd.sage.http.ExecutionStats;
 import org.gdd.sage.http.SageDefaultClient;
 import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.SageReplicatedClient;
+import org.gdd.sage.http.hedging.HedgingPolicy;
+import org.gdd.sage.http.results.QueryResults;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -26,6 +32,8 @@ import java.util.List;
 public class SageGraph extends GraphBase {
     private String graphURI;
     private SageRemoteClient httpClient;
+    private int prefetchDepth;
+    private BoundJoinEncoding boundJoinEncoding = BoundJoinEncoding.UNION;
 
     /**
      * Constructor
@@ -38,6 +46,7 @@ public class SageGraph extends GraphBase {
         int index = url.lastIndexOf("/sparql/");
         String serverURL = url.substring(0, index + 7);
         this.httpClient = new SageDefaultClient(serverURL);
+        prefetchDepth = 0;
     }
 
     /**
@@ -51,6 +60,39 @@ public class SageGraph extends GraphBase {
         int index = url.lastIndexOf("/sparql/");
         String serverURL = url.substring(0, index + 7);
         this.httpClient = new SageDefaultClient(serverURL, spy);
+        prefetchDepth = 0;
+    }
+
+    /**
+     * Constructor, for a graph hosted by several SaGe servers.
+     * Read queries are load balanced between the servers, see {@link SageReplicatedClient}.
+     * @param url - URL of the dataset/graph
+     * @param replicaURLs - URLs of other SaGe servers that host the same graph
+     * @param policy - How read queries are routed among the servers
+     * @param spy - Spy used to record execution statistics
+     */
+    public SageGraph(String url, List<String> replicaURLs, SageReplicatedClient.RoutingPolicy policy, ExecutionStats spy) {
+        super();
+        graphURI = url;
+        // format URL
+        int index = url.lastIndexOf("/sparql/");
+        List<String> serverURLs = new ArrayList<>();
+        serverURLs.add(url.substring(0, index + 7));
+        serverURLs.addAll(replicaURLs);
+        this.httpClient = new SageReplicatedClient(serverURLs, policy, spy);
+        prefetchDepth = 0;
+    }
+
+    /**
+     * Constructor
+     * @param url - URL of the dataset/graph
+     * @param client - HTTP client used to access the SaGe server that hosts the graph
+     */
+    public SageGraph(String url, SageRemoteClient client) {
+        super();
+        graphURI = url;
+        this.httpClient = client;
+        prefetchDepth = 0;
     }
 
     /**
@@ -69,6 +111,57 @@ public class SageGraph extends GraphBase {
         return httpClient;
     }
 
+    /**
+     * Set how many pages of results are fetched in background, ahead of their consumption,
+     * by the iterators that evaluate queries against this graph.
+     * @param depth - Maximum number of pages fetched in advance. A depth of 0 (the default) disables prefetching.
+     */
+    public void setPrefetchDepth(int depth) {
+        prefetchDepth = depth;
+    }
+
+    /**
+     * Get how the buckets of the bound joins evaluated against this graph are encoded into SPARQL queries
+     * @return The encoding of bound join buckets
+     */
+    public BoundJoinEncoding getBoundJoinEncoding() {
+        return boundJoinEncoding;
+    }
+
+    /**
+     * Set how the buckets of the bound joins evaluated against this graph are encoded into SPARQL queries
+     * @param encoding - Encoding of bound join buckets. UNION (the default) is supported by all SaGe servers,
+     *                 while VALUES requires a server that supports the VALUES clause.
+     */
+    public void setBoundJoinEncoding(BoundJoinEncoding encoding) {
+        boundJoinEncoding = encoding;
+    }
+
+    /**
+     * Hedge the read requests sent to evaluate queries against this graph,
+     * i.e., send a duplicate of the requests that are slow to answer and use the first answer.
+     * @param hedging - Hedging policy, or null to disable hedging
+     */
+    public void setHedgingPolicy(HedgingPolicy hedging) {
+        if (httpClient instanceof SageDefaultClient) {
+            ((SageDefaultClient) httpClient).setHedgingPolicy(hedging);
+        } else if (httpClient instanceof SageReplicatedClient) {
+            ((SageReplicatedClient) httpClient).setHedgingPolicy(hedging);
+        }
+    }
+
+    /**
+     * Configure an iterator that evaluates queries against this graph, i.e., enable page prefetching if needed
+     * @param iterator - Iterator to configure
+     * @return The configured iterator
+     */
+    private SageQueryIterator configure(SageQueryIterator iterator) {
+        if (prefetchDepth > 0) {
+            iterator.enablePrefetching(prefetchDepth);
+        }
+        return iterator;
+    }
+
     @Override
     protected ExtendedIterator<Triple> graphBaseFind(Triple triple) {
         // Jena may inject strange "ANY" that are not labelled as variable when evaluating property paths
@@ -89,7 +182,7 @@ public class SageGraph extends GraphBase {
         Triple t = new Triple(s, p, o);
         BasicPattern bgp = new BasicPattern();
         bgp.add(t);
-        QueryIterator queryIterator = new SageBGPIterator(getGraphURI(), httpClient, bgp);
+        QueryIterator queryIterator = configure(new SageBGPIterator(getGraphURI(), httpClient, bgp));
         return WrappedIterator.create(queryIterator)
                 .mapWith(binding -> Substitute.substitute(t, binding));
     }
@@ -106,7 +199,19 @@ public class SageGraph extends GraphBase {
      * @return An iterator over solution bindings for the BGP
      */
     public QueryIterator basicGraphPatternFind(BasicPattern bgp) {
-        return new SageBGPIterator(getGraphURI(), httpClient, bgp);
+        return configure(new SageBGPIterator(getGraphURI(), httpClient, bgp));
+    }
+
+    /**
+     * Evaluate a Basic Graph Pattern using the SaGe server, starting from a page of results that has already been fetched
+     * @param bgp - BGP to evaluate
+     * @param firstPage - First page of results of the BGP
+     * @return An iterator over solution bindings for the BGP
+     */
+    public QueryIterator basicGraphPatternFind(BasicPattern bgp, QueryResults firstPage) {
+        SageQueryIterator iterator = configure(new SageBGPIterator(getGraphURI(), httpClient, bgp));
+        iterator.setFirstPage(firstPage);
+        return iterator;
     }
 
     /**
@@ -117,9 +222,25 @@ public class SageGraph extends GraphBase {
      */
     public QueryIterator basicGraphPatternFind(BasicPattern bgp, List<Expr> filters) {
         if (filters.isEmpty()) {
-            return new SageBGPIterator(getGraphURI(), httpClient, bgp);
+            return configure(new SageBGPIterator(getGraphURI(), httpClient, bgp));
+        }
+        return configure(new SageFilterBGPIterator(getGraphURI(), httpClient, bgp, filters));
+    }
+
+    /**
+     * Evaluate a Basic Graph Pattern with a list of filters using the SaGe server, starting from a page of results that has already been fetched
+     * @param bgp - BGP to evaluate
+     * @param filters - List of filters
+     * @param firstPage - First page of results of the BGP + the filters
+     * @return An iterator over solution bindings for the BGP + the filters
+     */
+    public QueryIterator basicGraphPatternFind(BasicPattern bgp, List<Expr> filters, QueryResults firstPage) {
+        if (filters.isEmpty()) {
+            return basicGraphPatternFind(bgp, firstPage);
         }
-        return new SageFilterBGPIterator(getGraphURI(), httpClient, bgp, filters);
+        SageQueryIterator iterator = configure(new SageFilterBGPIterator(getGraphURI(), httpClient, bgp, filters));
+        iterator.setFirstPage(firstPage);
+        return iterator;
     }
 
     /**
@@ -128,6 +249,6 @@ public class SageGraph extends GraphBase {
      * @return An iterator over solution bindings for the Union
      */
     public QueryIterator unionFind(List<BasicPattern> patterns) {
-        return new SageUnionIterator(getGraphURI(), httpClient, patterns);
+        return configure(new SageUnionIterator(getGraphURI(), httpClient, patterns));
     }
 }
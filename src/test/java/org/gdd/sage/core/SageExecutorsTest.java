@@ -0,0 +1,46 @@
+package org.gdd.sage.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class SageExecutorsTest {
+    private final SageExecutors.ThreadMode initialMode = SageExecutors.getThreadMode();
+
+    @After
+    public void tearDown() {
+        SageExecutors.setThreadMode(initialMode);
+    }
+
+    /**
+     * Test if a task runs on a virtual thread, using Thread.isVirtual() when the JDK provides it
+     */
+    private static boolean runsOnVirtualThread(SageExecutors.ThreadMode mode) throws Exception {
+        SageExecutors.setThreadMode(mode);
+        ExecutorService executor = SageExecutors.newExecutor();
+        try {
+            return executor.submit(() -> {
+                try {
+                    Method isVirtual = Thread.class.getMethod("isVirtual");
+                    return (boolean) isVirtual.invoke(Thread.currentThread());
+                } catch (NoSuchMethodException e) {
+                    return false;
+                }
+            }).get(1, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testThreadMode() throws Exception {
+        assertEquals("Tasks should run on platform threads in platform mode", false, runsOnVirtualThread(SageExecutors.ThreadMode.PLATFORM));
+        assertEquals("Tasks should run on virtual threads in virtual mode, if the JDK supports them",
+                SageExecutors.isVirtualThreadSupported(), runsOnVirtualThread(SageExecutors.ThreadMode.VIRTUAL));
+    }
+}
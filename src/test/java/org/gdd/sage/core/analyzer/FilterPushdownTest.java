@@ -0,0 +1,49 @@
+package org.gdd.sage.core.analyzer;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprList;
+import org.apache.jena.sparql.util.ExprUtils;
+import org.gdd.sage.Utilities;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FilterPushdownTest {
+
+    private static BasicPattern bgp() {
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(Triple.create(Var.alloc("s"), Utilities.dbo("age"), Var.alloc("age")));
+        bgp.add(Triple.create(Var.alloc("s"), Var.alloc("p"), Var.alloc("o")));
+        return bgp;
+    }
+
+    @Test
+    public void testPushableFilters() {
+        assertTrue("Comparisons should be pushed", FilterPushdown.isPushable(ExprUtils.parse("?age > 18 && ?age < 65")));
+        assertTrue("Built-in functions should be pushed", FilterPushdown.isPushable(ExprUtils.parse("regex(str(?s), \"ada\", \"i\")")));
+        assertTrue("XSD casts should be pushed", FilterPushdown.isPushable(ExprUtils.parse("<http://www.w3.org/2001/XMLSchema#integer>(?age) > 18")));
+        assertFalse("Non-deterministic functions should not be pushed", FilterPushdown.isPushable(ExprUtils.parse("?age > rand()")));
+        assertFalse("Non-deterministic functions should not be pushed", FilterPushdown.isPushable(ExprUtils.parse("isBlank(bnode())")));
+        assertFalse("Custom functions should not be pushed", FilterPushdown.isPushable(ExprUtils.parse("<http://example.org/isAdult>(?age)")));
+    }
+
+    @Test
+    public void testFindPushableFilters() {
+        ExprList filters = new ExprList();
+        Expr onBGP = ExprUtils.parse("?age > 18");
+        Expr onPredicate = ExprUtils.parse("?p != <http://example.org/knows>");
+        filters.add(onBGP);
+        filters.add(onPredicate);
+        filters.add(ExprUtils.parse("?name = \"Ada\""));
+        filters.add(ExprUtils.parse("?age > rand()"));
+        List<Expr> pushableFilters = FilterPushdown.findPushableFilters(filters, bgp());
+        assertEquals("Only deterministic filters on variables of the BGP should be pushed", 2, pushableFilters.size());
+        assertTrue("Filters on the BGP should be pushed", pushableFilters.contains(onBGP));
+        assertTrue("Filters on predicate variables should be pushed", pushableFilters.contains(onPredicate));
+    }
+}
@@ -0,0 +1,70 @@
+package org.gdd.sage.engine;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.gdd.sage.Utilities;
+import org.gdd.sage.http.data.QuerySolutions;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JoinSelectorTest {
+    private static final Triple TYPE_PATTERN = Triple.create(Var.alloc("s"), Utilities.rdf("type"), Utilities.example("Person"));
+    private static final Triple NAME_PATTERN = Triple.create(Var.alloc("s"), Utilities.example("name"), Var.alloc("name"));
+
+    private static BasicPattern bgp() {
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(TYPE_PATTERN);
+        bgp.add(NAME_PATTERN);
+        return bgp;
+    }
+
+    private static QueryResults page(int size, String next, int typeCardinality, int nameCardinality) {
+        QuerySolutions solutions = new QuerySolutions();
+        for (int i = 0; i < size; i++) {
+            solutions.addBindings(BindingFactory.binding(Var.alloc("s"), Utilities.example("s" + i)));
+        }
+        SageStatistics stats = new SageStatistics(0, 0);
+        stats.addTripleCardinality(TYPE_PATTERN.getSubject().toString(), TYPE_PATTERN.getPredicate().toString(), TYPE_PATTERN.getObject().toString(), typeCardinality);
+        stats.addTripleCardinality(NAME_PATTERN.getSubject().toString(), NAME_PATTERN.getPredicate().toString(), NAME_PATTERN.getObject().toString(), nameCardinality);
+        return new QueryResults(solutions, next, stats);
+    }
+
+    @Test
+    public void testEstimateCardinality() {
+        assertEquals("The cardinality of a BGP evaluated in one page should be its number of results",
+                12, JoinSelector.estimateCardinality(bgp(), page(12, null, 500, 1000)));
+        assertEquals("The cardinality of a BGP should be the smallest cardinality of its triple patterns",
+                500, JoinSelector.estimateCardinality(bgp(), page(100, "p2", 500, 1000)));
+        QueryResults withoutStats = new QueryResults(new QuerySolutions(), "p2", new SageStatistics(0, 0));
+        assertEquals("The cardinality of a BGP without statistics should be unknown",
+                -1, JoinSelector.estimateCardinality(bgp(), withoutStats));
+    }
+
+    @Test
+    public void testUseHashJoin() {
+        JoinSelector selector = new JoinSelector(5);
+        assertTrue("A BGP evaluated in one page should be joined using a hash join", selector.useHashJoin(bgp(), page(12, null, 5000, 5000)));
+        assertTrue("A BGP that can be scanned in a few pages should be joined using a hash join", selector.useHashJoin(bgp(), page(100, "p2", 500, 1000)));
+        assertFalse("A BGP that needs many pages should be joined using a bound join", selector.useHashJoin(bgp(), page(100, "p2", 5000, 1000000)));
+        assertFalse("A BGP without statistics should be joined using a bound join",
+                selector.useHashJoin(bgp(), new QueryResults(new QuerySolutions(), "p2", new SageStatistics(0, 0))));
+        assertFalse("A BGP that cannot be evaluated should be joined using a bound join", selector.useHashJoin(bgp(), QueryResults.withError("error")));
+    }
+
+    @Test
+    public void testCompareWithBuckets() {
+        JoinSelector selector = new JoinSelector(5);
+        assertFalse("Input bindings that fit in a single bucket should not need the first page of the BGP", selector.needsFirstPage(1));
+        assertFalse("No input bindings should not need the first page of the BGP", selector.needsFirstPage(0));
+        assertTrue("Input bindings that need several buckets should need the first page of the BGP", selector.needsFirstPage(2));
+        assertEquals("The number of pages should be estimated from the cardinality of the BGP", 5, JoinSelector.estimateScanPages(bgp(), page(100, "p2", 500, 1000)));
+        assertTrue("A BGP scanned in fewer pages than the number of buckets should be joined using a hash join", selector.useHashJoin(bgp(), page(12, null, 5000, 5000), 2));
+        assertFalse("A BGP scanned in as many pages as the number of buckets should be joined using a bound join", selector.useHashJoin(bgp(), page(100, "p2", 500, 1000), 5));
+        assertTrue("A BGP scanned in fewer pages than the number of buckets should be joined using a hash join", selector.useHashJoin(bgp(), page(100, "p2", 500, 1000), 6));
+    }
+}
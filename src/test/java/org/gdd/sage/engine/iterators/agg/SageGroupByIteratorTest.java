@@ -0,0 +1,183 @@
+package org.gdd.sage.engine.iterators.agg;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.engine.iterator.QueryIterSingleton;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.ExprVar;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.expr.aggregate.AggregatorFactory;
+import org.gdd.sage.Utilities;
+import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.data.QuerySolutions;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.results.QueryResults;
+import org.gdd.sage.model.SageGraph;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class SageGroupByIteratorTest {
+    private static final String GRAPH_URI = "http://localhost:8000/sparql/test";
+    private static final Var CITY = Var.alloc("city");
+    private static final Var AGE = Var.alloc("age");
+    private static final Var COUNT = Var.alloc(".1");
+    private static final Var AVG = Var.alloc(".2");
+    private static final Var SAMPLE = Var.alloc(".3");
+
+    private static BasicPattern bgp() {
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(Triple.create(Var.alloc("person"), Utilities.example("city"), CITY));
+        bgp.add(Triple.create(Var.alloc("person"), Utilities.example("age"), AGE));
+        return bgp;
+    }
+
+    private static Node integer(int value) {
+        return NodeValue.makeInteger(value).asNode();
+    }
+
+    private static Binding row(Var[] variables, Node... values) {
+        BindingMap binding = BindingFactory.create();
+        for (int i = 0; i < variables.length; i++) {
+            binding.add(variables[i], values[i]);
+        }
+        return binding;
+    }
+
+    private static CompletableFuture<QueryResults> page(String next, Binding... rows) {
+        QuerySolutions solutions = new QuerySolutions();
+        for (Binding row : rows) {
+            solutions.addBindings(row);
+        }
+        return CompletableFuture.completedFuture(new QueryResults(solutions, next, new SageStatistics(0, 0)));
+    }
+
+    private static QueryIterator noFallback() {
+        fail("The fallback iterator should not be used");
+        return null;
+    }
+
+    private static List<Binding> evaluate(SageGroupByIterator iterator) {
+        List<Binding> results = new ArrayList<>();
+        iterator.forEachRemaining(results::add);
+        return results;
+    }
+
+    @Test
+    public void testReducePartialAggregations() {
+        // COUNT(*), AVG(?age) GROUP BY ?city, where AVG is computed from a SUM and a COUNT
+        ReducerFactory factory = new ReducerFactory(Arrays.asList(
+                new ExprAggregator(COUNT, AggregatorFactory.createCount(false)),
+                new ExprAggregator(AVG, AggregatorFactory.createAvg(false, new ExprVar(AGE)))), null);
+        assertTrue("COUNT and AVG should be supported", factory.isSupported());
+        assertEquals("AVG should be decomposed into a SUM and a COUNT", 3, factory.getPartialAggregations().size());
+
+        Var[] partials = { CITY, Var.alloc("sage_partial_0"), Var.alloc("sage_partial_1"), Var.alloc("sage_partial_2") };
+        Node nantes = Utilities.example("Nantes");
+        Node paris = Utilities.example("Paris");
+        SageRemoteClient client = mock(SageRemoteClient.class);
+        when(client.queryAsync(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(page("page2",
+                row(partials, nantes, integer(2), integer(50), integer(2)),
+                row(partials, paris, integer(1), integer(30), integer(1))));
+        when(client.queryAsync(eq(GRAPH_URI), anyString(), eq(Optional.of("page2")))).thenReturn(page(null,
+                row(partials, nantes, integer(2), integer(70), integer(2))));
+
+        SageGraph graph = new SageGraph(GRAPH_URI, client);
+        List<Binding> results = evaluate(new SageGroupByIterator(graph, bgp(), Collections.emptyList(), Collections.singletonList(CITY), factory, SageGroupByIteratorTest::noFallback, null));
+        Map<Node, Binding> groups = new HashMap<>();
+        results.forEach(binding -> groups.put(binding.get(CITY), binding));
+        assertEquals("Partial aggregations of the same group should be combined", 2, groups.size());
+        assertEquals("COUNT should sum the partial counts", 4, NodeValue.makeNode(groups.get(nantes).get(COUNT)).getInteger().intValue());
+        assertEquals("AVG should divide the total sum by the total count", 30, NodeValue.makeNode(groups.get(nantes).get(AVG)).getDecimal().intValue());
+        assertEquals("COUNT should sum the partial counts", 1, NodeValue.makeNode(groups.get(paris).get(COUNT)).getInteger().intValue());
+        verify(client, times(2)).queryAsync(eq(GRAPH_URI), anyString(), any());
+    }
+
+    @Test
+    public void testReduceDistinctAggregations() {
+        // COUNT(DISTINCT ?age), without GROUP BY: the server groups solutions by ?age
+        Var count = Var.alloc(".1");
+        ReducerFactory factory = new ReducerFactory(Collections.singletonList(
+                new ExprAggregator(count, AggregatorFactory.createCountExpr(true, new ExprVar(AGE)))), null);
+        assertTrue("COUNT(DISTINCT ?x) should be supported", factory.isSupported());
+        assertEquals("The server should group solutions by the variables of DISTINCT aggregations", Collections.singletonList(AGE), factory.getGroupVariables(Collections.emptyList()));
+
+        Var[] partials = { AGE };
+        SageRemoteClient client = mock(SageRemoteClient.class);
+        when(client.queryAsync(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(page("page2",
+                row(partials, integer(20)), row(partials, integer(30))));
+        when(client.queryAsync(eq(GRAPH_URI), anyString(), eq(Optional.of("page2")))).thenReturn(page(null,
+                row(partials, integer(30)), row(partials, integer(40))));
+
+        SageGraph graph = new SageGraph(GRAPH_URI, client);
+        List<Binding> results = evaluate(new SageGroupByIterator(graph, bgp(), Collections.emptyList(), Collections.emptyList(), factory, SageGroupByIteratorTest::noFallback, null));
+        assertEquals("An aggregation without GROUP BY should produce a single group", 1, results.size());
+        assertEquals("Values found in several pages should be counted once", 3, NodeValue.makeNode(results.get(0).get(count)).getInteger().intValue());
+    }
+
+    @Test
+    public void testEmptyAggregation() {
+        ReducerFactory factory = new ReducerFactory(Arrays.asList(
+                new ExprAggregator(COUNT, AggregatorFactory.createCount(false)),
+                new ExprAggregator(SAMPLE, AggregatorFactory.createSample(false, new ExprVar(AGE)))), null);
+        SageRemoteClient client = mock(SageRemoteClient.class);
+        when(client.queryAsync(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(page(null));
+
+        SageGraph graph = new SageGraph(GRAPH_URI, client);
+        List<Binding> results = evaluate(new SageGroupByIterator(graph, bgp(), Collections.emptyList(), Collections.emptyList(), factory, SageGroupByIteratorTest::noFallback, null));
+        assertEquals("An aggregation without GROUP BY should produce a single group, even without solutions", 1, results.size());
+        assertEquals("The COUNT of an empty group should be zero", 0, NodeValue.makeNode(results.get(0).get(COUNT)).getInteger().intValue());
+        assertFalse("The SAMPLE of an empty group should be unbound", results.get(0).contains(SAMPLE));
+
+        results = evaluate(new SageGroupByIterator(graph, bgp(), Collections.emptyList(), Collections.singletonList(CITY), factory, SageGroupByIteratorTest::noFallback, null));
+        assertTrue("An aggregation with GROUP BY should produce no groups without solutions", results.isEmpty());
+    }
+
+    @Test
+    public void testFallbackOnError() {
+        ReducerFactory factory = new ReducerFactory(Collections.singletonList(
+                new ExprAggregator(COUNT, AggregatorFactory.createCount(false))), null);
+        SageRemoteClient client = mock(SageRemoteClient.class);
+        when(client.queryAsync(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(CompletableFuture.completedFuture(QueryResults.withError("unsupported aggregation")));
+
+        SageGraph graph = new SageGraph(GRAPH_URI, client);
+        Binding fallback = BindingFactory.binding(COUNT, integer(42));
+        List<Binding> results = evaluate(new SageGroupByIterator(graph, bgp(), Collections.emptyList(), Collections.emptyList(), factory, () -> QueryIterSingleton.create(fallback, null), null));
+        assertEquals("Server errors should be handled by the fallback iterator", Collections.singletonList(fallback), results);
+    }
+
+    @Test
+    public void testFallbackOnFailedRequest() {
+        ReducerFactory factory = new ReducerFactory(Collections.singletonList(
+                new ExprAggregator(COUNT, AggregatorFactory.createCount(false))), null);
+        Var[] partials = { Var.alloc("sage_partial_0") };
+        CompletableFuture<QueryResults> failedRequest = new CompletableFuture<>();
+        failedRequest.completeExceptionally(new RuntimeException("connection reset"));
+        SageRemoteClient client = mock(SageRemoteClient.class);
+        when(client.queryAsync(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(page("page2", row(partials, integer(2))));
+        when(client.queryAsync(eq(GRAPH_URI), anyString(), eq(Optional.of("page2")))).thenReturn(failedRequest);
+
+        SageGraph graph = new SageGraph(GRAPH_URI, client);
+        Binding fallback = BindingFactory.binding(COUNT, integer(42));
+        List<Binding> results = evaluate(new SageGroupByIterator(graph, bgp(), Collections.emptyList(), Collections.emptyList(), factory, () -> QueryIterSingleton.create(fallback, null), null));
+        assertEquals("Partial results should be discarded when the request for a page fails", Collections.singletonList(fallback), results);
+    }
+}
@@ -0,0 +1,216 @@
+package org.gdd.sage.engine.iterators.base;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingHashMap;
+import org.gdd.sage.Utilities;
+import org.gdd.sage.engine.iterators.SageBGPIterator;
+import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.data.QuerySolutions;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.limit.CircuitBreaker;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class SageQueryIteratorTest {
+    private final String GRAPH_URI = "http://localhost:8000/sparql/test";
+    private final Var person = Var.alloc("person");
+    private SageRemoteClient httpClient;
+    private ExecutorService threadPool;
+    private BasicPattern bgp;
+
+    private QueryResults page(String next, int... values) {
+        QuerySolutions solutions = new QuerySolutions();
+        for (int value: values) {
+            BindingHashMap binding = new BindingHashMap();
+            binding.add(person, Utilities.example("person" + value));
+            solutions.addBindings(binding);
+        }
+        return new QueryResults(solutions, next, new SageStatistics(0, 0));
+    }
+
+    @Before
+    public void setUp() {
+        httpClient = mock(SageRemoteClient.class);
+        threadPool = Executors.newCachedThreadPool();
+        bgp = new BasicPattern();
+        bgp.add(Triple.create(person, Utilities.rdf("type"), NodeFactory.createURI("http://www.example.org#Person")));
+        when(httpClient.query(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(page("p2", 1, 2));
+        when(httpClient.query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")))).thenReturn(page("p3", 3, 4));
+        when(httpClient.query(eq(GRAPH_URI), anyString(), eq(Optional.of("p3")))).thenReturn(page(null, 5));
+        when(httpClient.queryAsync(eq(GRAPH_URI), anyString(), any())).thenAnswer(invocation ->
+            CompletableFuture.supplyAsync(() -> httpClient.query(GRAPH_URI, invocation.<String>getArgument(1), invocation.<Optional<String>>getArgument(2)), threadPool));
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void testStartFromFetchedPage() {
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        iterator.setFirstPage(page("p2", 1, 2));
+        List<Binding> results = new LinkedList<>();
+        iterator.forEachRemaining(results::add);
+        assertEquals("The iterator should yield 5 solutions mappings", 5, results.size());
+        verify(httpClient, never()).query(eq(GRAPH_URI), anyString(), eq(Optional.empty()));
+        verify(httpClient, times(2)).query(eq(GRAPH_URI), anyString(), any());
+    }
+
+    @Test
+    public void testReadAllPagesWithPrefetching() {
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        iterator.enablePrefetching(2);
+        List<Binding> results = new LinkedList<>();
+        iterator.forEachRemaining(results::add);
+        assertEquals("The iterator should yield 5 solutions mappings", 5, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("Pages should be read in order", Utilities.example("person" + (i + 1)), results.get(i).get(person));
+        }
+        verify(httpClient, times(3)).query(eq(GRAPH_URI), anyString(), any());
+    }
+
+    @Test
+    public void testReadAllPagesWithoutPrefetching() {
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        List<Binding> results = new LinkedList<>();
+        iterator.forEachRemaining(results::add);
+        assertEquals("The iterator should yield 5 solutions mappings", 5, results.size());
+        verify(httpClient, never()).queryAsync(eq(GRAPH_URI), anyString(), any());
+    }
+
+    @Test
+    public void testPrefetchingIsBounded() throws InterruptedException {
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        iterator.enablePrefetching(1);
+        assertTrue("An iterator over a non-empty set of results should have next results", iterator.hasNext());
+        iterator.close();
+        Thread.sleep(100);
+        // first page consumed + at most one page fetched in advance
+        verify(httpClient, atMost(2)).query(eq(GRAPH_URI), anyString(), any());
+        verify(httpClient, never()).query(eq(GRAPH_URI), anyString(), eq(Optional.of("p3")));
+    }
+
+    @Test
+    public void testCancelWhileWaitingForPage() throws InterruptedException {
+        // the second page never arrives
+        CompletableFuture<QueryResults> pendingPage = new CompletableFuture<>();
+        when(httpClient.queryAsync(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")))).thenReturn(pendingPage);
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        iterator.enablePrefetching(2);
+        List<Binding> results = new LinkedList<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                iterator.forEachRemaining(results::add);
+            } catch (QueryCancelledException e) {
+                // expected, as query evaluation has been cancelled
+            }
+        });
+        consumer.start();
+        Thread.sleep(200);
+        assertTrue("The consumer should be waiting for the second page", consumer.isAlive());
+        iterator.cancel();
+        consumer.join(1000);
+        assertFalse("Cancellation should wake up a consumer waiting for a page", consumer.isAlive());
+        assertEquals("Only the first page should be read", 2, results.size());
+        assertTrue("The pending request should be cancelled", pendingPage.isCancelled());
+    }
+
+    @Test
+    public void testResumeFailedPage() {
+        when(httpClient.query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2"))))
+                .thenReturn(QueryResults.withError("Server unavailable"))
+                .thenReturn(page("p3", 3, 4));
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        iterator.enablePrefetching(2);
+        List<Binding> results = new LinkedList<>();
+        iterator.forEachRemaining(results::add);
+        assertEquals("The failed page should be fetched again, so the iterator yields 5 solutions mappings", 5, results.size());
+        verify(httpClient, times(2)).query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")));
+    }
+
+    @Test
+    public void testResumeFailedFirstPage() {
+        when(httpClient.query(eq(GRAPH_URI), anyString(), eq(Optional.empty())))
+                .thenReturn(QueryResults.withError("Server unavailable"))
+                .thenReturn(page("p2", 1, 2));
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        List<Binding> results = new LinkedList<>();
+        iterator.forEachRemaining(results::add);
+        assertEquals("The failed first page should be fetched again, so the iterator yields 5 solutions mappings", 5, results.size());
+        verify(httpClient, times(2)).query(eq(GRAPH_URI), anyString(), eq(Optional.empty()));
+    }
+
+    @Test
+    public void testFailWhenFirstPageAlwaysFails() {
+        when(httpClient.query(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(QueryResults.withError("Server unavailable"));
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        try {
+            iterator.hasNext();
+            fail("Query evaluation should fail, rather than yielding no results");
+        } catch (QueryExecException e) {
+            verify(httpClient, times(3)).query(eq(GRAPH_URI), anyString(), eq(Optional.empty()));
+        }
+    }
+
+    @Test
+    public void testFailAfterRepeatedFailures() {
+        when(httpClient.query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")))).thenReturn(QueryResults.withError("Server unavailable"));
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        List<Binding> results = new LinkedList<>();
+        try {
+            iterator.forEachRemaining(results::add);
+            fail("Query evaluation should fail, rather than yielding incomplete results");
+        } catch (QueryExecException e) {
+            assertEquals("Only the first page should be read", 2, results.size());
+        }
+        verify(httpClient, times(3)).query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")));
+    }
+
+    @Test
+    public void testResumeAfterCircuitOpens() {
+        // the circuit opens when the second page fails, and the server has recovered by the end of the cool-down
+        CircuitBreaker breaker = new CircuitBreaker(1, 500, 5000, TimeUnit.MILLISECONDS);
+        AtomicBoolean hasFailed = new AtomicBoolean(false);
+        when(httpClient.getRetryDelay(any())).thenAnswer(invocation -> breaker.getRemainingDelay(invocation.getArgument(0)));
+        when(httpClient.query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")))).thenAnswer(invocation -> {
+            if (!breaker.allowRequest()) {
+                return QueryResults.withError("Server unavailable, as too many requests have failed");
+            } else if (!hasFailed.getAndSet(true)) {
+                breaker.onFailure();
+                return QueryResults.withError("Server unavailable");
+            }
+            breaker.onSuccess();
+            return page("p3", 3, 4);
+        });
+        SageBGPIterator iterator = new SageBGPIterator(GRAPH_URI, httpClient, bgp);
+        List<Binding> results = new LinkedList<>();
+        iterator.forEachRemaining(results::add);
+        assertEquals("The failed page should be fetched again once the circuit lets a trial request through", 5, results.size());
+        assertEquals("The circuit should close once the page has been fetched", CircuitBreaker.State.CLOSED, breaker.getState());
+        verify(httpClient, times(2)).query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")));
+    }
+}
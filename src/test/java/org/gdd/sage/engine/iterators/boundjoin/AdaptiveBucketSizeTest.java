@@ -0,0 +1,86 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.gdd.sage.Utilities;
+import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.data.QuerySolutions;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdaptiveBucketSizeTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+
+    @Test
+    public void testGrowUnderTargets() {
+        AdaptiveBucketSize bucketSize = new AdaptiveBucketSize(15, 1, 30, 1, TimeUnit.SECONDS, 100);
+        bucketSize.onBucketCompleted(15, 1, FAST, 10);
+        assertEquals("The size should grow after a fast bucket evaluated in one request", 18, bucketSize.getSize());
+        bucketSize.onBucketCompleted(18, 1, SLOW, 10);
+        assertEquals("The size should not grow after a slow bucket", 18, bucketSize.getSize());
+        bucketSize.onBucketCompleted(18, 1, FAST, 500);
+        assertEquals("The size should not grow after a bucket with many results", 18, bucketSize.getSize());
+        bucketSize.onBucketCompleted(5, 1, FAST, 10);
+        assertEquals("The size should not grow after a bucket smaller than the current size", 18, bucketSize.getSize());
+        for (int i = 0; i < 10; i++) {
+            bucketSize.onBucketCompleted(bucketSize.getSize(), 1, FAST, 10);
+        }
+        assertEquals("The size should not exceed its maximum", 30, bucketSize.getSize());
+    }
+
+    @Test
+    public void testShrinkWhenPaginated() {
+        AdaptiveBucketSize bucketSize = new AdaptiveBucketSize(16, 1, 30, 1, TimeUnit.SECONDS, 100);
+        bucketSize.onBucketCompleted(16, 2, FAST, 10);
+        assertEquals("The size should not change after a bucket paginated over a few fast pages", 16, bucketSize.getSize());
+        bucketSize.onBucketCompleted(16, AdaptiveBucketSize.MAX_PAGES + 1, FAST, 10);
+        assertEquals("The size should be halved after a bucket paginated over many pages", 8, bucketSize.getSize());
+        // buckets sent before the size has been reduced complete later
+        bucketSize.onBucketCompleted(16, 2, SLOW, 10);
+        assertEquals("A bucket should shrink the size at most to half its own size", 8, bucketSize.getSize());
+        bucketSize.onBucketFailed(8);
+        bucketSize.onBucketFailed(4);
+        bucketSize.onBucketFailed(2);
+        bucketSize.onBucketFailed(1);
+        assertEquals("The size should not go below its minimum", 1, bucketSize.getSize());
+    }
+
+    @Test
+    public void testReportPaginatedBucket() {
+        String graphURI = "http://localhost:8000/sparql/test";
+        SageRemoteClient client = mock(SageRemoteClient.class);
+        // the bucket is paginated over one page more than expected
+        int nbPages = AdaptiveBucketSize.MAX_PAGES + 1;
+        when(client.query(eq(graphURI), anyString(), eq(Optional.empty()))).thenReturn(new QueryResults(new QuerySolutions(), "p2", new SageStatistics(0, 0)));
+        for (int page = 2; page <= nbPages; page++) {
+            String next = page < nbPages ? "p" + (page + 1) : null;
+            when(client.query(eq(graphURI), anyString(), eq(Optional.of("p" + page)))).thenReturn(new QueryResults(new QuerySolutions(), next, new SageStatistics(0, 0)));
+        }
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(Triple.create(Var.alloc("person"), Utilities.rdf("type"), Var.alloc("type")));
+        List<Binding> block = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            block.add(BindingFactory.binding(Var.alloc("person"), Utilities.example("person" + i)));
+        }
+        AdaptiveBucketSize bucketSize = new AdaptiveBucketSize(10);
+        BoundIterator iterator = new BoundIterator(graphURI, client, new BoundJoinRewriter(bgp).rewrite(block), bucketSize);
+        iterator.forEachRemaining(binding -> {});
+        assertEquals("A bucket evaluated in too many requests should halve the size", 5, bucketSize.getSize());
+    }
+}
@@ -0,0 +1,83 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.gdd.sage.Utilities;
+import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.data.QuerySolutions;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class BoundIteratorTest {
+    private static final String GRAPH_URI = "http://localhost:8000/sparql/test";
+    private static final Var PERSON = Var.alloc("person");
+    private static final Var NAME = Var.alloc("name");
+    private SageRemoteClient client;
+    private BoundJoinBucket bucket;
+
+    private static QueryResults page(String next, String person) {
+        QuerySolutions solutions = new QuerySolutions();
+        BindingMap solution = BindingFactory.create();
+        solution.add(PERSON, Utilities.example(person));
+        solution.add(NAME, Utilities.example(person + "Name"));
+        solutions.addBindings(solution);
+        return new QueryResults(solutions, next, new SageStatistics(0, 0));
+    }
+
+    @Before
+    public void setUp() {
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(Triple.create(PERSON, Utilities.example("name"), NAME));
+        List<Binding> block = Arrays.asList(BindingFactory.binding(PERSON, Utilities.example("ada")), BindingFactory.binding(PERSON, Utilities.example("alan")));
+        bucket = new ValuesBoundJoinRewriter(bgp).rewrite(block);
+        client = mock(SageRemoteClient.class);
+        when(client.query(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(page("p2", "ada"));
+    }
+
+    @Test
+    public void testResumeFailedPage() {
+        when(client.query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2"))))
+                .thenReturn(QueryResults.withError("Server unavailable"))
+                .thenReturn(page(null, "alan"));
+        BoundIterator iterator = new BoundIterator(GRAPH_URI, client, bucket);
+        List<Binding> results = new ArrayList<>();
+        iterator.forEachRemaining(results::add);
+        assertEquals("The failed page should be fetched again, so no solutions of the bucket are lost", 2, results.size());
+        assertFalse("A bucket resumed after a failure should not be marked as failed", iterator.hasFailed());
+        verify(client, times(2)).query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")));
+    }
+
+    @Test
+    public void testFailAfterRepeatedFailures() {
+        when(client.query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")))).thenReturn(QueryResults.withError("Server unavailable"));
+        AdaptiveBucketSize bucketSize = new AdaptiveBucketSize(10);
+        BoundIterator iterator = new BoundIterator(GRAPH_URI, client, bucket, bucketSize);
+        List<Binding> results = new ArrayList<>();
+        try {
+            iterator.forEachRemaining(results::add);
+            fail("The bucket should fail, rather than yielding incomplete solutions");
+        } catch (QueryExecException e) {
+            assertEquals("Only the solutions of the first page should be read", 1, results.size());
+            assertTrue("The bucket should be marked as failed", iterator.hasFailed());
+            assertEquals("The failure should be reported to the adaptive size", 1, bucketSize.getSize());
+        }
+        verify(client, times(3)).query(eq(GRAPH_URI), anyString(), eq(Optional.of("p2")));
+    }
+}
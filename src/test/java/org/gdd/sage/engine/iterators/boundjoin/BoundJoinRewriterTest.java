@@ -0,0 +1,79 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.util.ExprUtils;
+import org.gdd.sage.Utilities;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BoundJoinRewriterTest {
+    private static final Var PERSON = Var.alloc("person");
+    private static final Var NAME = Var.alloc("name");
+    // a variable whose name looks like a rewritten variable
+    private static final Var NAME_1_TYPE = Var.alloc("name_1_type");
+
+    private static BasicPattern bgp() {
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(Triple.create(PERSON, Utilities.example("name"), NAME));
+        bgp.add(Triple.create(PERSON, Utilities.rdf("type"), NAME_1_TYPE));
+        return bgp;
+    }
+
+    private static List<Binding> block(int size) {
+        List<Binding> block = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            block.add(BindingFactory.binding(PERSON, Utilities.example("person" + i)));
+        }
+        return block;
+    }
+
+    @Test
+    public void testRewriteBucket() {
+        BoundJoinRewriter.Bucket bucket = new BoundJoinRewriter(bgp()).rewrite(block(12));
+        assertEquals("Each binding should bound a BGP", 12, bucket.getBag().size());
+        assertFalse("Bounded BGPs with variables are not a containment query", bucket.isContainmentQuery());
+        Triple pattern = bucket.getBag().get(11).get(1);
+        assertEquals("Bound variables should be replaced by their values", Utilities.example("person11"), pattern.getSubject());
+        assertEquals("Variables should be renamed using the key of their BGP", Var.alloc("name_1_type_11"), pattern.getObject());
+    }
+
+    @Test
+    public void testRevertSolutions() {
+        BoundJoinRewriter rewriter = new BoundJoinRewriter(bgp());
+        // buckets share the renamed variables
+        rewriter.rewrite(block(20));
+        BoundJoinRewriter.Bucket bucket = rewriter.rewrite(block(12));
+        for (int key : new int[]{ 1, 11 }) {
+            BindingMap solution = BindingFactory.create();
+            solution.add(Var.alloc("name_" + key), Utilities.example("name" + key));
+            solution.add(Var.alloc("name_1_type_" + key), Utilities.example("Person"));
+            Binding result = bucket.revert(solution);
+            assertEquals("Solutions should be joined with the binding of their key", Utilities.example("person" + key), result.get(PERSON));
+            assertEquals("Renamed variables should be reverted", Utilities.example("name" + key), result.get(NAME));
+            assertEquals("Renamed variables should be reverted", Utilities.example("Person"), result.get(NAME_1_TYPE));
+            assertEquals("Solutions should only bind the original variables", 3, result.size());
+        }
+    }
+
+    @Test
+    public void testRewriteFilters() {
+        Expr filter = ExprUtils.parse("?name != ?person");
+        BoundJoinRewriter.Bucket bucket = new BoundJoinRewriter(bgp(), Collections.singletonList(filter)).rewrite(block(3));
+        Op op = Algebra.compile(QueryFactory.create(bucket.getQuery()));
+        assertTrue("Filters should be pushed into each bounded BGP", op.toString().contains("(filter (!= ?name_2 <http://www.example.org#person2>)"));
+    }
+}
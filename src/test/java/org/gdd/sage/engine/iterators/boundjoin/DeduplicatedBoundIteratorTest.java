@@ -0,0 +1,158 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.gdd.sage.Utilities;
+import org.gdd.sage.http.SageRemoteClient;
+import org.gdd.sage.http.data.QuerySolutions;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class DeduplicatedBoundIteratorTest {
+    private static final String GRAPH_URI = "http://localhost:8000/sparql/test";
+    private static final Var PERSON = Var.alloc("person");
+    private static final Var NAME = Var.alloc("name");
+    private static final Var FRIEND = Var.alloc("friend");
+
+    private static BasicPattern bgp() {
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(Triple.create(PERSON, Utilities.example("name"), NAME));
+        return bgp;
+    }
+
+    /**
+     * Build a bucket where each person is the friend of several others
+     */
+    private static List<Binding> block(String... persons) {
+        List<Binding> block = new ArrayList<>();
+        for (String person : persons) {
+            for (int i = 0; i < 3; i++) {
+                BindingMap binding = BindingFactory.create();
+                binding.add(PERSON, Utilities.example(person));
+                binding.add(FRIEND, Utilities.example("friend" + i));
+                block.add(binding);
+            }
+        }
+        return block;
+    }
+
+    private static SageRemoteClient client() {
+        // only ada has a name
+        QuerySolutions solutions = new QuerySolutions();
+        BindingMap solution = BindingFactory.create();
+        solution.add(PERSON, Utilities.example("ada"));
+        solution.add(NAME, Utilities.example("Ada"));
+        solutions.addBindings(solution);
+        SageRemoteClient client = mock(SageRemoteClient.class);
+        when(client.query(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(new QueryResults(solutions, null, new SageStatistics(0, 0)));
+        return client;
+    }
+
+    private static List<Binding> evaluate(DeduplicatedBoundIterator iterator) {
+        List<Binding> results = new ArrayList<>();
+        iterator.forEachRemaining(results::add);
+        return results;
+    }
+
+    @Test
+    public void testDeduplicateJoinKeys() {
+        SageRemoteClient client = client();
+        BucketRewriter rewriter = new ValuesBoundJoinRewriter(bgp());
+        List<Var> variables = Arrays.asList(PERSON, NAME);
+        DeduplicatedBoundIterator iterator = new DeduplicatedBoundIterator(GRAPH_URI, client, rewriter, variables, block("ada", "alan"), new JoinKeyMemo(), null);
+        assertEquals("Bindings should be deduplicated on their join key", 2, iterator.getNbKeys());
+        List<Binding> results = evaluate(iterator);
+        assertEquals("Solutions should be fanned out to all bindings with their key", 3, results.size());
+        for (Binding result : results) {
+            assertEquals("Solutions should be joined with bindings with their key", Utilities.example("ada"), result.get(PERSON));
+            assertEquals("Variables of the solution should be added", Utilities.example("Ada"), result.get(NAME));
+            assertTrue("Variables of the bindings should be kept", result.contains(FRIEND));
+        }
+        verify(client, times(1)).query(eq(GRAPH_URI), anyString(), eq(Optional.empty()));
+    }
+
+    @Test
+    public void testMemoizeJoinKeys() {
+        SageRemoteClient client = client();
+        BucketRewriter rewriter = new ValuesBoundJoinRewriter(bgp());
+        List<Var> variables = Arrays.asList(PERSON, NAME);
+        JoinKeyMemo memo = new JoinKeyMemo();
+        evaluate(new DeduplicatedBoundIterator(GRAPH_URI, client, rewriter, variables, block("ada", "alan"), memo, null));
+        assertEquals("Resolved keys should be memoized, even without solutions", 2, memo.size());
+
+        List<Binding> results = evaluate(new DeduplicatedBoundIterator(GRAPH_URI, client, rewriter, variables, block("alan", "ada"), memo, null));
+        assertEquals("Memoized solutions should be fanned out to all bindings with their key", 3, results.size());
+        assertEquals("Both keys should be found in the memo", 2, memo.getNbHits());
+        verify(client, times(1)).query(eq(GRAPH_URI), anyString(), eq(Optional.empty()));
+    }
+
+    @Test
+    public void testBoundedMemo() {
+        JoinKeyMemo memo = new JoinKeyMemo(4, 2);
+        List<Binding> solutions = Arrays.asList(BindingFactory.binding(NAME, Utilities.example("a")), BindingFactory.binding(NAME, Utilities.example("b")));
+        memo.put(Arrays.asList(Utilities.example("ada")), solutions);
+        memo.put(Arrays.asList(Utilities.example("alan")), new ArrayList<>());
+        memo.put(Arrays.asList(Utilities.example("grace")), Arrays.asList(solutions.get(0), solutions.get(1), solutions.get(0)));
+        assertNull("Keys with too many solutions should not be memoized", memo.get(Arrays.asList(Utilities.example("grace"))));
+        assertNotNull("Keys should be found in the memo", memo.get(Arrays.asList(Utilities.example("ada"))));
+        memo.put(Arrays.asList(Utilities.example("tim")), solutions);
+        assertNull("The least recently used key should be evicted", memo.get(Arrays.asList(Utilities.example("alan"))));
+        assertEquals("The memo should not exceed its capacity", 2, memo.size());
+    }
+
+    @Test
+    public void testReportOncePerBucket() {
+        SageRemoteClient client = client();
+        BucketRewriter rewriter = new ValuesBoundJoinRewriter(bgp());
+        List<Var> variables = Arrays.asList(PERSON, NAME);
+        JoinKeyMemo memo = new JoinKeyMemo();
+        // bindings that bound different variables are evaluated in two groups
+        List<Binding> block = block("ada", "alan");
+        BindingMap grace = BindingFactory.create();
+        grace.add(PERSON, Utilities.example("grace"));
+        grace.add(NAME, Utilities.example("Grace"));
+        block.add(grace);
+        AdaptiveBucketSize bucketSize = mock(AdaptiveBucketSize.class);
+        evaluate(new DeduplicatedBoundIterator(GRAPH_URI, client, rewriter, variables, block, memo, bucketSize));
+        verify(bucketSize, times(1)).onBucketCompleted(eq(7), eq(2), anyLong(), eq(2));
+        verifyNoMoreInteractions(bucketSize);
+
+        // all keys are found in the memo, so no requests are sent
+        bucketSize = mock(AdaptiveBucketSize.class);
+        evaluate(new DeduplicatedBoundIterator(GRAPH_URI, client, rewriter, variables, block, memo, bucketSize));
+        verify(bucketSize, times(1)).onBucketCompleted(7, 0, 0, 0);
+        verifyNoMoreInteractions(bucketSize);
+    }
+
+    @Test
+    public void testReportFailedBucket() {
+        SageRemoteClient client = mock(SageRemoteClient.class);
+        when(client.query(eq(GRAPH_URI), anyString(), eq(Optional.empty()))).thenReturn(QueryResults.withError("Server unavailable"));
+        AdaptiveBucketSize bucketSize = mock(AdaptiveBucketSize.class);
+        DeduplicatedBoundIterator iterator = new DeduplicatedBoundIterator(GRAPH_URI, client, new ValuesBoundJoinRewriter(bgp()), Arrays.asList(PERSON, NAME), block("ada", "alan"), new JoinKeyMemo(), bucketSize);
+        try {
+            evaluate(iterator);
+            fail("The bucket should fail when a group cannot be evaluated");
+        } catch (QueryExecException e) {
+            verify(bucketSize, times(1)).onBucketFailed(6);
+            verifyNoMoreInteractions(bucketSize);
+        }
+    }
+}
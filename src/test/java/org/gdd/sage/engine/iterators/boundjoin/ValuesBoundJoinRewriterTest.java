@@ -0,0 +1,97 @@
+package org.gdd.sage.engine.iterators.boundjoin;
+
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.algebra.op.OpJoin;
+import org.apache.jena.sparql.algebra.op.OpTable;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.gdd.sage.Utilities;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ValuesBoundJoinRewriterTest {
+    private static final Var PERSON = Var.alloc("person");
+    private static final Var NAME = Var.alloc("name");
+    private static final Var FRIEND = Var.alloc("friend");
+
+    private static BasicPattern bgp() {
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(Triple.create(PERSON, Utilities.example("name"), NAME));
+        return bgp;
+    }
+
+    private static Binding binding(String person, String friend) {
+        BindingMap binding = BindingFactory.create();
+        if (person != null) {
+            binding.add(PERSON, Utilities.example(person));
+        }
+        binding.add(FRIEND, Utilities.example(friend));
+        return binding;
+    }
+
+    private static Binding solution(String person, String name) {
+        BindingMap solution = BindingFactory.create();
+        solution.add(PERSON, Utilities.example(person));
+        solution.add(NAME, Utilities.example(name));
+        return solution;
+    }
+
+    @Test
+    public void testRewriteBucket() {
+        List<Binding> block = Arrays.asList(binding("ada", "alan"), binding("ada", "grace"), binding("alan", "ada"));
+        BoundJoinBucket bucket = new ValuesBoundJoinRewriter(bgp()).rewrite(block);
+        // the query is evaluated as a join between the VALUES clause and the BGP
+        Op op = Algebra.compile(QueryFactory.create(bucket.getQuery()));
+        Table values = ((OpTable) ((OpJoin) op).getLeft()).getTable();
+        assertEquals("Only the variables of the BGP should be sent in the VALUES clause", Arrays.asList(PERSON), values.getVars());
+        assertEquals("Bindings with the same values should share the same row", 2, values.size());
+        assertFalse("The join variables are always part of the solutions", bucket.isContainmentQuery());
+        assertEquals("The bucket should keep all its bindings", 3, bucket.getBlock().size());
+    }
+
+    @Test
+    public void testRevertSolutions() {
+        List<Binding> block = Arrays.asList(binding("ada", "alan"), binding("ada", "grace"), binding("alan", "ada"));
+        BoundJoinBucket bucket = new ValuesBoundJoinRewriter(bgp()).rewrite(block);
+
+        List<Binding> results = new ArrayList<>();
+        bucket.revert(solution("ada", "Ada"), results);
+        assertEquals("A solution should be joined with all bindings with the same values", 2, results.size());
+        for (Binding result : results) {
+            assertEquals("Solutions should be joined with compatible bindings", Utilities.example("ada"), result.get(PERSON));
+            assertEquals("Variables of the solution should be added", Utilities.example("Ada"), result.get(NAME));
+        }
+
+        results.clear();
+        bucket.revert(solution("alan", "Alan"), results);
+        assertEquals("A solution should only be joined with compatible bindings", 1, results.size());
+        assertEquals("Variables of the bindings should be kept", Utilities.example("ada"), results.get(0).get(FRIEND));
+    }
+
+    @Test
+    public void testPartiallyBoundBucket() {
+        List<Binding> block = Arrays.asList(binding("ada", "alan"), binding(null, "tim"));
+        BoundJoinBucket bucket = new ValuesBoundJoinRewriter(bgp()).rewrite(block);
+        assertFalse("Variables not bound by all bindings should not be sent as UNDEF", bucket.getQuery().contains("UNDEF"));
+
+        List<Binding> results = new ArrayList<>();
+        bucket.revert(solution("ada", "Ada"), results);
+        assertEquals("A solution should be joined with all compatible bindings", 2, results.size());
+        results.clear();
+        bucket.revert(solution("alan", "Alan"), results);
+        assertEquals("A solution should not be joined with incompatible bindings", 1, results.size());
+        assertEquals("Bindings without values should be bound by the solution", Utilities.example("alan"), results.get(0).get(PERSON));
+    }
+}
@@ -0,0 +1,80 @@
+package org.gdd.sage.engine.iterators.hashjoin;
+
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.gdd.sage.Utilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SymmetricHashJoinIteratorTest {
+    private static final Var S = Var.alloc("s");
+    private static final Var NAME = Var.alloc("name");
+    private static final Var TYPE = Var.alloc("type");
+    private ExecutorService threadPool;
+
+    private static Binding binding(Var v1, String value1, Var v2, String value2) {
+        BindingMap binding = BindingFactory.create();
+        if (value1 != null) {
+            binding.add(v1, Utilities.example(value1));
+        }
+        binding.add(v2, Utilities.example(value2));
+        return binding;
+    }
+
+    @Before
+    public void setUp() {
+        threadPool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void testJoinOnSharedVariables() {
+        List<Binding> leftBindings = new ArrayList<>();
+        List<Binding> rightBindings = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            leftBindings.add(binding(S, "person" + i, NAME, "name" + i));
+            // each person has two types, but only half of the persons are typed
+            if (i % 2 == 0) {
+                rightBindings.add(binding(S, "person" + i, TYPE, "Person"));
+                rightBindings.add(binding(S, "person" + i, TYPE, "Agent"));
+            }
+        }
+        // a binding where the join variable is unbound joins with all bindings of the other side
+        leftBindings.add(binding(S, null, NAME, "anonymous"));
+        QueryIterator left = new QueryIterPlainWrapper(leftBindings.iterator());
+        QueryIterator right = new QueryIterPlainWrapper(rightBindings.iterator());
+        QueryIterator iterator = new SymmetricHashJoinIterator(threadPool, left, right, Collections.singletonList(S));
+        int nbResults = 0;
+        while (iterator.hasNext()) {
+            Binding result = iterator.next();
+            assertTrue("Results should bind all variables", result.contains(S) && result.contains(NAME) && result.contains(TYPE));
+            String name = result.get(NAME).getURI();
+            if (!name.endsWith("anonymous")) {
+                String person = result.get(S).getURI();
+                assertEquals("Results should join bindings with the same values",
+                        person.substring(person.indexOf("person") + 6), name.substring(name.indexOf("name") + 4));
+            }
+            nbResults++;
+        }
+        iterator.close();
+        assertEquals("All pairs of compatible bindings should be joined exactly once", 50 + 50, nbResults);
+    }
+}
@@ -0,0 +1,130 @@
+package org.gdd.sage.engine.iterators.parallel;
+
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.gdd.sage.Utilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class BindingBufferTest {
+    private ExecutorService threadPool;
+
+    private static List<Binding> bindings(int size) {
+        List<Binding> bindings = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            bindings.add(BindingFactory.binding(Var.alloc("s"), Utilities.example("s" + i)));
+        }
+        return bindings;
+    }
+
+    @Before
+    public void setUp() {
+        threadPool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void testProducerWaitsWhenFull() throws Exception {
+        BindingBuffer buffer = new BindingBuffer(10);
+        buffer.addProducer();
+        List<Binding> bindings = bindings(25);
+        Future<Boolean> producer = threadPool.submit(() -> {
+            try {
+                return buffer.putAll(bindings);
+            } finally {
+                buffer.removeProducer();
+            }
+        });
+        try {
+            producer.get(100, TimeUnit.MILLISECONDS);
+            fail("The producer should wait while the buffer is full");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        assertEquals("The buffer should not exceed its capacity", 10, buffer.size());
+        List<Binding> results = new ArrayList<>();
+        while (buffer.getNbProducers() > 0 || !buffer.isEmpty()) {
+            buffer.drainTo(results);
+            buffer.await(buffer.getNbCompletedProducers());
+        }
+        assertTrue("All bindings should be transferred", producer.get());
+        assertEquals("All bindings should be read, in order", bindings, results);
+    }
+
+    @Test
+    public void testCloseReleasesProducers() throws Exception {
+        BindingBuffer buffer = new BindingBuffer(5);
+        buffer.addProducer();
+        List<Binding> bindings = bindings(10);
+        Future<Boolean> producer = threadPool.submit(() -> buffer.putAll(bindings));
+        Thread.sleep(50);
+        buffer.close();
+        assertFalse("A closed buffer should reject bindings", producer.get(1, TimeUnit.SECONDS));
+        assertTrue("A closed buffer should discard its bindings", buffer.isEmpty());
+    }
+
+    @Test
+    public void testWaitForProducers() throws Exception {
+        BindingBuffer buffer = new BindingBuffer();
+        buffer.addProducer();
+        buffer.addProducer();
+        long nbCompleted = buffer.getNbCompletedProducers();
+        threadPool.submit(() -> {
+            Thread.sleep(50);
+            buffer.removeProducer();
+            return null;
+        });
+        buffer.await(nbCompleted);
+        assertEquals("The consumer should wake up when a producer completes", 1, buffer.getNbProducers());
+        assertTrue("No bindings should be available", buffer.isEmpty());
+        buffer.removeProducer();
+        buffer.await(buffer.getNbCompletedProducers());
+        assertEquals("The consumer should not wait when all producers have completed", 0, buffer.getNbProducers());
+    }
+
+    @Test
+    public void testProducerFailure() throws Exception {
+        BindingBuffer buffer = new BindingBuffer();
+        buffer.addProducer();
+        buffer.addProducer();
+        Future<?> producer = threadPool.submit(() -> {
+            try {
+                buffer.putAll(bindings(5));
+                throw new QueryExecException("Server unavailable");
+            } catch (QueryExecException e) {
+                buffer.fail(e);
+            } finally {
+                buffer.removeProducer();
+            }
+        });
+        producer.get(1, TimeUnit.SECONDS);
+        List<Binding> results = new ArrayList<>();
+        buffer.drainTo(results);
+        try {
+            buffer.checkFailure();
+            fail("The consumer should fail when a producer has failed");
+        } catch (QueryExecException e) {
+            assertEquals("The error of the producer should be the cause of the failure", "Server unavailable", e.getCause().getMessage());
+        }
+        // the other producer is still running, so the consumer must not wait for it
+        buffer.await(buffer.getNbCompletedProducers());
+        assertEquals("The other producer should still be running", 1, buffer.getNbProducers());
+    }
+}
@@ -2,9 +2,12 @@ package org.gdd.sage.engine.iterators.parallel;
 
 import org.apache.jena.graph.Triple;
 import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.query.QueryExecException;
 import org.apache.jena.sparql.core.Var;
 import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
 import org.gdd.sage.Utilities;
 import org.gdd.sage.engine.iterators.SageBGPIterator;
 import org.gdd.sage.http.SageDefaultClient;
@@ -13,7 +16,10 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.NoSuchElementException;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -84,4 +90,28 @@ public class ParallelUnionIteratorTest {
         }
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFailWhenASourceFails() {
+        QueryIterator left = new QueryIterPlainWrapper(Collections.singletonList(BindingFactory.binding(Var.alloc("s"), Utilities.example("s"))).iterator());
+        QueryIterator right = new QueryIterPlainWrapper(new Iterator<Binding>() {
+            @Override
+            public boolean hasNext() {
+                throw new QueryExecException("Server unavailable");
+            }
+
+            @Override
+            public Binding next() {
+                throw new NoSuchElementException();
+            }
+        });
+        ParallelUnionIterator iterator = new ParallelUnionIterator(threadPool, left, right);
+        List<Binding> results = new LinkedList<>();
+        try {
+            iterator.forEachRemaining(results::add);
+            fail("The union should fail when one of its sources fails, rather than yielding incomplete results");
+        } catch (QueryExecException e) {
+            assertTrue("The union should not yield more results than the other source", results.size() <= 1);
+        }
+    }
+}
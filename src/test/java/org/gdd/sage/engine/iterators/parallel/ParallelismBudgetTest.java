@@ -0,0 +1,135 @@
+package org.gdd.sage.engine.iterators.parallel;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIterPlainWrapper;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.gdd.sage.Utilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParallelismBudgetTest {
+    private ExecutorService threadPool;
+
+    /**
+     * An iterator whose blocks take some time to process, and which records how many blocks are processed in parallel
+     */
+    private static class SlowBlockIterator extends ParallelBlockBufferedIterator {
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+
+        SlowBlockIterator(QueryIterator source, ExecutorService threadPool, ParallelismBudget budget, AtomicInteger running, AtomicInteger maxRunning) {
+            super(source, threadPool, 1, budget);
+            this.running = running;
+            this.maxRunning = maxRunning;
+        }
+
+        @Override
+        protected Runnable createTransformerTask(List<Binding> bindings, BindingBuffer output) {
+            return () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                output.putAll(bindings);
+            };
+        }
+
+        @Override
+        public void output(IndentedWriter out, SerializationContext sCxt) {
+        }
+    }
+
+    private static QueryIterator source(int size) {
+        List<Binding> bindings = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            bindings.add(BindingFactory.binding(Var.alloc("s"), Utilities.example("s" + i)));
+        }
+        return new QueryIterPlainWrapper(bindings.iterator());
+    }
+
+    private static int count(QueryIterator iterator) {
+        int cpt = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            cpt++;
+        }
+        return cpt;
+    }
+
+    @Before
+    public void setUp() {
+        threadPool = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        threadPool.shutdownNow();
+    }
+
+    @Test
+    public void testFairShare() {
+        ParallelismBudget budget = new ParallelismBudget(8, 8, 8);
+        budget.register();
+        budget.register();
+        assertEquals("Each iterator should get half of the budget", 4, budget.getFairShare());
+        for (int i = 0; i < 4; i++) {
+            assertTrue("An iterator should process up to its fair share of blocks", budget.tryAcquire(i));
+        }
+        assertFalse("An iterator should not exceed its fair share", budget.tryAcquire(4));
+        budget.unregister();
+        assertEquals("The share of completed iterators should be given back", 8, budget.getFairShare());
+    }
+
+    @Test
+    public void testNoIteratorStarves() {
+        ParallelismBudget budget = new ParallelismBudget(2, 2, 2);
+        for (int i = 0; i < 3; i++) {
+            budget.register();
+        }
+        assertTrue("The first block of an iterator should always be processed", budget.tryAcquire(0));
+        assertTrue("The first block of an iterator should always be processed", budget.tryAcquire(0));
+        assertTrue("The first block of an iterator should always be processed", budget.tryAcquire(0));
+        assertFalse("The budget should be exhausted", budget.tryAcquire(1));
+        assertEquals("All blocks should be counted", 3, budget.getRunning());
+    }
+
+    @Test
+    public void testSharedBudgetBoundsParallelism() throws Exception {
+        ParallelismBudget budget = new ParallelismBudget(4, 4, 4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        QueryIterator left = new SlowBlockIterator(source(20), threadPool, budget, running, maxRunning);
+        QueryIterator right = new SlowBlockIterator(source(20), threadPool, budget, running, maxRunning);
+        ExecutorService consumers = Executors.newFixedThreadPool(2);
+        try {
+            Future<Integer> leftCount = consumers.submit(() -> count(left));
+            Future<Integer> rightCount = consumers.submit(() -> count(right));
+            assertEquals("All solutions should be produced", 20, (int) leftCount.get());
+            assertEquals("All solutions should be produced", 20, (int) rightCount.get());
+        } finally {
+            consumers.shutdownNow();
+        }
+        assertTrue("Both iterators should process blocks in parallel", maxRunning.get() > 1);
+        assertTrue("Iterators should not process more blocks in parallel than the budget", maxRunning.get() <= 4);
+        // the budget is given back just after a task has completed
+        Thread.sleep(50);
+        assertEquals("All the budget should be given back", 0, budget.getRunning());
+    }
+}
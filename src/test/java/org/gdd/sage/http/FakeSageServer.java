@@ -0,0 +1,77 @@
+package org.gdd.sage.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * A local HTTP server that mimics a SaGe server, used to test HTTP clients without network access.
+ * By default, it answers all queries with the page of results stored in "json_response.json".
+ */
+public class FakeSageServer implements AutoCloseable {
+    private final HttpServer server;
+    private final List<byte[]> requests;
+    private HttpHandler handler;
+
+    public FakeSageServer() throws IOException {
+        requests = new CopyOnWriteArrayList<>();
+        handler = FakeSageServer::sendDefaultResponse;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/sparql", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                requests.add(IOUtils.toByteArray(body));
+            }
+            handler.handle(exchange);
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public static byte[] defaultResponse() throws IOException {
+        try (InputStream input = FakeSageServer.class.getResourceAsStream("/json_response.json")) {
+            return IOUtils.toByteArray(input);
+        }
+    }
+
+    public static void sendDefaultResponse(HttpExchange exchange) throws IOException {
+        send(exchange, 200, defaultResponse());
+    }
+
+    public static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    public void setHandler(HttpHandler handler) {
+        this.handler = handler;
+    }
+
+    public String getServerURL() {
+        return "http://localhost:" + server.getAddress().getPort() + "/sparql";
+    }
+
+    public String getGraphURI() {
+        return getServerURL() + "/test";
+    }
+
+    public List<byte[]> getRequests() {
+        return requests;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,183 @@
+package org.gdd.sage.http;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.gdd.sage.Utilities;
+import org.gdd.sage.http.cache.TinyLFUCache;
+import org.gdd.sage.http.hedging.HedgingPolicy;
+import org.gdd.sage.http.limit.CircuitBreaker;
+import org.gdd.sage.http.results.QueryResults;
+import org.gdd.sage.http.transport.PooledHttpTransport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class SageDefaultClientTest {
+    private FakeSageServer server;
+    private PooledHttpTransport transport;
+    private SageDefaultClient client;
+    private BasicPattern bgp;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeSageServer();
+        transport = new PooledHttpTransport();
+        ExecutionStats spy = new ExecutionStats();
+        client = new SageDefaultClient(server.getServerURL(), spy, new TinyLFUCache(1000, spy), transport);
+        bgp = new BasicPattern();
+        bgp.add(Triple.create(Var.alloc("s"), Utilities.rdf("type"), NodeFactory.createURI("http://www.example.org#Person")));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        transport.shutdown();
+        server.close();
+    }
+
+    private static byte[] compress(byte[] content, boolean useGzip) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (OutputStream encoder = useGzip ? new GZIPOutputStream(output) : new DeflaterOutputStream(output)) {
+            encoder.write(content);
+        }
+        return output.toByteArray();
+    }
+
+    private void sendCompressedResponses(String encoding) {
+        server.setHandler(exchange -> {
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding == null || !acceptEncoding.contains(encoding)) {
+                FakeSageServer.sendDefaultResponse(exchange);
+            } else {
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                FakeSageServer.send(exchange, 200, compress(FakeSageServer.defaultResponse(), encoding.equals("gzip")));
+            }
+        });
+    }
+
+    @Test
+    public void testGzipResponses() {
+        sendCompressedResponses("gzip");
+        QueryResults results = client.query(server.getGraphURI(), bgp);
+        assertFalse("The query should succeed", results.hasError());
+        assertEquals("The page should contain 9 solutions bindings", 9, results.getBindings().size());
+    }
+
+    @Test
+    public void testDeflateResponses() {
+        sendCompressedResponses("deflate");
+        QueryResults results = client.query(server.getGraphURI(), bgp);
+        assertFalse("The query should succeed", results.hasError());
+        assertEquals("The page should contain 9 solutions bindings", 9, results.getBindings().size());
+    }
+
+    @Test
+    public void testRequestCompression() throws IOException {
+        List<String> encodings = new CopyOnWriteArrayList<>();
+        server.setHandler(exchange -> {
+            encodings.add(String.valueOf(exchange.getRequestHeaders().getFirst("Content-Encoding")));
+            FakeSageServer.sendDefaultResponse(exchange);
+        });
+        client.query(server.getGraphURI(), bgp, Optional.of("page1"));
+        client.setRequestCompressionThreshold(10);
+        client.query(server.getGraphURI(), bgp, Optional.of("page2"));
+        assertEquals("Requests should not be compressed by default", "null", encodings.get(0));
+        assertEquals("Requests above the threshold should be compressed", "gzip", encodings.get(1));
+        String body = IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(server.getRequests().get(1))), StandardCharsets.UTF_8);
+        assertTrue("The compressed request should contain the query", body.contains("page2"));
+    }
+
+    @Test
+    public void testHedgeSlowRequest() throws InterruptedException {
+        HedgingPolicy hedging = new HedgingPolicy(0.95, 1, 1, TimeUnit.MILLISECONDS);
+        client.setHedgingPolicy(hedging);
+        for (int i = 0; i < 30; i++) {
+            client.query(server.getGraphURI(), bgp, Optional.of("warmup" + i));
+        }
+        // let duplicates of warm-up requests complete, if any
+        Thread.sleep(200);
+        AtomicInteger nbSlowRequests = new AtomicInteger();
+        server.setHandler(exchange -> {
+            // the first request of the page is stuck, but not its duplicate
+            if (nbSlowRequests.getAndIncrement() == 0) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            FakeSageServer.sendDefaultResponse(exchange);
+        });
+        // some warm-up requests may have been hedged too
+        long nbHedgedRequests = hedging.getNbHedgedRequests();
+        long startTime = System.nanoTime();
+        QueryResults results = client.query(server.getGraphURI(), bgp, Optional.of("slow"));
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        assertFalse("The query should succeed", results.hasError());
+        assertTrue("The answer of the duplicate should be used", duration < 1500);
+        assertEquals("A duplicate should have been sent", nbHedgedRequests + 1, hedging.getNbHedgedRequests());
+    }
+
+    @Test
+    public void testRetryAfterTooManyRequests() {
+        AtomicInteger nbRequests = new AtomicInteger();
+        server.setHandler(exchange -> {
+            if (nbRequests.getAndIncrement() == 0) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                FakeSageServer.send(exchange, 429, new byte[0]);
+            } else {
+                FakeSageServer.sendDefaultResponse(exchange);
+            }
+        });
+        long startTime = System.nanoTime();
+        QueryResults results = client.query(server.getGraphURI(), bgp);
+        assertFalse("The query should succeed once retried", results.hasError());
+        assertEquals("The request should have been sent twice", 2, nbRequests.get());
+        assertTrue("The delay sent by the server should be honored", System.nanoTime() - startTime >= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testDoNotRetryClientErrors() {
+        AtomicInteger nbRequests = new AtomicInteger();
+        server.setHandler(exchange -> {
+            nbRequests.incrementAndGet();
+            FakeSageServer.send(exchange, 400, new byte[0]);
+        });
+        QueryResults results = client.query(server.getGraphURI(), bgp);
+        assertTrue("The query should fail", results.hasError());
+        assertEquals("Malformed queries should not be retried", 1, nbRequests.get());
+    }
+
+    @Test
+    public void testFailFastWhenServerIsUnhealthy() {
+        AtomicInteger nbRequests = new AtomicInteger();
+        server.setHandler(exchange -> {
+            nbRequests.incrementAndGet();
+            FakeSageServer.send(exchange, 500, new byte[0]);
+        });
+        for (int i = 0; i < 10; i++) {
+            client.query(server.getGraphURI(), bgp, Optional.of("page" + i));
+        }
+        assertEquals("The circuit should be open", CircuitBreaker.State.OPEN, client.getCircuitBreaker().getState());
+        assertTrue("Retries should be limited by the retry budget", nbRequests.get() < 20);
+    }
+}
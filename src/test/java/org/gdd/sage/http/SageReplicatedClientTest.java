@@ -0,0 +1,102 @@
+package org.gdd.sage.http;
+
+import org.gdd.sage.http.data.QuerySolutions;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class SageReplicatedClientTest {
+    private static final String QUERY = "SELECT * WHERE { ?s ?p ?o . }";
+    private SageRemoteClient first;
+    private SageRemoteClient second;
+    private List<CompletableFuture<QueryResults>> pendingFirst;
+    private List<CompletableFuture<QueryResults>> pendingSecond;
+
+    private static QueryResults page(String next) {
+        return new QueryResults(new QuerySolutions(), next, new SageStatistics(0, 0));
+    }
+
+    private static SageRemoteClient replica(String serverURL, List<CompletableFuture<QueryResults>> pending) {
+        SageRemoteClient client = mock(SageRemoteClient.class);
+        when(client.getServerURL()).thenReturn(serverURL);
+        when(client.query(anyString(), anyString(), any())).thenReturn(page(null));
+        when(client.queryAsync(anyString(), anyString(), any())).thenAnswer(invocation -> {
+            CompletableFuture<QueryResults> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        });
+        return client;
+    }
+
+    @Before
+    public void setUp() {
+        pendingFirst = new ArrayList<>();
+        pendingSecond = new ArrayList<>();
+        first = replica("http://first.org/sparql", pendingFirst);
+        second = replica("http://second.org/sparql", pendingSecond);
+    }
+
+    @Test
+    public void testRewriteGraphURIForEachReplica() {
+        SageReplicatedClient client = new SageReplicatedClient(Arrays.asList(first, second), SageReplicatedClient.RoutingPolicy.LEAST_OUTSTANDING);
+        client.query("http://first.org/sparql/dbpedia", QUERY, Optional.empty());
+        client.query("http://first.org/sparql/dbpedia", QUERY, Optional.of("p2"));
+        verify(first).query("http://first.org/sparql/dbpedia", QUERY, Optional.empty());
+        // pages of the same query can be fetched from another replica
+        verify(second).query("http://second.org/sparql/dbpedia", QUERY, Optional.of("p2"));
+    }
+
+    @Test
+    public void testRouteToLeastOutstandingReplica() {
+        SageReplicatedClient client = new SageReplicatedClient(Arrays.asList(first, second), SageReplicatedClient.RoutingPolicy.LEAST_OUTSTANDING);
+        for (int i = 0; i < 4; i++) {
+            client.queryAsync("http://first.org/sparql/dbpedia", QUERY, Optional.empty());
+        }
+        assertEquals("Requests should be spread evenly among idle replicas", 2, pendingFirst.size());
+        assertEquals("Requests should be spread evenly among idle replicas", 2, pendingSecond.size());
+        // once the first replica has answered, it has less outstanding requests than the second one
+        pendingFirst.forEach(future -> future.complete(page(null)));
+        client.queryAsync("http://first.org/sparql/dbpedia", QUERY, Optional.empty());
+        client.queryAsync("http://first.org/sparql/dbpedia", QUERY, Optional.empty());
+        assertEquals("The replica with the least outstanding requests should be selected", 4, pendingFirst.size());
+        assertEquals("The replica with the least outstanding requests should be selected", 2, pendingSecond.size());
+        assertEquals("Completed requests should no longer be outstanding", 2, client.getReplicas().get(0).getOutstanding());
+    }
+
+    @Test
+    public void testRouteToFastestReplica() throws InterruptedException {
+        SageReplicatedClient client = new SageReplicatedClient(Arrays.asList(first, second), SageReplicatedClient.RoutingPolicy.LATENCY_EWMA);
+        client.queryAsync("http://first.org/sparql/dbpedia", QUERY, Optional.empty());
+        client.queryAsync("http://first.org/sparql/dbpedia", QUERY, Optional.empty());
+        // the first replica answers immediately, but the second one is slow
+        pendingFirst.get(0).complete(page(null));
+        Thread.sleep(50);
+        pendingSecond.get(0).complete(page(null));
+        for (int i = 0; i < 3; i++) {
+            client.queryAsync("http://first.org/sparql/dbpedia", QUERY, Optional.empty());
+        }
+        assertEquals("Requests should be routed to the fastest replica", 4, pendingFirst.size());
+        assertEquals("Requests should be routed to the fastest replica", 1, pendingSecond.size());
+    }
+
+    @Test
+    public void testSendUpdatesToFirstServer() {
+        SageReplicatedClient client = new SageReplicatedClient(Arrays.asList(first, second), SageReplicatedClient.RoutingPolicy.LEAST_OUTSTANDING);
+        client.update("http://first.org/sparql/dbpedia", "INSERT DATA { <a> <b> <c> }");
+        client.update("http://first.org/sparql/dbpedia", "INSERT DATA { <a> <b> <d> }");
+        verify(first, times(2)).update(anyString(), anyString());
+        verify(second, never()).update(anyString(), anyString());
+    }
+}
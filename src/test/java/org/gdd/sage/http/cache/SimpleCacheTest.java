@@ -0,0 +1,74 @@
+package org.gdd.sage.http.cache;
+
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.BindingHashMap;
+import org.gdd.sage.Utilities;
+import org.gdd.sage.http.ExecutionStats;
+import org.gdd.sage.http.data.QuerySolutions;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SimpleCacheTest {
+    private final String GRAPH_URI = "http://localhost:8000/sparql/test";
+
+    static QueryResults page(int size) {
+        QuerySolutions solutions = new QuerySolutions();
+        for (int i = 0; i < size; i++) {
+            BindingHashMap binding = new BindingHashMap();
+            binding.add(Var.alloc("s"), Utilities.example("s" + i));
+            solutions.addBindings(binding);
+        }
+        return new QueryResults(solutions, null, new SageStatistics(0, 0));
+    }
+
+    @Test
+    public void testReadThrough() {
+        ExecutionStats spy = new ExecutionStats();
+        QueryCache cache = new SimpleCache(100, spy);
+        QueryResults results = page(10);
+        assertNull("The cache should be empty", cache.get(GRAPH_URI, "q1", Optional.empty()));
+        cache.put(GRAPH_URI, "q1", Optional.empty(), results);
+        assertSame("The cache should hold the page of results", results, cache.get(GRAPH_URI, "q1", Optional.empty()));
+        assertNull("Pages are identified by their next link", cache.get(GRAPH_URI, "q1", Optional.of("next")));
+        assertNull("Pages are identified by their graph", cache.get("http://localhost:8000/sparql/other", "q1", Optional.empty()));
+        cache.clear();
+        assertFalse("The cache should be empty after a clear", cache.has(GRAPH_URI, "q1", Optional.empty()));
+
+        QueryCache withoutStats = new SimpleCache(100);
+        withoutStats.put(GRAPH_URI, "q1", Optional.empty(), results);
+        assertSame("A cache without statistics should hold the page of results", results, withoutStats.get(GRAPH_URI, "q1", Optional.empty()));
+    }
+
+    @Test
+    public void testWeightedEviction() {
+        ExecutionStats spy = new ExecutionStats();
+        QueryCache cache = new SimpleCache(100, spy);
+        cache.put(GRAPH_URI, "q1", Optional.empty(), page(40));
+        cache.put(GRAPH_URI, "q2", Optional.empty(), page(40));
+        // q1 is now the most recently used entry
+        assertNotNull(cache.get(GRAPH_URI, "q1", Optional.empty()));
+        cache.put(GRAPH_URI, "q3", Optional.empty(), page(40));
+        assertTrue("The most recently used entry should be kept", cache.has(GRAPH_URI, "q1", Optional.empty()));
+        assertFalse("The least recently used entry should be evicted", cache.has(GRAPH_URI, "q2", Optional.empty()));
+        assertTrue("The new entry should be cached", cache.has(GRAPH_URI, "q3", Optional.empty()));
+        assertEquals("One eviction should be reported", 1, spy.getNbCacheEvictions());
+        cache.put(GRAPH_URI, "q4", Optional.empty(), page(500));
+        assertFalse("A page larger than the cache should not be cached", cache.has(GRAPH_URI, "q4", Optional.empty()));
+        assertTrue("A page larger than the cache should not flush it", cache.has(GRAPH_URI, "q1", Optional.empty()));
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        QueryCache cache = new SimpleCache(100, 50, TimeUnit.MILLISECONDS, new ExecutionStats());
+        cache.put(GRAPH_URI, "q1", Optional.empty(), page(1));
+        assertTrue("The entry should not have expired yet", cache.has(GRAPH_URI, "q1", Optional.empty()));
+        Thread.sleep(100);
+        assertFalse("The entry should have expired", cache.has(GRAPH_URI, "q1", Optional.empty()));
+    }
+}
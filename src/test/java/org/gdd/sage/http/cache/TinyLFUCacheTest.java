@@ -0,0 +1,97 @@
+package org.gdd.sage.http.cache;
+
+import org.gdd.sage.http.ExecutionStats;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.gdd.sage.http.cache.SimpleCacheTest.page;
+import static org.junit.Assert.*;
+
+public class TinyLFUCacheTest {
+    private final String GRAPH_URI = "http://localhost:8000/sparql/test";
+
+    /**
+     * Simulate a read-through access to the cache, as done by the HTTP client
+     */
+    private void access(QueryCache cache, String query, int size) {
+        if (cache.get(GRAPH_URI, query, Optional.empty()) == null) {
+            cache.put(GRAPH_URI, query, Optional.empty(), page(size));
+        }
+    }
+
+    @Test
+    public void testReadThrough() {
+        QueryCache cache = new TinyLFUCache(1000, new ExecutionStats());
+        QueryResults results = page(10);
+        assertNull("The cache should be empty", cache.get(GRAPH_URI, "q1", Optional.empty()));
+        cache.put(GRAPH_URI, "q1", Optional.empty(), results);
+        assertSame("The cache should hold the page of results", results, cache.get(GRAPH_URI, "q1", Optional.empty()));
+        assertNull("Pages are identified by their next link", cache.get(GRAPH_URI, "q1", Optional.of("next")));
+        cache.clear();
+        assertFalse("The cache should be empty after a clear", cache.has(GRAPH_URI, "q1", Optional.empty()));
+    }
+
+    @Test
+    public void testScanResistance() {
+        ExecutionStats spy = new ExecutionStats();
+        TinyLFUCache cache = new TinyLFUCache(100, 0, TimeUnit.MILLISECONDS, 1, spy);
+        for (int i = 0; i < 5; i++) {
+            access(cache, "hot", 50);
+        }
+        // a scan of pages requested only once, e.g., by a bound join
+        for (int i = 0; i < 100; i++) {
+            access(cache, "scan" + i, 30);
+        }
+        assertTrue("A frequently used page should survive a scan", cache.has(GRAPH_URI, "hot", Optional.empty()));
+        assertTrue("The cache should not exceed its maximum weight", cache.weight() <= 100);
+        assertTrue("Pages of the scan should replace each other", spy.getNbCacheEvictions() > 0);
+    }
+
+    @Test
+    public void testConcurrentAccesses() throws Exception {
+        TinyLFUCache cache = new TinyLFUCache(1600, new ExecutionStats());
+        ExecutorService threadPool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                tasks.add(threadPool.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        access(cache, "q" + ((i * (thread + 1)) % 300), 1 + (i % 20));
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                task.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            threadPool.shutdownNow();
+        }
+        assertTrue("The cache should not exceed its maximum weight", cache.weight() <= 1600);
+    }
+
+    @Test
+    public void testPageLargerThanSegment() {
+        ExecutionStats spy = new ExecutionStats();
+        // 16 segments, so a segment would only hold 100 bindings if the capacity was split between them
+        TinyLFUCache cache = new TinyLFUCache(1600, spy);
+        for (int i = 0; i < 150; i++) {
+            access(cache, "small" + i, 10);
+        }
+        assertEquals("The cache should be full", 1500, cache.weight());
+        access(cache, "large", 500);
+        assertTrue("A page larger than a segment should be cached", cache.has(GRAPH_URI, "large", Optional.empty()));
+        assertTrue("Room should be made in the other segments", spy.getNbCacheEvictions() >= 40);
+        assertTrue("The cache should not exceed its maximum weight", cache.weight() <= 1600);
+        access(cache, "too large", 2000);
+        assertFalse("A page larger than the whole cache should not be cached", cache.has(GRAPH_URI, "too large", Optional.empty()));
+    }
+}
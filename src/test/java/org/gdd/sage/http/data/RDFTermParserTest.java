@@ -0,0 +1,49 @@
+package org.gdd.sage.http.data;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RDFTermParserTest {
+
+    @Test
+    public void testParseURI() {
+        Node node = RDFTermParser.parse("http://www.example.org#foo");
+        assertTrue("It should parse an URI", node.isURI());
+        assertEquals("http://www.example.org#foo", node.getURI());
+        assertSame("URIs should be interned", node, RDFTermParser.parse("http://www.example.org#foo"));
+    }
+
+    @Test
+    public void testParseSimpleLiteral() {
+        Node node = RDFTermParser.parse("\"hello \"world\"\"");
+        assertTrue("It should parse a literal", node.isLiteral());
+        assertEquals("hello \"world\"", node.getLiteralLexicalForm());
+        assertEquals("", node.getLiteralLanguage());
+    }
+
+    @Test
+    public void testParseLangLiteral() {
+        Node node = RDFTermParser.parse("\"help\"@en");
+        assertEquals("help", node.getLiteralLexicalForm());
+        assertEquals("en", node.getLiteralLanguage());
+        // multiline literals should be supported too
+        node = RDFTermParser.parse("\"first line\nsecond line\"@en-GB");
+        assertEquals("first line\nsecond line", node.getLiteralLexicalForm());
+        assertEquals("en-gb", node.getLiteralLanguage().toLowerCase());
+    }
+
+    @Test
+    public void testParseTypedLiteral() {
+        Node node = RDFTermParser.parse("\"5\"^^<http://www.w3.org/2001/XMLSchema#integer>");
+        assertEquals("5", node.getLiteralLexicalForm());
+        assertEquals(XSDDatatype.XSDinteger, node.getLiteralDatatype());
+        node = RDFTermParser.parse("\"5.5\"^^http://www.w3.org/2001/XMLSchema#decimal");
+        assertEquals("5.5", node.getLiteralLexicalForm());
+        assertEquals(XSDDatatype.XSDdecimal, node.getLiteralDatatype());
+        node = RDFTermParser.parse("\"x\"^^<http://www.example.org#customType>");
+        assertEquals("Unknown datatypes should be preserved", "http://www.example.org#customType", node.getLiteralDatatypeURI());
+    }
+}
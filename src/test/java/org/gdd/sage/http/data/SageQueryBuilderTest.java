@@ -0,0 +1,133 @@
+package org.gdd.sage.http.data;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.OpAsQuery;
+import org.apache.jena.sparql.algebra.Table;
+import org.apache.jena.sparql.algebra.TableFactory;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpExtend;
+import org.apache.jena.sparql.algebra.op.OpFilter;
+import org.apache.jena.sparql.algebra.op.OpGraph;
+import org.apache.jena.sparql.algebra.op.OpGroup;
+import org.apache.jena.sparql.algebra.op.OpJoin;
+import org.apache.jena.sparql.algebra.op.OpProject;
+import org.apache.jena.sparql.algebra.op.OpTable;
+import org.apache.jena.sparql.algebra.op.OpUnion;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.core.VarExprList;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.binding.BindingMap;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.util.ExprUtils;
+import org.gdd.sage.Utilities;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SageQueryBuilderTest {
+
+    private static BasicPattern bgp(int key) {
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(Triple.create(Var.alloc("s_" + key), Utilities.rdf("type"), Utilities.dbo("Person")));
+        bgp.add(Triple.create(Var.alloc("s_" + key), Utilities.rdfs("label"), NodeFactory.createLiteral("Ada", "en")));
+        bgp.add(Triple.create(Var.alloc("s_" + key), Utilities.dbo("age"), Var.alloc("age_" + key)));
+        return bgp;
+    }
+
+    /**
+     * Assert that a query generated by the builder is equivalent to the one serialized by Jena from the same plan
+     */
+    private static void assertEquivalent(String message, Op expected, String actual) {
+        Query expectedQuery = OpAsQuery.asQuery(expected);
+        Query actualQuery = QueryFactory.create(actual);
+        assertEquals(message, Algebra.compile(expectedQuery), Algebra.compile(actualQuery));
+    }
+
+    @Test
+    public void testBuildBGPQuery() {
+        BasicPattern bgp = bgp(0);
+        assertEquivalent("BGP queries should be serialized", new OpBGP(bgp), SageQueryBuilder.buildBGPQuery(bgp));
+    }
+
+    @Test
+    public void testBuildFilterQuery() {
+        BasicPattern bgp = bgp(0);
+        List<Expr> filters = Arrays.asList(ExprUtils.parse("?age_0 > 18"), ExprUtils.parse("regex(str(?s_0), \"ada\", \"i\")"));
+        Op expected = new OpBGP(bgp);
+        for (Expr filter : filters) {
+            expected = OpFilter.filter(filter, expected);
+        }
+        assertEquivalent("Filters should be serialized", expected, SageQueryBuilder.buildBGPQuery(bgp, filters));
+    }
+
+    @Test
+    public void testBuildUnionQuery() {
+        List<BasicPattern> union = Arrays.asList(bgp(0), bgp(1), bgp(2));
+        Op expected = new OpBGP(union.get(0));
+        for (int i = 1; i < union.size(); i++) {
+            expected = new OpUnion(expected, new OpBGP(union.get(i)));
+        }
+        assertEquivalent("Unions of BGPs should be serialized", expected, SageQueryBuilder.buildUnionQuery(union));
+    }
+
+    @Test
+    public void testBuildValuesQuery() {
+        BasicPattern bgp = bgp(0);
+        List<Var> variables = Arrays.asList(Var.alloc("s_0"), Var.alloc("age_0"));
+        BindingMap row = BindingFactory.create();
+        row.add(Var.alloc("s_0"), Utilities.example("ada"));
+        row.add(Var.alloc("age_0"), NodeFactory.createLiteral("36"));
+        List<Binding> rows = Arrays.asList(row, BindingFactory.binding(Var.alloc("s_0"), Utilities.example("alan")));
+        Table table = TableFactory.create(variables);
+        rows.forEach(table::addBinding);
+        Op expected = OpJoin.create(OpTable.create(table), new OpBGP(bgp));
+        assertEquivalent("BGPs with a VALUES clause should be serialized", expected, SageQueryBuilder.buildValuesQuery(bgp, variables, rows));
+    }
+
+    @Test
+    public void testBuildGraphQuery() {
+        Map<String, BasicPattern> graphs = new LinkedHashMap<>();
+        graphs.put("http://example.org/graph1", bgp(0));
+        graphs.put("http://example.org/graph2", bgp(1));
+        Op expected = OpJoin.create(new OpGraph(NodeFactory.createURI("http://example.org/graph1"), new OpBGP(bgp(0))),
+                new OpGraph(NodeFactory.createURI("http://example.org/graph2"), new OpBGP(bgp(1))));
+        assertEquivalent("GRAPH clauses should be serialized", expected, SageQueryBuilder.buildGraphQuery(graphs));
+    }
+
+    @Test
+    public void testBuildGroupByQuery() {
+        Query expected = QueryFactory.create("SELECT ?age (COUNT(?s) AS ?nb) WHERE { ?s <http://dbpedia.org/ontology/age> ?age } GROUP BY ?age");
+        Op plan = Algebra.compile(expected);
+        // extract the GROUP BY operator and its extensions from the plan, as done by the query engine
+        OpProject project = (OpProject) plan;
+        OpExtend extend = (OpExtend) project.getSubOp();
+        OpGroup group = (OpGroup) extend.getSubOp();
+        VarExprList extensions = new VarExprList();
+        extensions.add(Var.alloc("age"));
+        extensions.addAll(extend.getVarExprList());
+        String query = SageQueryBuilder.buildBGPGroupByQuery(((OpBGP) group.getSubOp()).getPattern(),
+                group.getGroupVars().getVars(), group.getAggregators(), extensions);
+        assertEquals("GROUP BY queries should be serialized", plan, Algebra.compile(QueryFactory.create(query)));
+    }
+
+    @Test
+    public void testBlankNodeVariablesFallback() {
+        BasicPattern bgp = new BasicPattern();
+        bgp.add(Triple.create(Var.alloc("s"), Utilities.dbo("knows"), Var.alloc("?0")));
+        String query = SageQueryBuilder.buildBGPQuery(bgp);
+        assertFalse("Blank node variables should not be serialized as is", query.contains("??0"));
+        QueryFactory.create(query);
+    }
+}
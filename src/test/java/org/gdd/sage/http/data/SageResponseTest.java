@@ -0,0 +1,50 @@
+package org.gdd.sage.http.data;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class SageResponseTest {
+
+    private SageResponse readResponse() throws IOException {
+        try (InputStream input = getClass().getResourceAsStream("/json_response.json")) {
+            return new ObjectMapper().readerFor(SageResponse.class).readValue(input);
+        }
+    }
+
+    @Test
+    public void testDecodeResponse() throws IOException {
+        SageResponse response = readResponse();
+        assertNull("The page should not have a next link", response.next);
+        assertFalse("The page should be the last one", response.hasNext);
+        assertEquals("The page should contain 9 solutions bindings", 9, response.bindings.getBindings().size());
+        assertTrue("The page should not contain groups", response.bindings.getGroups().isEmpty());
+        assertEquals("Statistics should be decoded", 0.26798248291015625, response.stats.getResumeTime(), 0.0);
+    }
+
+    @Test
+    public void testDecodeRDFTerms() throws IOException {
+        Binding first = readResponse().bindings.getBindings().get(0);
+        assertEquals("All variables should be decoded", 11, first.size());
+
+        Node feature = first.get(Var.alloc("f"));
+        assertTrue("?f should be an URI", feature.isURI());
+        assertEquals("http://www4.wiwiss.fu-berlin.de/bizer/bsbm/v01/instances/ProductFeature22", feature.getURI());
+
+        Node label = first.get(Var.alloc("label"));
+        assertTrue("?label should be a literal", label.isLiteral());
+        assertEquals("vesseled venose", label.getLiteralLexicalForm());
+
+        Node numeric = first.get(Var.alloc("propertyNumeric1"));
+        assertEquals("432", numeric.getLiteralLexicalForm());
+        assertEquals(XSDDatatype.XSDinteger, numeric.getLiteralDatatype());
+    }
+}
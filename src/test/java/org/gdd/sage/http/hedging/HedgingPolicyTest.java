@@ -0,0 +1,100 @@
+package org.gdd.sage.http.hedging;
+
+import org.gdd.sage.http.data.QuerySolutions;
+import org.gdd.sage.http.data.SageStatistics;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HedgingPolicyTest {
+
+    private static QueryResults page(String next) {
+        return new QueryResults(new QuerySolutions(), next, new SageStatistics(0, 0));
+    }
+
+    private static void warmUp(HedgingPolicy policy) {
+        for (int i = 0; i < 50; i++) {
+            policy.recordLatency(TimeUnit.MILLISECONDS.toNanos(5));
+        }
+    }
+
+    @Test
+    public void testNoHedgingBeforeLatenciesAreKnown() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(0.95, 1, 1, TimeUnit.MILLISECONDS);
+        AtomicInteger nbDuplicates = new AtomicInteger();
+        CompletableFuture<QueryResults> request = new CompletableFuture<>();
+        CompletableFuture<QueryResults> results = policy.execute(() -> request, () -> {
+            nbDuplicates.incrementAndGet();
+            return CompletableFuture.completedFuture(page(null));
+        });
+        Thread.sleep(50);
+        assertFalse("The request should not be hedged without a known latency", results.isDone());
+        request.complete(page("p1"));
+        assertEquals("The answer of the request should be used", "p1", results.get(1, TimeUnit.SECONDS).getNext().get());
+        assertEquals("No duplicate should be sent", 0, nbDuplicates.get());
+    }
+
+    @Test
+    public void testHedgeSlowRequest() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(0.95, 1, 1, TimeUnit.MILLISECONDS);
+        warmUp(policy);
+        assertEquals("The delay should be the 95th percentile of latencies", TimeUnit.MILLISECONDS.toNanos(5), policy.getDelay());
+        // the request never answers, so the duplicate must be used
+        CompletableFuture<QueryResults> results = policy.execute(CompletableFuture::new, () -> CompletableFuture.completedFuture(page("p2")));
+        assertEquals("The answer of the duplicate should be used", "p2", results.get(1, TimeUnit.SECONDS).getNext().get());
+        // wins are counted once the results have been delivered
+        Thread.sleep(50);
+        assertEquals("A duplicate should have been sent", 1, policy.getNbHedgedRequests());
+        assertEquals("The duplicate should have answered first", 1, policy.getNbHedgeWins());
+    }
+
+    @Test
+    public void testRecordLatencyOfFirstAttempt() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(0.5, 1, 1, TimeUnit.MILLISECONDS);
+        warmUp(policy);
+        long delay = policy.getDelay();
+        // all requests are answered by their duplicate, which only measures a part of their latency
+        for (int i = 0; i < 100; i++) {
+            policy.execute(CompletableFuture::new, () -> CompletableFuture.completedFuture(page(null))).get(1, TimeUnit.SECONDS);
+        }
+        Thread.sleep(50);
+        assertEquals("All requests should have been hedged", 100, policy.getNbHedgedRequests());
+        assertTrue("The delay should not decrease when duplicates answer first", policy.getDelay() >= delay);
+    }
+
+    @Test
+    public void testHedgingBudget() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(0.95, 0.5, 1, TimeUnit.MILLISECONDS);
+        warmUp(policy);
+        AtomicInteger nbDuplicates = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            policy.execute(CompletableFuture::new, () -> {
+                nbDuplicates.incrementAndGet();
+                return new CompletableFuture<>();
+            });
+        }
+        Thread.sleep(100);
+        assertEquals("Duplicates should be limited by the budget", 2, nbDuplicates.get());
+        assertEquals("Duplicates should be limited by the budget", 2, policy.getNbHedgedRequests());
+    }
+
+    @Test
+    public void testFailOnlyWhenAllAttemptsFail() throws Exception {
+        HedgingPolicy policy = new HedgingPolicy(0.95, 1, 1, TimeUnit.MILLISECONDS);
+        warmUp(policy);
+        CompletableFuture<QueryResults> request = new CompletableFuture<>();
+        CompletableFuture<QueryResults> duplicate = new CompletableFuture<>();
+        CompletableFuture<QueryResults> results = policy.execute(() -> request, () -> duplicate);
+        Thread.sleep(50);
+        assertEquals("A duplicate should have been sent", 1, policy.getNbHedgedRequests());
+        request.complete(QueryResults.withError("timeout"));
+        assertFalse("The duplicate may still succeed", results.isDone());
+        duplicate.complete(QueryResults.withError("timeout"));
+        assertTrue("The request should fail when all attempts have failed", results.get(1, TimeUnit.SECONDS).hasError());
+    }
+}
@@ -0,0 +1,54 @@
+package org.gdd.sage.http.limit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpenAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1, 10, TimeUnit.SECONDS);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals("Failures should be consecutive to open the circuit", CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue("Requests should be allowed while the circuit is closed", breaker.allowRequest());
+        breaker.onFailure();
+        assertEquals("The circuit should open after 3 consecutive failures", CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse("Requests should fail fast while the circuit is open", breaker.allowRequest());
+    }
+
+    @Test
+    public void testTrialRequest() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 20, 1000, TimeUnit.MILLISECONDS);
+        breaker.onFailure();
+        assertFalse("Requests should fail fast while the circuit is open", breaker.allowRequest());
+        Thread.sleep(30);
+        assertTrue("A trial request should be allowed after the delay", breaker.allowRequest());
+        assertFalse("Only one trial request should be allowed at a time", breaker.allowRequest());
+        // the trial fails, so the circuit opens again, for twice as long
+        breaker.onFailure();
+        Thread.sleep(30);
+        assertFalse("The circuit should stay open longer after a failed trial", breaker.allowRequest());
+        Thread.sleep(20);
+        assertTrue("A trial request should be allowed after the delay", breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals("The circuit should close after a successful trial", CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testRemainingDelay() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, 1000, TimeUnit.MILLISECONDS);
+        assertEquals("Requests can be sent now while the circuit is closed", 0, breaker.getRemainingDelay(TimeUnit.MILLISECONDS));
+        breaker.onFailure();
+        long delay = breaker.getRemainingDelay(TimeUnit.MILLISECONDS);
+        assertTrue("Requests should wait for the cool-down while the circuit is open", delay > 0 && delay <= 50);
+        Thread.sleep(delay);
+        assertTrue("A trial request should be allowed once the remaining delay has passed", breaker.allowRequest());
+    }
+}
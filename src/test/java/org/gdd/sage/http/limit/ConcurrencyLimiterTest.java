@@ -0,0 +1,69 @@
+package org.gdd.sage.http.limit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testExcessRequestsAreQueued() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 10);
+        AtomicInteger started = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            limiter.whenAvailable(started::incrementAndGet);
+        }
+        assertEquals("Only 2 requests should be started", 2, started.get());
+        assertEquals("2 requests should be in flight", 2, limiter.getInFlight());
+        assertEquals("3 requests should be queued", 3, limiter.getQueueDepth());
+        limiter.release(LATENCY, true);
+        assertEquals("A queued request should start when a permit is released", 3, started.get());
+        assertEquals("2 requests should be queued", 2, limiter.getQueueDepth());
+        limiter.releaseUnused();
+        limiter.release(LATENCY, true);
+        limiter.release(LATENCY, true);
+        limiter.release(LATENCY, true);
+        assertEquals("All requests should have been started", 5, started.get());
+        assertEquals("No request should be in flight", 0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testAdditiveIncrease() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 10);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < limiter.getLimit(); i++) {
+                limiter.whenAvailable(() -> {});
+            }
+            int inFlight = limiter.getInFlight();
+            for (int i = 0; i < inFlight; i++) {
+                limiter.release(LATENCY, true);
+            }
+        }
+        assertTrue("The limit should grow while the server keeps up", limiter.getLimit() > 4);
+        assertTrue("The limit should not exceed its maximum", limiter.getLimit() <= 10);
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() throws InterruptedException {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 10);
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire();
+            limiter.release(LATENCY, false);
+            // decreases happen at most once per round trip
+            Thread.sleep(1);
+        }
+        assertEquals("The limit should decrease down to its minimum when requests fail", 2, limiter.getLimit());
+    }
+
+    @Test
+    public void testLimitersAreSharedByServer() {
+        assertSame("Clients of the same server should share a limiter",
+                ConcurrencyLimiter.forServer("http://localhost:8000/sparql"), ConcurrencyLimiter.forServer("http://localhost:8000/sparql"));
+        assertNotSame("Clients of different servers should not share a limiter",
+                ConcurrencyLimiter.forServer("http://localhost:8000/sparql"), ConcurrencyLimiter.forServer("http://localhost:9000/sparql"));
+    }
+}
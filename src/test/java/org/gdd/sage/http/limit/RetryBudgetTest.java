@@ -0,0 +1,44 @@
+package org.gdd.sage.http.limit;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RetryBudgetTest {
+
+    @Test
+    public void testRetriesAreBounded() {
+        RetryBudget budget = new RetryBudget(0.1, 2, 5);
+        assertTrue("Initial retries should be allowed", budget.tryRetry());
+        assertTrue("Initial retries should be allowed", budget.tryRetry());
+        assertFalse("Retries should be denied once the budget is spent", budget.tryRetry());
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest();
+        }
+        assertTrue("10 requests should earn one retry", budget.tryRetry());
+        assertFalse("10 requests should earn only one retry", budget.tryRetry());
+        for (int i = 0; i < 1000; i++) {
+            budget.onRequest();
+        }
+        assertEquals("Saved retries should be capped", 5, budget.getAvailableRetries());
+    }
+
+    @Test
+    public void testPause() {
+        RetryBudget budget = new RetryBudget();
+        assertEquals("Requests should not be paused by default", 0, budget.getPauseDelay());
+        budget.pause(10, TimeUnit.SECONDS);
+        budget.pause(1, TimeUnit.SECONDS);
+        assertTrue("The longest pause should be kept", budget.getPauseDelay() > TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals("Retry-After should accept a number of seconds", 2000, RetryHandler.parseRetryAfter("2"));
+        assertEquals("A missing Retry-After should be ignored", -1, RetryHandler.parseRetryAfter(null));
+        assertEquals("An invalid Retry-After should be ignored", -1, RetryHandler.parseRetryAfter("soon"));
+        assertEquals("A Retry-After date in the past means no delay", 0, RetryHandler.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+}
@@ -0,0 +1,67 @@
+package org.gdd.sage.http.transport;
+
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.Var;
+import org.gdd.sage.Utilities;
+import org.gdd.sage.http.ExecutionStats;
+import org.gdd.sage.http.FakeSageServer;
+import org.gdd.sage.http.SageDefaultClient;
+import org.gdd.sage.http.cache.TinyLFUCache;
+import org.gdd.sage.http.results.QueryResults;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PooledHttpTransportTest {
+    private FakeSageServer server;
+    private PooledHttpTransport transport;
+    private SageDefaultClient client;
+    private BasicPattern bgp;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new FakeSageServer();
+        transport = new PooledHttpTransport(2, 10, 30, TimeUnit.SECONDS, 8192);
+        ExecutionStats spy = new ExecutionStats();
+        client = new SageDefaultClient(server.getServerURL(), spy, new TinyLFUCache(1000, spy), transport);
+        bgp = new BasicPattern();
+        bgp.add(Triple.create(Var.alloc("s"), Utilities.rdf("type"), NodeFactory.createURI("http://www.example.org#Person")));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        transport.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void testSendQuery() {
+        QueryResults results = client.query(server.getGraphURI(), bgp);
+        assertFalse("The query should succeed", results.hasError());
+        assertEquals("The page should contain 9 solutions bindings", 9, results.getBindings().size());
+        assertEquals("The query should be sent to the server", 1, server.getRequests().size());
+    }
+
+    @Test
+    public void testConnectionsAreReused() {
+        for (int i = 0; i < 5; i++) {
+            // use distinct next links, so pages are not read from the cache
+            QueryResults results = client.query(server.getGraphURI(), bgp, Optional.of("page" + i));
+            assertFalse("The query should succeed", results.hasError());
+        }
+        assertEquals("5 requests should be sent", 5, transport.getNbRequests());
+        assertEquals("A single connection should be opened", 1, transport.getNbConnectionsOpened());
+        assertEquals("The connection should be reused by the next requests", 4, transport.getNbConnectionsReused());
+        assertEquals("The connection should stay open in the pool", 1, transport.getNbIdleConnections());
+        assertEquals("No connection should be in use", 0, transport.getNbLeasedConnections());
+    }
+}